@@ -0,0 +1,358 @@
+package com.cord.server.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code <Name>JsonWriter} for every class annotated with
+ * com.cord.server.GenerateJsonWriter.
+ *
+ * The writer has a static {@code write(JsonGenerator, Name)} method which
+ * writes the object with direct generator calls, producing the same
+ * compact JSON as the SDK's ObjectMapper:
+ * <ul>
+ * <li>Properties are the public getters, named by @JsonProperty or else
+ * by Jackson's rules, and skipped if annotated with @JsonIgnore.</li>
+ * <li>They are written in the order their backing fields are declared,
+ * which is the order Jackson uses, followed by getters with no field.</li>
+ * <li>Null values are left out, as with Include.NON_NULL.</li>
+ * <li>Enums are written by their @JsonProperty names, found here at
+ * compile time.</li>
+ * </ul>
+ * Strings, numbers, booleans, string lists and other annotated classes are
+ * written inline. Anything else, such as metadata, is handed to
+ * JsonWriters.writeValue at run time.
+ *
+ * Jackson is only referred to by name, so the processor does not depend
+ * on it.
+ **/
+@SupportedAnnotationTypes(JsonWriterProcessor.ANNOTATION)
+public class JsonWriterProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "com.cord.server.GenerateJsonWriter";
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+    private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : round.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@GenerateJsonWriter only applies to classes");
+                    continue;
+                }
+                try {
+                    generate((TypeElement) element);
+                } catch (IOException e) {
+                    error(element, "Could not write the JsonWriter: " + e.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String packageName = ((PackageElement) type.getEnclosingElement()).getQualifiedName().toString();
+        String typeName = type.getSimpleName().toString();
+        String writerName = typeName + "JsonWriter";
+        List<Property> properties = properties(type);
+
+        StringBuilder out = new StringBuilder();
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import com.fasterxml.jackson.core.JsonGenerator;\n\n");
+        out.append("import java.io.IOException;\n\n");
+        out.append("/**\n * Writes ").append(typeName).append(" as JSON without reflection.\n **/\n");
+        out.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        out.append("@SuppressWarnings(\"deprecation\")\n");
+        out.append("final class ").append(writerName).append(" {\n");
+        for (Property property : properties) {
+            if (property.kind == Kind.ENUM) {
+                out.append("    private static final String[] ").append(enumTable(property)).append(" = {");
+                List<String> names = enumNames(property.type);
+                for (int i = 0; i < names.size(); i++) {
+                    out.append(i == 0 ? "" : ", ").append(quote(names.get(i)));
+                }
+                out.append("};\n");
+            }
+        }
+        out.append("\n    private ").append(writerName).append("() {\n    }\n\n");
+
+        out.append("    static void write(JsonGenerator generator, ").append(typeName)
+                .append(" value) throws IOException {\n");
+        out.append("        write(generator, value, false);\n    }\n\n");
+        out.append("    /**\n");
+        out.append("     * @param sortMaps Whether to write map entries in key order\n");
+        out.append("     **/\n");
+        out.append("    static void write(JsonGenerator generator, ").append(typeName)
+                .append(" value, boolean sortMaps) throws IOException {\n");
+        out.append("        generator.writeStartObject();\n");
+        for (Property property : properties) {
+            writeProperty(out, property);
+        }
+        out.append("        generator.writeEndObject();\n");
+        out.append("    }\n}\n");
+
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile(packageName + "." + writerName, type)
+                .openWriter()) {
+            writer.write(out.toString());
+        }
+    }
+
+    private void writeProperty(StringBuilder out, Property property) {
+        String value = "value." + property.getter + "()";
+        String name = quote(property.name);
+        switch (property.kind) {
+            case PRIMITIVE:
+                out.append("        generator.")
+                        .append(property.type.getKind() == TypeKind.BOOLEAN ? "writeBooleanField(" : "writeNumberField(")
+                        .append(name).append(", ").append(value).append(");\n");
+                return;
+            default:
+        }
+        String local = property.getter + "Value";
+        out.append("        ").append(property.type.toString().replace('$', '.')).append(' ')
+                .append(local).append(" = ").append(value).append(";\n");
+        out.append("        if (").append(local).append(" != null) {\n");
+        switch (property.kind) {
+            case STRING:
+                out.append("            generator.writeStringField(").append(name).append(", ").append(local)
+                        .append(");\n");
+                break;
+            case BOXED:
+                out.append("            generator.")
+                        .append(property.type.toString().equals("java.lang.Boolean")
+                                ? "writeBooleanField(" : "writeNumberField(")
+                        .append(name).append(", ").append(local).append(");\n");
+                break;
+            case ENUM:
+                out.append("            generator.writeStringField(").append(name).append(", ")
+                        .append(enumTable(property)).append('[').append(local).append(".ordinal()]);\n");
+                break;
+            case STRINGS:
+                out.append("            generator.writeArrayFieldStart(").append(name).append(");\n");
+                out.append("            for (String element : ").append(local).append(") {\n");
+                out.append("                generator.writeString(element);\n");
+                out.append("            }\n");
+                out.append("            generator.writeEndArray();\n");
+                break;
+            case NESTED:
+                out.append("            generator.writeFieldName(").append(name).append(");\n");
+                out.append("            ").append(((DeclaredType) property.type).asElement().getSimpleName())
+                        .append("JsonWriter.write(generator, ").append(local).append(", sortMaps);\n");
+                break;
+            default:
+                out.append("            generator.writeFieldName(").append(name).append(");\n");
+                out.append("            JsonWriters.writeValue(generator, ").append(local).append(", sortMaps);\n");
+        }
+        out.append("        }\n");
+    }
+
+    /**
+     * Finds the properties Jackson would serialize, in the order it would
+     * write them.
+     **/
+    private List<Property> properties(TypeElement type) {
+        Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            String implicitName = implicitName(method);
+            if (implicitName != null && !hasAnnotation(method, JSON_IGNORE)) {
+                getters.put(implicitName, method);
+            }
+        }
+        List<ExecutableElement> ordered = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            ExecutableElement getter = getters.remove(field.getSimpleName().toString());
+            if (getter != null && !field.getModifiers().contains(Modifier.STATIC)) {
+                ordered.add(getter);
+            }
+        }
+        ordered.addAll(getters.values());
+
+        List<Property> properties = new ArrayList<>();
+        for (ExecutableElement getter : ordered) {
+            String name = annotationValue(getter, JSON_PROPERTY);
+            if (name == null || name.isEmpty()) {
+                name = implicitName(getter);
+            }
+            properties.add(new Property(name, getter.getSimpleName().toString(), getter.getReturnType(),
+                    kind(getter.getReturnType())));
+        }
+        return properties;
+    }
+
+    /**
+     * @return The name Jackson gives a getter's property, or null if the
+     *         method is not a getter
+     **/
+    private static String implicitName(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)
+                || !method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+            return null;
+        }
+        String name = method.getSimpleName().toString();
+        String suffix;
+        if (name.startsWith("get") && name.length() > 3) {
+            suffix = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 && method.getReturnType().getKind() == TypeKind.BOOLEAN) {
+            suffix = name.substring(2);
+        } else {
+            return null;
+        }
+        // Like Jackson, lower-case the leading run of upper-case letters
+        StringBuilder implicit = new StringBuilder(suffix);
+        for (int i = 0; i < implicit.length() && Character.isUpperCase(implicit.charAt(i)); i++) {
+            implicit.setCharAt(i, Character.toLowerCase(implicit.charAt(i)));
+        }
+        return implicit.toString();
+    }
+
+    private Kind kind(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return Kind.PRIMITIVE;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return Kind.VALUE;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        TypeElement element = (TypeElement) declared.asElement();
+        String name = element.getQualifiedName().toString();
+        switch (name) {
+            case "java.lang.String":
+                return Kind.STRING;
+            case "java.lang.Boolean":
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Double":
+                return Kind.BOXED;
+            case "java.util.List":
+            case "java.util.Collection":
+            case "java.util.Set":
+                if (declared.getTypeArguments().size() == 1
+                        && declared.getTypeArguments().get(0).toString().equals("java.lang.String")) {
+                    return Kind.STRINGS;
+                }
+                return Kind.VALUE;
+            default:
+        }
+        if (element.getKind() == ElementKind.ENUM) {
+            return Kind.ENUM;
+        }
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(ANNOTATION)) {
+                return Kind.NESTED;
+            }
+        }
+        return Kind.VALUE;
+    }
+
+    private static List<String> enumNames(TypeMirror type) {
+        List<String> names = new ArrayList<>();
+        for (Element constant : ((DeclaredType) type).asElement().getEnclosedElements()) {
+            if (constant.getKind() == ElementKind.ENUM_CONSTANT) {
+                String name = annotationValue(constant, JSON_PROPERTY);
+                names.add(name != null && !name.isEmpty() ? name : constant.getSimpleName().toString());
+            }
+        }
+        return names;
+    }
+
+    private static String enumTable(Property property) {
+        return property.getter.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase().replaceFirst("^(GET|IS)_", "")
+                + "_NAMES";
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String annotationValue(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotation)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                        : mirror.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) entry.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private enum Kind {
+        PRIMITIVE,
+        BOXED,
+        STRING,
+        STRINGS,
+        ENUM,
+        NESTED,
+        VALUE
+    }
+
+    private static final class Property {
+        private final String name;
+        private final String getter;
+        private final TypeMirror type;
+        private final Kind kind;
+
+        private Property(String name, String getter, TypeMirror type, Kind kind) {
+            this.name = name;
+            this.getter = getter;
+            this.type = type;
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.cord.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the body of a batch request.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BatchBodyBenchmark {
+    @Param({"100", "10000"})
+    public int users;
+
+    private List<PlatformUserVariables> userList;
+    private List<PlatformGroupVariables> groupList;
+
+    @Setup
+    public void setUp() {
+        userList = BenchmarkData.users(users);
+        groupList = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, users / 100); i++) {
+            groupList.add(BenchmarkData.group(i, 100));
+        }
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher batchBody() {
+        return JsonBodyPublisher.of(CordClient.batchBody(userList, groupList), false);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher batchBodyGzipped() {
+        return JsonBodyPublisher.of(CordClient.batchBody(userList, groupList), true);
+    }
+}
@@ -0,0 +1,66 @@
+package com.cord.server;
+
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic users and groups shared by the benchmarks.
+ **/
+final class BenchmarkData {
+    static final String PROJECT_ID = "8d7ae6a8-4d32-4a5c-9cfa-48f5b4b4e2c1";
+    static final String SECRET = "benchmark-secret-which-is-not-quite-sixty-four-bytes-long";
+
+    private BenchmarkData() {
+    }
+
+    static PlatformUserVariables user(int i) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("department", "engineering");
+        metadata.put("level", i % 7);
+        metadata.put("manager", i % 3 == 0);
+        return new PlatformUserVariablesBuilder("user" + i + "@example.com")
+                .id("user-" + i)
+                .name("Benchmark User " + i)
+                .profilePictureUrl("https://example.com/avatars/" + i + ".png")
+                .status(Status.ACTIVE)
+                .metadata(metadata)
+                .build();
+    }
+
+    static List<PlatformUserVariables> users(int count) {
+        List<PlatformUserVariables> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(user(i));
+        }
+        return users;
+    }
+
+    static PlatformGroupVariables group(int i, int members) {
+        List<String> memberIds = new ArrayList<>(members);
+        for (int m = 0; m < members; m++) {
+            memberIds.add("user-" + m);
+        }
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("plan", "enterprise");
+        metadata.put("seats", members);
+        return new PlatformGroupVariablesBuilder("Benchmark Group " + i)
+                .id("group-" + i)
+                .status(Status.ACTIVE)
+                .members(memberIds)
+                .metadata(metadata)
+                .build();
+    }
+
+    static ClientAuthTokenData clientAuthTokenData(int i) {
+        return new ClientAuthTokenData.ClientAuthTokenDataBuilder("user-" + i)
+                .groupId("group-" + (i % 10))
+                .userDetails(user(i))
+                .groupDetails(group(i % 10, 5))
+                .build();
+    }
+}
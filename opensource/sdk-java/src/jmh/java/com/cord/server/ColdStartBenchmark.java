@@ -0,0 +1,112 @@
+package com.cord.server;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the first call made in a fresh JVM, as a serverless function
+ * or a short batch job would make it. Each fork runs one call and nothing
+ * else, so the time includes loading and initializing everything the
+ * call needs. Only the in-process HTTP stub is started beforehand.
+ *
+ * The warmed-up variant calls CordClient.warmUp during setup, to show
+ * how much of the first sync it takes off.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(20)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class ColdStartBenchmark {
+    private static final byte[] RESPONSE =
+            "{\"success\":true,\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private String baseUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String firstClientToken() {
+        return Cord.getClientAuthToken(
+                BenchmarkData.PROJECT_ID, BenchmarkData.SECRET, BenchmarkData.clientAuthTokenData(42));
+    }
+
+    @Benchmark
+    public String firstServerToken() {
+        return Cord.getServerAuthToken(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET);
+    }
+
+    @Benchmark
+    public String firstSync() throws CordException {
+        return client().syncCordUser("user-42", BenchmarkData.user(42));
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmedUp {
+        private CordClient client;
+
+        @Setup
+        public void setUp(ColdStartBenchmark benchmark) {
+            client = benchmark.client();
+            client.warmUp();
+        }
+    }
+
+    @Benchmark
+    public String firstSyncAfterWarmUp(WarmedUp warmedUp) throws CordException {
+        return warmedUp.client.syncCordUser("user-42", BenchmarkData.user(42));
+    }
+
+    private CordClient client() {
+        CordTransport transport = new CordTransportBuilder()
+                .baseUrl(baseUrl)
+                .httpVersion(HttpClient.Version.HTTP_1_1)
+                .build();
+        return new CordClientBuilder(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET)
+                .transport(transport)
+                .build();
+    }
+}
@@ -0,0 +1,95 @@
+package com.cord.server;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordOutbox.CordOutboxBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures recording a sync in a CordOutbox, which is the latency a caller
+ * sees. The outbox drains to an in-process HTTP stub in the background.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class OutboxBenchmark {
+    private static final byte[] RESPONSE =
+            "{\"success\":true,\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"false", "true"})
+    public boolean fsync;
+
+    private HttpServer server;
+    private Path directory;
+    private CordOutbox outbox;
+    private List<PlatformUserVariables> users;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, CordException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.start();
+
+        CordClient client = new CordClientBuilder(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET)
+                .transport(new CordTransportBuilder()
+                        .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                        .httpVersion(HttpClient.Version.HTTP_1_1)
+                        .build())
+                .build();
+        directory = Files.createTempDirectory("cord-outbox-benchmark");
+        outbox = new CordOutboxBuilder(client, directory).fsync(fsync).build();
+        users = BenchmarkData.users(1000);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        outbox.close();
+        server.stop(0);
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void syncUser() throws CordException {
+        outbox.syncUser(users.get(next++ % users.size()));
+    }
+}
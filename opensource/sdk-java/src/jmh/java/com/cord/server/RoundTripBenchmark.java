@@ -0,0 +1,96 @@
+package com.cord.server;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole API calls against an in-process HTTP stub, so that the
+ * cost of the SDK and the HttpClient is measured without the network.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+public class RoundTripBenchmark {
+    private static final byte[] RESPONSE =
+            "{\"success\":true,\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CordClient client;
+    private PlatformUserVariables user;
+    private List<PlatformUserVariables> batch;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        server.start();
+
+        CordTransport transport = new CordTransportBuilder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .httpVersion(HttpClient.Version.HTTP_1_1)
+                .build();
+        client = new CordClientBuilder(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET)
+                .transport(transport)
+                .build();
+        user = BenchmarkData.user(42);
+        batch = BenchmarkData.users(1000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String syncUser() throws CordException {
+        return client.syncCordUser("user-42", user);
+    }
+
+    @Benchmark
+    public String batchSync() throws CordException {
+        return client.batchSyncCordUsersAndOrganizations(batch, Collections.emptyList());
+    }
+}
@@ -0,0 +1,67 @@
+package com.cord.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.http.HttpRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures serializing single users and groups, including groups with
+ * large member lists, into request bodies. The reflective benchmarks
+ * write through Cord.mapper, for comparison with the generated writers
+ * the SDK uses.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SerializationBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int members;
+
+    private PlatformUserVariables user;
+    private PlatformGroupVariables group;
+
+    @Setup
+    public void setUp() {
+        user = BenchmarkData.user(42);
+        group = BenchmarkData.group(42, members);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher userBody() {
+        return JsonBodyPublisher.of(generator -> PlatformUserVariablesJsonWriter.write(generator, user), false);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher userBodyReflective() {
+        return JsonBodyPublisher.of(generator -> Cord.mapper().writeValue(generator, user), false);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher groupBody() {
+        return JsonBodyPublisher.of(generator -> PlatformGroupVariablesJsonWriter.write(generator, group), false);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher groupBodyReflective() {
+        return JsonBodyPublisher.of(generator -> Cord.mapper().writeValue(generator, group), false);
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher groupBodyGzipped() {
+        return JsonBodyPublisher.of(generator -> PlatformGroupVariablesJsonWriter.write(generator, group), true);
+    }
+}
@@ -0,0 +1,90 @@
+package com.cord.server;
+
+import com.cord.server.CordClient.CordClientBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures minting client and server auth tokens, through the static Cord
+ * methods and through a long-lived CordClient, one at a time and in bulk,
+ * and verifying client auth tokens.
+ * Compare the bulk score against clientClientAuthToken to see how bulk
+ * signing scales with the number of cores.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TokenBenchmark {
+    private static final int BULK_SIZE = 10000;
+
+    private CordClient client;
+    private ClientAuthTokenData payload;
+    private List<ClientAuthTokenData> bulkPayloads;
+    private CordTokenVerifier verifier;
+    private String clientAuthToken;
+
+    @Setup
+    public void setUp() {
+        client = new CordClientBuilder(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET).build();
+        payload = BenchmarkData.clientAuthTokenData(42);
+        bulkPayloads = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            bulkPayloads.add(BenchmarkData.clientAuthTokenData(i));
+        }
+        verifier = new CordTokenVerifier.CordTokenVerifierBuilder()
+                .project(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET)
+                // Benchmark iterations outlast the token
+                .clockSkew(Duration.ofDays(1))
+                .build();
+        clientAuthToken = client.getClientAuthToken(payload);
+    }
+
+    @Benchmark
+    public String staticClientAuthToken() {
+        return Cord.getClientAuthToken(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET, payload);
+    }
+
+    @Benchmark
+    public String clientClientAuthToken() {
+        return client.getClientAuthToken(payload);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public List<String> bulkClientAuthTokens() {
+        return client.getClientAuthTokens(bulkPayloads);
+    }
+
+    @Benchmark
+    public CordTokenVerifier.VerifiedCordToken verifyClientAuthToken() throws CordException {
+        return verifier.verify(clientAuthToken);
+    }
+
+    @Benchmark
+    public String staticServerAuthToken() {
+        return Cord.getServerAuthToken(BenchmarkData.PROJECT_ID, BenchmarkData.SECRET);
+    }
+
+    @Benchmark
+    public String clientServerAuthToken() {
+        return client.getServerAuthToken();
+    }
+}
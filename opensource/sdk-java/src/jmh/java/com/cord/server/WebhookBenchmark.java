@@ -0,0 +1,60 @@
+package com.cord.server;
+
+import com.cord.server.CordWebhookReceiver.CordWebhookReceiverBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Measures checking the signature of a webhook delivery and decoding it,
+ * which is the work done on the HTTP server's thread before an event is
+ * queued for its handlers.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WebhookBenchmark {
+    private CordWebhookReceiver receiver;
+    private byte[] body;
+    private String timestamp;
+    private String signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        receiver = new CordWebhookReceiverBuilder(BenchmarkData.SECRET).build();
+        body = ("{\"type\":\"thread-message-added\",\"timestamp\":1700000000000,"
+                + "\"projectID\":\"" + BenchmarkData.PROJECT_ID + "\",\"event\":{"
+                + "\"thread\":{\"id\":\"thread-42\",\"name\":\"Benchmark thread\",\"url\":\"https://example.com/t/42\"},"
+                + "\"message\":{\"id\":\"message-1\",\"plaintext\":\"Hello there, this is a benchmark message\"},"
+                + "\"usersToNotify\":[{\"id\":\"user-1\"},{\"id\":\"user-2\"}]}}")
+                .getBytes(StandardCharsets.UTF_8);
+        timestamp = "1700000000000";
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(BenchmarkData.SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        mac.update((timestamp + ":").getBytes(StandardCharsets.UTF_8));
+        signature = Base64.getEncoder().encodeToString(mac.doFinal(body));
+    }
+
+    @Benchmark
+    public CordWebhookEvent verifyDelivery() throws CordException {
+        return receiver.verify(signature, timestamp, body, 1_700_000_000_000L);
+    }
+}
@@ -0,0 +1,123 @@
+package com.cord.server;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how a chunked batch sync went. The input is split into
+ * chunks which are each sent as one call to the batch API, and every
+ * chunk is reported separately, in the order it was sent.
+ **/
+public class BatchSyncSummary {
+    private final List<ChunkResult> chunks;
+
+    BatchSyncSummary(List<ChunkResult> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+    }
+
+    public List<ChunkResult> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return Whether every chunk was delivered successfully
+     **/
+    public boolean isSuccess() {
+        for (ChunkResult chunk : chunks) {
+            if (!chunk.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of users in chunks which were delivered
+     *         successfully
+     **/
+    public long getSyncedUsers() {
+        return countSynced(ChunkType.USERS);
+    }
+
+    /**
+     * @return The number of groups in chunks which were delivered
+     *         successfully
+     **/
+    public long getSyncedGroups() {
+        return countSynced(ChunkType.GROUPS);
+    }
+
+    private long countSynced(ChunkType type) {
+        long count = 0;
+        for (ChunkResult chunk : chunks) {
+            if (chunk.getType() == type && chunk.isSuccess()) {
+                count += chunk.getSize();
+            }
+        }
+        return count;
+    }
+
+    public enum ChunkType {
+        USERS,
+        GROUPS
+    }
+
+    /**
+     * The outcome of sending a single chunk.
+     **/
+    public static class ChunkResult {
+        private final int index;
+        private final ChunkType type;
+        private final int size;
+        private final CordResponse response;
+        private final CordException error;
+
+        ChunkResult(int index, ChunkType type, int size, CordResponse response, CordException error) {
+            this.index = index;
+            this.type = type;
+            this.size = size;
+            this.response = response;
+            this.error = error;
+        }
+
+        /**
+         * @return The position of this chunk in the order chunks were sent
+         **/
+        public int getIndex() {
+            return index;
+        }
+
+        public ChunkType getType() {
+            return type;
+        }
+
+        /**
+         * @return The number of users or groups in this chunk
+         **/
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return The outcome of the API call, or null if the chunk could
+         *         not be delivered. If the API answered with an error
+         *         status, the response is found on the CordApiException
+         *         returned by getError().
+         **/
+        public CordResponse getResponse() {
+            return response;
+        }
+
+        /**
+         * @return The reason the chunk could not be delivered, or null if
+         *         it was delivered
+         **/
+        public CordException getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.cord.server;
+
+import com.cord.server.BatchSyncSummary.ChunkResult;
+import com.cord.server.BatchSyncSummary.ChunkType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Feeds arbitrarily many users and groups through the batch API.
+ *
+ * The input is pulled from iterators one chunk at a time, so at most
+ * parallelism chunks are held in memory and in flight at once. The
+ * calling thread is blocked while that many chunks are outstanding, which
+ * in turn stops it from pulling more input. All groups are delivered
+ * before the first user chunk is sent.
+ **/
+class BatchSyncer {
+    private final CordClient client;
+    private final int maxUsersPerChunk;
+    private final int maxGroupsPerChunk;
+    private final int parallelism;
+
+    BatchSyncer(CordClient client, int maxUsersPerChunk, int maxGroupsPerChunk, int parallelism) {
+        this.client = client;
+        this.maxUsersPerChunk = maxUsersPerChunk;
+        this.maxGroupsPerChunk = maxGroupsPerChunk;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return A syncer with the same chunking and parallelism, which sends
+     *         its chunks through the given client
+     **/
+    BatchSyncer withClient(CordClient client) {
+        return new BatchSyncer(client, maxUsersPerChunk, maxGroupsPerChunk, parallelism);
+    }
+
+    BatchSyncSummary sync(
+            Iterator<PlatformUserVariables> users,
+            Iterator<PlatformGroupVariables> groups) throws CordException {
+        Semaphore permits = new Semaphore(parallelism);
+        List<CompletableFuture<ChunkResult>> results = new ArrayList<>();
+
+        sendChunks(groups, maxGroupsPerChunk, ChunkType.GROUPS, permits, results,
+                chunk -> client.batchSyncAsync(Collections.emptyList(), chunk));
+        // Users may be members of the groups above, so let every group
+        // chunk land before any users go out.
+        awaitAll(permits);
+        sendChunks(users, maxUsersPerChunk, ChunkType.USERS, permits, results,
+                chunk -> client.batchSyncAsync(chunk, Collections.emptyList()));
+        awaitAll(permits);
+
+        List<ChunkResult> chunks = new ArrayList<>(results.size());
+        for (CompletableFuture<ChunkResult> result : results) {
+            chunks.add(result.join());
+        }
+        return new BatchSyncSummary(chunks);
+    }
+
+    private <T> void sendChunks(
+            Iterator<T> input,
+            int chunkSize,
+            ChunkType type,
+            Semaphore permits,
+            List<CompletableFuture<ChunkResult>> results,
+            Function<List<T>, CompletableFuture<CordResponse>> send) throws CordException {
+        while (input.hasNext()) {
+            List<T> chunk = new ArrayList<>(chunkSize);
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+
+            acquire(permits, 1);
+            int index = results.size();
+            CompletableFuture<CordResponse> sent;
+            try {
+                sent = send.apply(chunk);
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            results.add(sent.handle((response, error) -> {
+                permits.release();
+                if (error != null) {
+                    return new ChunkResult(index, type, chunk.size(), null, asCordException(error));
+                }
+                return new ChunkResult(index, type, chunk.size(), response, null);
+            }));
+        }
+    }
+
+    /**
+     * Blocks until no chunk is outstanding, by taking and giving back
+     * every permit.
+     **/
+    private void awaitAll(Semaphore permits) throws CordException {
+        acquire(permits, parallelism);
+        permits.release(parallelism);
+    }
+
+    private static void acquire(Semaphore permits, int count) throws CordException {
+        try {
+            permits.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CordException("Interrupted while batch syncing Cord users and groups", e);
+        }
+    }
+
+    private static CordException asCordException(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof CordException) {
+            return (CordException) error;
+        }
+        return new CordException("Could not batch sync Cord users and groups", error);
+    }
+}
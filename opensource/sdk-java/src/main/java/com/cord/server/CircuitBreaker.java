@@ -0,0 +1,233 @@
+package com.cord.server;
+
+import java.time.Duration;
+
+/**
+ * Stops a client calling the Cord API while it is failing, so that
+ * callers fail fast instead of each waiting out timeouts and retries.
+ *
+ * The breaker watches the outcomes of the last windowSize requests. A
+ * request fails if it could not be sent or timed out, or if the server
+ * answered with a 5xx status; any other response counts as a success.
+ * Once at least minimumRequests have been seen and the share of failures
+ * reaches failureRateThreshold, the breaker opens and calls fail at once
+ * with a CordCircuitOpenException. After openDuration it lets a single
+ * probe request through: if that succeeds the breaker closes again,
+ * otherwise it stays open for another openDuration. Only the probe's
+ * outcome decides this; requests sent before the breaker opened which
+ * finish in the meantime are ignored.
+ *
+ * A breaker may be shared by several clients which talk to the same API.
+ **/
+public class CircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    private final double failureRateThreshold;
+    private final int minimumRequests;
+    private final long openNanos;
+    private final boolean[] failed;
+    private int next;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * What {@link #tryAcquire(long)} allows.
+     **/
+    enum Permit {
+        /**
+         * The breaker is open, and the request must not be sent
+         **/
+        DENIED,
+        /**
+         * The breaker is closed
+         **/
+        REQUEST,
+        /**
+         * The request is the probe of a half-open breaker, whose outcome
+         * closes or reopens it
+         **/
+        PROBE,
+    }
+
+    private CircuitBreaker(CircuitBreakerBuilder builder) {
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.minimumRequests = Math.min(builder.minimumRequests, builder.windowSize);
+        this.openNanos = builder.openDuration.toNanos();
+        this.failed = new boolean[builder.windowSize];
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Whether calls should fail at once, without waiting in line
+     *         for a request to be sent
+     **/
+    synchronized boolean isOpen(long now) {
+        return state == State.OPEN && now - openedAt < openNanos;
+    }
+
+    /**
+     * Asks to send a request. Every request allowed must be followed by
+     * exactly one call to {@link #onSuccess(Permit)} or
+     * {@link #onFailure(Permit, long)} with the permit it was given.
+     **/
+    synchronized Permit tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return Permit.REQUEST;
+            case OPEN:
+                if (now - openedAt < openNanos) {
+                    return Permit.DENIED;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return Permit.PROBE;
+            default:
+                if (probing) {
+                    return Permit.DENIED;
+                }
+                probing = true;
+                return Permit.PROBE;
+        }
+    }
+
+    /**
+     * @return Whether this closed the breaker
+     **/
+    synchronized boolean onSuccess(Permit permit) {
+        if (permit == Permit.PROBE) {
+            if (state == State.HALF_OPEN) {
+                close();
+                return true;
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether this opened the breaker
+     **/
+    synchronized boolean onFailure(Permit permit, long now) {
+        if (permit == Permit.PROBE) {
+            if (state == State.HALF_OPEN) {
+                open(now);
+                return true;
+            }
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumRequests && failures >= failureRateThreshold * recorded) {
+                open(now);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == failed.length) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        probing = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probing = false;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    /**
+     * @param statusCode The status the server answered with
+     * @return Whether the response means the API is degraded
+     **/
+    static boolean isFailure(int statusCode) {
+        return statusCode >= 500;
+    }
+
+    public static class CircuitBreakerBuilder {
+        private double failureRateThreshold = 0.5;
+        private int minimumRequests = 20;
+        private int windowSize = 100;
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * FailureRateThreshold is the share of failed requests, between 0
+         * and 1, at which the breaker opens. Defaults to 0.5.
+         * */
+        public CircuitBreakerBuilder failureRateThreshold(double failureRateThreshold) {
+            if (failureRateThreshold <= 0 || failureRateThreshold > 1) {
+                throw new IllegalArgumentException("failureRateThreshold must be above 0 and at most 1");
+            }
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * MinimumRequests is the number of outcomes the breaker must have
+         * seen before it will open, so that a couple of early failures do
+         * not trip it. Defaults to 20.
+         * */
+        public CircuitBreakerBuilder minimumRequests(int minimumRequests) {
+            if (minimumRequests < 1) {
+                throw new IllegalArgumentException("minimumRequests must be at least 1");
+            }
+            this.minimumRequests = minimumRequests;
+            return this;
+        }
+
+        /**
+         * WindowSize is the number of most recent requests the failure
+         * rate is worked out over. Defaults to 100.
+         * */
+        public CircuitBreakerBuilder windowSize(int windowSize) {
+            if (windowSize < 1) {
+                throw new IllegalArgumentException("windowSize must be at least 1");
+            }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * OpenDuration is how long the breaker stays open before letting a
+         * probe request through. Defaults to 30 seconds.
+         * */
+        public CircuitBreakerBuilder openDuration(Duration openDuration) {
+            if (openDuration.isNegative() || openDuration.isZero()) {
+                throw new IllegalArgumentException("openDuration must be positive");
+            }
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *
  * The required variable is "user_id".
  **/
+@GenerateJsonWriter
 public class ClientAuthTokenData {
     private final String userId;
 
@@ -0,0 +1,208 @@
+package com.cord.server;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers client auth tokens, so that a user who needs a token several
+ * times within its lifetime gets the same one back instead of a freshly
+ * signed one.
+ *
+ * Tokens are keyed by the signer, project, user ID, group ID and a
+ * fingerprint of the user and group details, so any change to what would
+ * go into the token misses the cache. Each client has its own signer, so
+ * a client rebuilt with a rotated secret never gets a token signed with
+ * the old one. A cached token is only handed out while at least
+ * minRemaining of its lifetime is left.
+ *
+ * The cache holds at most maximumSize tokens. When it grows past that,
+ * one thread sweeps out expired tokens and, if that is not enough, drops
+ * others at random until it is back under the limit; other threads carry
+ * on using the cache meanwhile.
+ *
+ * A single cache may be shared between clients.
+ **/
+public class ClientTokenCache {
+    private final int maximumSize;
+    private final long minRemainingSeconds;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ClientTokenCache(ClientTokenCacheBuilder builder) {
+        this.maximumSize = builder.maximumSize;
+        this.minRemainingSeconds = builder.minRemaining.getSeconds();
+    }
+
+    /**
+     * @return The number of tokens handed out from the cache
+     **/
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of tokens which had to be signed because none
+     *         was cached
+     **/
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The fraction of lookups which were served from the cache,
+     *         or 0 if there have been none
+     **/
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return The number of tokens currently cached
+     **/
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops every cached token.
+     **/
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the cached token for the key if it is valid for long enough,
+     * or null, and counts the outcome.
+     **/
+    String get(Key key, long nowSeconds) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt - nowSeconds >= minRemainingSeconds) {
+            hits.increment();
+            return entry.token;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(Key key, String token, long expiresAtSeconds, long nowSeconds) {
+        entries.put(key, new Entry(token, expiresAtSeconds));
+        if (entries.size() > maximumSize && evicting.compareAndSet(false, true)) {
+            try {
+                evict(nowSeconds);
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    private void evict(long nowSeconds) {
+        entries.values().removeIf(entry -> entry.expiresAt - nowSeconds < minRemainingSeconds);
+        // ConcurrentHashMap iterates in hash order, so this drops tokens
+        // more or less at random
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maximumSize && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Everything that goes into a client auth token, apart from the times.
+     * The signer is compared by identity, as each client has its own.
+     **/
+    static final class Key {
+        private final TokenSigner signer;
+        private final String projectId;
+        private final String userId;
+        private final String groupId;
+        private final long detailsFingerprint;
+
+        Key(TokenSigner signer, String projectId, String userId, String groupId, long detailsFingerprint) {
+            this.signer = signer;
+            this.projectId = projectId;
+            this.userId = userId;
+            this.groupId = groupId;
+            this.detailsFingerprint = detailsFingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return signer == other.signer
+                    && detailsFingerprint == other.detailsFingerprint
+                    && Objects.equals(projectId, other.projectId)
+                    && Objects.equals(userId, other.userId)
+                    && Objects.equals(groupId, other.groupId);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(signer);
+            hash = 31 * hash + Objects.hashCode(projectId);
+            hash = 31 * hash + Objects.hashCode(userId);
+            hash = 31 * hash + Objects.hashCode(groupId);
+            return 31 * hash + Long.hashCode(detailsFingerprint);
+        }
+    }
+
+    private static final class Entry {
+        private final String token;
+        private final long expiresAt;
+
+        private Entry(String token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class ClientTokenCacheBuilder {
+        private int maximumSize = 10_000;
+        private Duration minRemaining = Duration.ofSeconds(30);
+
+        /**
+         * MaximumSize is the number of tokens the cache holds. Defaults to
+         * 10,000.
+         * */
+        public ClientTokenCacheBuilder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException("maximumSize must be at least 1");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * MinRemaining is how much of its lifetime a cached token must have
+         * left to be handed out, so that the frontend has time to use it.
+         * It should be well below the client's token lifetime, or the
+         * cache will never hit. Defaults to 30 seconds.
+         * */
+        public ClientTokenCacheBuilder minRemaining(Duration minRemaining) {
+            if (minRemaining.isNegative()) {
+                throw new IllegalArgumentException("minRemaining must not be negative");
+            }
+            this.minRemaining = minRemaining;
+            return this;
+        }
+
+        public ClientTokenCache build() {
+            return new ClientTokenCache(this);
+        }
+    }
+}
@@ -1,36 +1,72 @@
 package com.cord.server;
 
+import com.cord.server.CordClientRegistry.CordClientRegistryBuilder;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.jackson.io.JacksonSerializer;
 
 import javax.crypto.spec.SecretKeySpec;
-import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.Date;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * Static helpers for signing Cord tokens and syncing users and groups.
+ *
+ * Every call for a project goes through one CordClient, which is created
+ * on first use and kept for as long as the project is called with the
+ * same secret. These clients behave differently from the original
+ * one-request-per-call implementation:
+ *
+ * - a call gives up with a CordException after 30 seconds, retries
+ *   included
+ * - calls which could not be sent, or which the server answered with
+ *   429, 502, 503 or 504, are retried up to three times with backoff,
+ *   honouring any Retry-After header
+ * - at most 64 requests per project are in flight at once, and further
+ *   calls wait for a free slot
+ *
+ * Build a CordClient to choose other timeouts, retries or limits.
+ **/
 public class Cord {
-    private static final HttpClient httpClient = HttpClient.newHttpClient();
-    private static final ObjectMapper mapper = new ObjectMapper()
-            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-            .enable(SerializationFeature.INDENT_OUTPUT);
+    /**
+     * Creates the generators and parsers the SDK reads and writes JSON
+     * with. Unlike the mapper it is cheap to create, so minting a token
+     * does not pay for setting up Jackson databind.
+     **/
+    static final JsonFactory jsonFactory = new JsonFactory();
 
     private Cord() {
     }
 
+    /**
+     * @return The mapper for the values the SDK has no hand-written or
+     *         generated code for, such as metadata, created on first use
+     **/
+    static ObjectMapper mapper() {
+        return MapperHolder.MAPPER;
+    }
+
+    /**
+     * @return The transport for clients which were not given one,
+     *         created when the first of them sends a request
+     **/
+    static CordTransport defaultTransport() {
+        return TransportHolder.TRANSPORT;
+    }
+
+    private static class MapperHolder {
+        static final ObjectMapper MAPPER = new ObjectMapper()
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    }
+
+    private static class TransportHolder {
+        static final CordTransport TRANSPORT = new CordTransport.CordTransportBuilder().build();
+    }
+
     /**
      * This method should be used to sign a JWT token and send it
      * to the frontend part of the application, which will use the
@@ -46,41 +82,24 @@ public class Cord {
      *         a user in the frontend web components
      **/
     public static String getClientAuthToken(String projectId, String secret, ClientAuthTokenData payload) {
-        byte[] paddedSecret = padSecretTo64Bytes(secret.getBytes(StandardCharsets.UTF_8));
-        Key key = new SecretKeySpec(paddedSecret, SignatureAlgorithm.HS512.getJcaName());
-        Instant now = Instant.now();
-        return Jwts.builder()
-                .setHeaderParam("typ", "JWT")
-                .serializeToJsonWith(new JacksonSerializer<>(mapper))
-                .claim("project_id", projectId)
-                .claim("user_id", payload.getUserId())
-                .claim("group_id", getGroupId(payload))
-                .claim("user_details", payload.getUserDetails())
-                .claim("group_details", getGroupDetails(payload))
-                .setIssuedAt(Date.from(now))
-                .setExpiration(Date.from(now.plus(1, ChronoUnit.MINUTES)))
-                .signWith(key)
-                .compact();
-    }
-
-    private static String getGroupId(ClientAuthTokenData payload) {
-        if (payload.getGroupId() != null) {
-            return payload.getGroupId();
-        } else if (payload.getOrganizationId() != null) {
-            System.err.println("Please use groupId instead");
-            return payload.getOrganizationId();
-        }
-        return null;
+        return client(projectId, secret).getClientAuthToken(payload);
     }
 
-    private static PlatformGroupVariables getGroupDetails(ClientAuthTokenData payload) {
-        if (payload.getGroupDetails() != null) {
-            return payload.getGroupDetails();
-        } else if (payload.getOrganizationDetails() != null) {
-            System.err.println("Please use groupDetails instead");
-            return payload.getOrganizationDetails();
-        }
-        return null;
+    /**
+     * Signs client auth tokens for many users at once, in parallel. The
+     * signing key is prepared once and shared by all of them.
+     *
+     * @param projectId The project id, found in console.cord.com
+     * @param secret    The secret corresponding to the project id,
+     *                  also found in console.cord.cord
+     * @param payloads  The payloads to sign tokens for
+     * @return The tokens, in the same order as the payloads
+     **/
+    public static List<String> getClientAuthTokens(
+            String projectId,
+            String secret,
+            Collection<ClientAuthTokenData> payloads) {
+        return client(projectId, secret).getClientAuthTokens(payloads);
     }
 
     /**
@@ -95,16 +114,7 @@ public class Cord {
      *         all REST API requests
      **/
     public static String getServerAuthToken(String projectId, String secret) {
-        byte[] paddedSecret = padSecretTo64Bytes(secret.getBytes(StandardCharsets.UTF_8));
-        Key key = new SecretKeySpec(paddedSecret, SignatureAlgorithm.HS512.getJcaName());
-        Instant now = Instant.now();
-        return Jwts.builder()
-                .setHeaderParam("typ", "JWT")
-                .claim("project_id", projectId)
-                .setIssuedAt(Date.from(now))
-                .setExpiration(Date.from(now.plus(1, ChronoUnit.MINUTES)))
-                .signWith(key)
-                .compact();
+        return client(projectId, secret).getServerAuthToken();
     }
 
     /**
@@ -134,16 +144,14 @@ public class Cord {
      *         all Projects API requests
      **/
     public static String getProjectManagementAuthToken(String customerId, String secret) {
-        byte[] paddedSecret = padSecretTo64Bytes(secret.getBytes(StandardCharsets.UTF_8));
-        Key key = new SecretKeySpec(paddedSecret, SignatureAlgorithm.HS512.getJcaName());
-        Instant now = Instant.now();
-        return Jwts.builder()
-                .setHeaderParam("typ", "JWT")
-                .claim("customer_id", customerId)
-                .setIssuedAt(Date.from(now))
-                .setExpiration(Date.from(now.plus(1, ChronoUnit.MINUTES)))
-                .signWith(key)
-                .compact();
+        long now = Instant.now().getEpochSecond();
+        return managementSigner(secret).sign(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("customer_id", customerId);
+            generator.writeNumberField("iat", now);
+            generator.writeNumberField("exp", now + 60);
+            generator.writeEndObject();
+        });
     }
 
     /**
@@ -169,33 +177,7 @@ public class Cord {
             String secret,
             String userId,
             PlatformUserVariables user) throws CordException {
-        String authToken = getServerAuthToken(projectId, secret);
-
-        String requestBody;
-        try {
-            requestBody = mapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(user);
-        } catch (JsonProcessingException e) {
-            // Our user objects should always be serializable
-            throw new AssertionError(e);
-        }
-        System.out.println(requestBody);
-        HttpRequest request = HttpRequest.newBuilder(
-                URI.create(String.format("https://api.cord.com/v1/users/%s", userId)))
-                .header("authorization", String.format("Bearer %s", authToken))
-                .header("Content-Type", "application/json")
-                .PUT(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
-
-        HttpResponse<String> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new CordException("Could not sync Cord user", e);
-        }
-
-        return response.body();
+        return client(projectId, secret).syncCordUser(userId, user);
     }
 
     /**
@@ -221,32 +203,7 @@ public class Cord {
             String secret,
             String orgId,
             PlatformGroupVariables organization) throws CordException {
-        String authToken = getServerAuthToken(projectId, secret);
-
-        String requestBody;
-        try {
-            requestBody = mapper
-                    .writerWithDefaultPrettyPrinter()
-                    .writeValueAsString(organization);
-        } catch (JsonProcessingException e) {
-            // Our org objects should always be serializable
-            throw new AssertionError(e);
-        }
-        HttpRequest request = HttpRequest.newBuilder(
-                URI.create(String.format("https://api.cord.com/v1/organizations/%s", orgId)))
-                .header("authorization", String.format("Bearer %s", authToken))
-                .header("Content-Type", "application/json")
-                .PUT(HttpRequest.BodyPublishers.ofString(requestBody))
-                .build();
-
-        HttpResponse<String> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new CordException("Could not sync Cord organization", e);
-        }
-
-        return response.body();
+        return client(projectId, secret).syncCordOrganization(orgId, organization);
     }
 
     /**
@@ -275,38 +232,84 @@ public class Cord {
             String secret,
             List<PlatformUserVariables> users,
             List<PlatformGroupVariables> organizations) throws CordException {
-        String authToken = getServerAuthToken(projectId, secret);
+        return client(projectId, secret)
+                .batchSyncCordUsersAndOrganizations(users, organizations);
+    }
 
-        String requestBody;
-        try {
-            requestBody = String.format(
-                    "{ \"organizations\": %s, \"users\": %s }",
-                    mapper.writerWithDefaultPrettyPrinter().writeValueAsString(organizations),
-                    mapper.writerWithDefaultPrettyPrinter().writeValueAsString(users));
-        } catch (JsonProcessingException e) {
-            // Our user and org objects should always be serializable
-            throw new AssertionError(e);
+    /**
+     * The static methods have always printed warnings to stderr, so their
+     * clients keep doing that.
+     **/
+    private static final CordMetrics stderrWarnings = new CordMetrics() {
+        @Override
+        public void onLog(LogLevel level, String message, Throwable error) {
+            if (level.compareTo(LogLevel.WARN) >= 0) {
+                System.err.println(message);
+            }
         }
+    };
 
-        HttpRequest request = HttpRequest.newBuilder(
-                URI.create("https://api.cord.com/v1/batch"))
-                .header("authorization", String.format("Bearer %s", authToken))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+    /**
+     * The static methods keep a client per project, so that its signing
+     * key and server auth token are reused from one call to the next.
+     * Their calls give up after 30 seconds, so that a slow API never holds
+     * a caller's thread indefinitely. The class comment lists what else
+     * these clients do.
+     **/
+    private static class ClientsHolder {
+        static final CordClientRegistry CLIENTS = new CordClientRegistryBuilder()
+                .maxConcurrentRequestsPerProject(64)
+                .callTimeout(Duration.ofSeconds(30))
+                .metrics(stderrWarnings)
                 .build();
+    }
 
-        HttpResponse<String> response;
-        try {
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new CordException("Could not batch sync Cord users and organizations", e);
+    /**
+     * @return The registry holding the static methods' clients
+     **/
+    static CordClientRegistry clients() {
+        return ClientsHolder.CLIENTS;
+    }
+
+    private static CordClient client(String projectId, String secret) {
+        return clients().getClient(projectId, secret);
+    }
+
+    /**
+     * Management tokens are signed with the customer's secret rather than
+     * a project's. Only the signer for the last secret is kept, which
+     * covers the usual single customer without holding on to every
+     * secret ever passed in.
+     **/
+    private static volatile ManagementSigner lastManagementSigner;
+
+    private static TokenSigner managementSigner(String secret) {
+        ManagementSigner last = lastManagementSigner;
+        if (last != null && last.secret.equals(secret)) {
+            return last.signer;
         }
+        ManagementSigner created = new ManagementSigner(secret, new TokenSigner(signingKey(secret)));
+        lastManagementSigner = created;
+        return created.signer;
+    }
 
-        return response.body();
+    private static class ManagementSigner {
+        private final String secret;
+        private final TokenSigner signer;
+
+        private ManagementSigner(String secret, TokenSigner signer) {
+            this.secret = secret;
+            this.signer = signer;
+        }
     }
 
     private static final int MIN_SECRET_LENGTH = 64;
 
+    static Key signingKey(String secret) {
+        byte[] paddedSecret = padSecretTo64Bytes(secret.getBytes(StandardCharsets.UTF_8));
+        return new SecretKeySpec(paddedSecret, TokenSigner.ALGORITHM);
+    }
+
     private static byte[] padSecretTo64Bytes(byte[] secret) {
         if (MIN_SECRET_LENGTH <= secret.length) {
             return secret;
@@ -0,0 +1,29 @@
+package com.cord.server;
+
+/**
+ * Thrown when the Cord REST API answers a call with an error status.
+ **/
+public class CordApiException extends CordException {
+    private final CordResponse response;
+
+    public CordApiException(String message, CordResponse response) {
+        super(message + ": " + response);
+        this.response = response;
+    }
+
+    public int getStatusCode() {
+        return response.getStatusCode();
+    }
+
+    /**
+     * @return The API's name for the error, such as "invalid_field", or
+     *         null if the response did not include one
+     **/
+    public String getError() {
+        return response.getError();
+    }
+
+    public CordResponse getResponse() {
+        return response;
+    }
+}
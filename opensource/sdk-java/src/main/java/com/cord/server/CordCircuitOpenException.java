@@ -0,0 +1,18 @@
+package com.cord.server;
+
+/**
+ * Thrown when a call is refused because the client's CircuitBreaker is
+ * open after too many recent requests failed.
+ *
+ * The breaker may refuse a call before its first attempt, in which case
+ * nothing was sent, or refuse a retry after earlier attempts failed, in
+ * which case one of those may still have been applied. Either way the
+ * call can be deferred, for example by writing the user or group to a
+ * CordOutbox, which delivers it once the API has recovered; the sync APIs
+ * are upserts, so delivering it again is harmless.
+ **/
+public class CordCircuitOpenException extends CordException {
+    public CordCircuitOpenException(String message) {
+        super(message + ": the Cord API is failing, so calls to it are paused");
+    }
+}
@@ -0,0 +1,1705 @@
+package com.cord.server;
+
+import com.cord.server.CordMetrics.Endpoint;
+import com.cord.server.CordMetrics.LogLevel;
+import com.cord.server.CordMetrics.TokenType;
+import com.cord.server.ClientAuthTokenData.ClientAuthTokenDataBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A client for a single Cord project.
+ *
+ * The client prepares the signing key once and shares a single server
+ * auth token between all callers, minting a new one shortly before the
+ * current one expires. It is safe to use from many threads at once, so
+ * you should create one client per project and reuse it.
+ *
+ * Every API call has an asynchronous variant returning a
+ * CompletableFuture. All calls made through a client, synchronous or not,
+ * share a limit on the number of requests in flight at once, and
+ * optionally on the rate they are started at; calls beyond the limits
+ * wait in line without holding a thread.
+ *
+ * Calls which fail because the request could not be sent, or because
+ * the server is throttling or temporarily unavailable, are retried with
+ * backoff according to the client's RetryPolicy.
+ *
+ * To keep slow responses from holding up your own requests, a client can
+ * give every call a timeout, covering waiting in line and retries as
+ * well as the requests themselves; use withCallTimeout for a different
+ * timeout on particular calls. User and group syncs can be hedged, and a
+ * CircuitBreaker makes calls fail fast while the API is failing.
+ **/
+public class CordClient {
+    private static final long SERVER_AUTH_TOKEN_LIFETIME_SECONDS = 60;
+    /**
+     * How long before its expiry a cached server auth token is replaced, so
+     * that a token is never sent to the server just as it runs out.
+     **/
+    private static final long SERVER_AUTH_TOKEN_REFRESH_MARGIN_SECONDS = 10;
+
+    /**
+     * Returned in place of a response body when a sync is skipped because
+     * nothing changed since the last one.
+     **/
+    static final String UNCHANGED_RESPONSE_BODY =
+            "{\"success\":true,\"message\":\"Skipped, unchanged since the last sync\"}";
+
+    private final String projectId;
+    private final TokenSigner tokenSigner;
+    private final long clientTokenLifetimeSeconds;
+    private final ClientTokenCache clientTokenCache;
+    /**
+     * Null if the client was not given a transport, in which case
+     * transport() falls back to Cord.defaultTransport(). That transport is
+     * only created on the first request, so clients which only mint
+     * tokens never create an HttpClient.
+     **/
+    private final CordTransport transport;
+    private final AtomicReference<ServerAuthToken> serverAuthToken;
+    private final RequestLimiter limiter;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final long callTimeoutNanos;
+    private final HedgeDelay hedgeDelay;
+    private final CircuitBreaker circuitBreaker;
+    private final BatchSyncer batchSyncer;
+    private final boolean gzipRequests;
+    private final int maxMembersPerRequest;
+    private final int readPageSize;
+    private final SyncChangeDetector changeDetector;
+    private final CordMetrics metrics;
+    private final double logSampleRate;
+
+    private CordClient(CordClientBuilder builder) {
+        this.projectId = builder.projectId;
+        this.tokenSigner = new TokenSigner(Cord.signingKey(builder.secret));
+        this.clientTokenLifetimeSeconds = builder.clientTokenLifetime.getSeconds();
+        this.clientTokenCache = builder.clientTokenCache;
+        this.transport = builder.transport;
+        this.serverAuthToken = new AtomicReference<>();
+        this.limiter = builder.adaptiveConcurrency
+                ? new RequestLimiter(Math.min(builder.minConcurrentRequests, builder.maxConcurrentRequests),
+                        builder.maxConcurrentRequests)
+                : new RequestLimiter(builder.maxConcurrentRequests);
+        this.rateLimiter = builder.maxRequestsPerSecond > 0 ? new RateLimiter(builder.maxRequestsPerSecond) : null;
+        this.retryPolicy = builder.retryPolicy;
+        this.callTimeoutNanos = builder.callTimeout != null ? builder.callTimeout.toNanos() : 0;
+        this.hedgeDelay = builder.hedgePercentile > 0 ? new HedgeDelay(builder.hedgePercentile) : null;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.gzipRequests = builder.gzipRequests;
+        this.maxMembersPerRequest = builder.maxMembersPerRequest;
+        this.readPageSize = builder.readPageSize;
+        this.changeDetector = builder.changeDetector;
+        this.metrics = builder.metrics;
+        this.logSampleRate = builder.logSampleRate;
+        this.batchSyncer = new BatchSyncer(
+                this, builder.maxUsersPerBatch, builder.maxGroupsPerBatch, builder.batchParallelism);
+    }
+
+    private CordClient(CordClient client, long callTimeoutNanos) {
+        this.projectId = client.projectId;
+        this.tokenSigner = client.tokenSigner;
+        this.clientTokenLifetimeSeconds = client.clientTokenLifetimeSeconds;
+        this.clientTokenCache = client.clientTokenCache;
+        this.transport = client.transport;
+        this.serverAuthToken = client.serverAuthToken;
+        this.limiter = client.limiter;
+        this.rateLimiter = client.rateLimiter;
+        this.retryPolicy = client.retryPolicy;
+        this.callTimeoutNanos = callTimeoutNanos;
+        this.hedgeDelay = client.hedgeDelay;
+        this.circuitBreaker = client.circuitBreaker;
+        this.gzipRequests = client.gzipRequests;
+        this.maxMembersPerRequest = client.maxMembersPerRequest;
+        this.readPageSize = client.readPageSize;
+        this.changeDetector = client.changeDetector;
+        this.metrics = client.metrics;
+        this.logSampleRate = client.logSampleRate;
+        this.batchSyncer = client.batchSyncer.withClient(this);
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * Returns a client for the same project whose calls time out after
+     * the given duration instead of this client's call timeout. It shares
+     * everything else with this client, including its server auth token,
+     * its limits on requests in flight and its circuit breaker, and is
+     * cheap enough to make for a single call:
+     *
+     * <pre>
+     * client.withCallTimeout(Duration.ofMillis(300)).syncUser(userId, user);
+     * </pre>
+     *
+     * @param callTimeout How long each call may take, or null for no limit
+     **/
+    public CordClient withCallTimeout(Duration callTimeout) {
+        return new CordClient(this, callTimeout != null ? checkCallTimeout(callTimeout).toNanos() : 0);
+    }
+
+    /**
+     * @return The longest a call may take, or null if calls are not timed
+     *         out
+     **/
+    public Duration getCallTimeout() {
+        return callTimeoutNanos > 0 ? Duration.ofNanos(callTimeoutNanos) : null;
+    }
+
+    /**
+     * Does the one-off work that would otherwise slow down the first
+     * calls, so that a long-running service can pay for it at startup
+     * rather than on its first request. This loads the JSON and signing
+     * code, mints the server auth token, writes a throwaway client token
+     * and request body, and creates the HttpClient.
+     *
+     * Nothing is sent to Cord, so the first request still opens its
+     * connection. Calling this is never required, and short-lived callers
+     * which only mint tokens are better off without it.
+     **/
+    public void warmUp() {
+        PlatformUserVariables user = new PlatformUserVariablesBuilder("warm-up@example.com")
+                .id("warm-up")
+                .status(Status.ACTIVE)
+                .metadata(Collections.singletonMap("warm-up", true))
+                .build();
+        PlatformGroupVariables group = new PlatformGroupVariablesBuilder("warm-up")
+                .id("warm-up")
+                .members(Collections.singletonList("warm-up"))
+                .build();
+        ClientAuthTokenData payload = new ClientAuthTokenDataBuilder("warm-up")
+                .userDetails(user)
+                .groupDetails(group)
+                .build();
+        tokenSigner.sign(generator -> ClientAuthTokenDataJsonWriter.write(generator, payload));
+        JsonBodyPublisher.of(batchBody(Collections.singletonList(user), Collections.singletonList(group)),
+                gzipRequests);
+        SyncChangeDetector.fingerprint(group);
+        Cord.mapper().valueToTree(user);
+        getServerAuthToken();
+        transport().getHttpClient();
+    }
+
+    /**
+     * This method should be used to sign a JWT token and send it
+     * to the frontend part of the application, which will use the
+     * said token to authenticate the web components.
+     *
+     * @param payload The payload of type ClientAuthTokenData which
+     *                should contain the user and organization information
+     *                for the particular user you want to authenticate
+     * @return A signed JWT token which should successfully authenticate
+     *         a user in the frontend web components
+     **/
+    public String getClientAuthToken(ClientAuthTokenData payload) {
+        return getClientAuthToken(payload, Instant.now());
+    }
+
+    /**
+     * Signs client auth tokens for many users at once, in parallel on the
+     * common fork-join pool.
+     *
+     * @param payloads The payloads to sign tokens for
+     * @return The tokens, in the same order as the payloads
+     **/
+    public List<String> getClientAuthTokens(Collection<ClientAuthTokenData> payloads) {
+        try {
+            return getClientAuthTokensAsync(payloads, ForkJoinPool.commonPool()).join();
+        } catch (CompletionException e) {
+            // Signing only fails with unchecked exceptions, which are
+            // rethrown as they are
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Signs client auth tokens for a stream of payloads, in parallel on the
+     * common fork-join pool. The stream is collected first, so the stages
+     * which produce the payloads run just as the caller wrote them, and
+     * only the signing is spread over the pool.
+     *
+     * @param payloads The payloads to sign tokens for
+     * @return A sequential stream of the tokens, in the encounter order of
+     *         the payloads
+     **/
+    public Stream<String> getClientAuthTokens(Stream<ClientAuthTokenData> payloads) {
+        return getClientAuthTokens(payloads.collect(Collectors.toList())).stream();
+    }
+
+    /**
+     * Signs client auth tokens for many users at once, in parallel on the
+     * given executor. The payloads are split into a few slices per
+     * processor, and each slice is signed by one task.
+     *
+     * @param payloads The payloads to sign tokens for
+     * @param executor The executor to sign on
+     * @return A future of the tokens, in the same order as the payloads
+     **/
+    public CompletableFuture<List<String>> getClientAuthTokensAsync(
+            Collection<ClientAuthTokenData> payloads,
+            Executor executor) {
+        ClientAuthTokenData[] input = payloads.toArray(new ClientAuthTokenData[0]);
+        String[] tokens = new String[input.length];
+        int slices = Math.min(input.length, Runtime.getRuntime().availableProcessors() * 4);
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[slices];
+        for (int slice = 0; slice < slices; slice++) {
+            int from = (int) ((long) input.length * slice / slices);
+            int to = (int) ((long) input.length * (slice + 1) / slices);
+            tasks[slice] = CompletableFuture.runAsync(() -> {
+                Instant now = Instant.now();
+                for (int i = from; i < to; i++) {
+                    tokens[i] = getClientAuthToken(input[i], now);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(tasks).thenApply(ignored -> Arrays.asList(tokens));
+    }
+
+    String getClientAuthToken(ClientAuthTokenData payload, Instant now) {
+        long issuedAt = now.getEpochSecond();
+        String groupId = getGroupId(payload);
+        PlatformGroupVariables groupDetails = getGroupDetails(payload);
+        if (clientTokenCache == null) {
+            return mintClientAuthToken(payload, groupId, groupDetails, issuedAt);
+        }
+
+        ClientTokenCache.Key cacheKey = new ClientTokenCache.Key(tokenSigner, projectId, payload.getUserId(), groupId,
+                detailsFingerprint(payload.getUserDetails(), groupDetails));
+        String token = clientTokenCache.get(cacheKey, issuedAt);
+        if (token == null) {
+            token = mintClientAuthToken(payload, groupId, groupDetails, issuedAt);
+            clientTokenCache.put(cacheKey, token, issuedAt + clientTokenLifetimeSeconds, issuedAt);
+        }
+        return token;
+    }
+
+    private String mintClientAuthToken(
+            ClientAuthTokenData payload,
+            String groupId,
+            PlatformGroupVariables groupDetails,
+            long issuedAt) {
+        long start = System.nanoTime();
+        // Null claims are left out, as jjwt does
+        String token = tokenSigner.sign(generator -> {
+            generator.writeStartObject();
+            writeClaim(generator, "project_id", projectId);
+            writeClaim(generator, "user_id", payload.getUserId());
+            writeClaim(generator, "group_id", groupId);
+            writeClaim(generator, "user_details", payload.getUserDetails());
+            writeClaim(generator, "group_details", groupDetails);
+            generator.writeNumberField("iat", issuedAt);
+            generator.writeNumberField("exp", issuedAt + clientTokenLifetimeSeconds);
+            generator.writeEndObject();
+        });
+        metrics.onTokenMinted(TokenType.CLIENT, System.nanoTime() - start);
+        return token;
+    }
+
+    private static long detailsFingerprint(
+            PlatformUserVariables userDetails,
+            PlatformGroupVariables groupDetails) {
+        long fingerprint = userDetails != null ? SyncChangeDetector.fingerprint(userDetails) : 0;
+        if (groupDetails != null) {
+            fingerprint = SyncChangeDetector.Hash64.mix(fingerprint ^ SyncChangeDetector.fingerprint(groupDetails));
+        }
+        return fingerprint;
+    }
+
+    private static void writeClaim(JsonGenerator generator, String name, Object value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            JsonWriters.writeValue(generator, value, false);
+        }
+    }
+
+    private String getGroupId(ClientAuthTokenData payload) {
+        if (payload.getGroupId() != null) {
+            return payload.getGroupId();
+        } else if (payload.getOrganizationId() != null) {
+            log(LogLevel.WARN, "Please use groupId instead", null);
+            return payload.getOrganizationId();
+        }
+        return null;
+    }
+
+    private PlatformGroupVariables getGroupDetails(ClientAuthTokenData payload) {
+        if (payload.getGroupDetails() != null) {
+            return payload.getGroupDetails();
+        } else if (payload.getOrganizationDetails() != null) {
+            log(LogLevel.WARN, "Please use groupDetails instead", null);
+            return payload.getOrganizationDetails();
+        }
+        return null;
+    }
+
+    /**
+     * Returns a JWT token which authenticates the Cord REST APIs for
+     * this project.
+     *
+     * The same token is handed out until it is close to expiring. When it
+     * needs replacing, a new one is minted without taking any lock; if
+     * several threads race to do so, they all get a valid token and one of
+     * them becomes the new cached token.
+     *
+     * @return A signed JWT token which should successfully authenticate
+     *         all REST API requests
+     **/
+    public String getServerAuthToken() {
+        long now = Instant.now().getEpochSecond();
+        ServerAuthToken current = serverAuthToken.get();
+        if (current != null && current.refreshAt > now) {
+            return current.token;
+        }
+
+        ServerAuthToken minted = mintServerAuthToken(now);
+        serverAuthToken.compareAndSet(current, minted);
+        return minted.token;
+    }
+
+    private ServerAuthToken mintServerAuthToken(long now) {
+        long start = System.nanoTime();
+        long expiresAt = now + SERVER_AUTH_TOKEN_LIFETIME_SECONDS;
+        String token = tokenSigner.sign(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("project_id", projectId);
+            generator.writeNumberField("iat", now);
+            generator.writeNumberField("exp", expiresAt);
+            generator.writeEndObject();
+        });
+        metrics.onTokenMinted(TokenType.SERVER, System.nanoTime() - start);
+        return new ServerAuthToken(token, expiresAt - SERVER_AUTH_TOKEN_REFRESH_MARGIN_SECONDS);
+    }
+
+    /**
+     * This method should be used to synchronise users from your
+     * application into Cord.
+     *
+     * @param userId The ID - usually a UUID - of the user you are
+     *               syncing
+     * @param user   The user object of the current user. Please do
+     *               use the provided PlatformUserVariables type
+     *               provided by this library
+     * @return The response body of the API call to the Cord server,
+     *         indicating whether your call succeeded and if yes, how many
+     *         users were synced.
+     * @throws CordException if the the API call fails for any reason
+     * @see #syncUser(String, PlatformUserVariables)
+     **/
+    public String syncCordUser(String userId, PlatformUserVariables user) throws CordException {
+        return await(syncCordUserAsync(userId, user));
+    }
+
+    /**
+     * Asynchronous version of {@link #syncCordUser(String, PlatformUserVariables)}.
+     * The calling thread is not blocked while the request is in flight.
+     *
+     * @return A future of the response body of the API call, which
+     *         completes exceptionally with a CordException if the API
+     *         call fails for any reason
+     **/
+    public CompletableFuture<String> syncCordUserAsync(String userId, PlatformUserVariables user) {
+        return asBody(putUser(userId, user), "Could not sync Cord user");
+    }
+
+    /**
+     * Syncs a user from your application into Cord.
+     *
+     * @param userId The ID - usually a UUID - of the user you are
+     *               syncing
+     * @param user   The user
+     * @return The outcome of the API call
+     * @throws CordApiException if the API answers with an error status
+     * @throws CordException    if the API call fails for any other reason
+     **/
+    public CordResponse syncUser(String userId, PlatformUserVariables user) throws CordException {
+        return await(syncUserAsync(userId, user));
+    }
+
+    /**
+     * Asynchronous version of {@link #syncUser(String, PlatformUserVariables)}.
+     *
+     * @return A future of the outcome of the API call, which completes
+     *         exceptionally with a CordApiException if the API answers
+     *         with an error status, or a CordException if the call fails
+     *         for any other reason
+     **/
+    public CompletableFuture<CordResponse> syncUserAsync(String userId, PlatformUserVariables user) {
+        return asResponse(putUser(userId, user), "Could not sync Cord user", 1, 0);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> putUser(String userId, PlatformUserVariables user) {
+        if (changeDetector != null && userId == null) {
+            throw new IllegalArgumentException("Users synced with a change detector must have an ID");
+        }
+        long fingerprint = changeDetector == null ? 0 : SyncChangeDetector.fingerprint(user);
+        if (changeDetector != null && changeDetector.isUnchanged(SyncChangeDetector.USER, userId, fingerprint)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HttpRequest.Builder request = jsonRequest(
+                "PUT",
+                String.format("/v1/users/%s", userId),
+                generator -> PlatformUserVariablesJsonWriter.write(generator, user));
+
+        return send(request, Endpoint.USERS, "Could not sync Cord user").thenApply(response -> {
+            if (changeDetector != null && isSuccess(response)) {
+                changeDetector.record(SyncChangeDetector.USER, userId, fingerprint);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * This method should be used to synchronise organizations
+     * from your application into Cord.
+     *
+     * @param orgId        The ID - usually a UUID - of the organization you are
+     *                     syncing
+     * @param organization The organization object of the current user.
+     *                     Please do use the provided PlatformGroupVariables
+     *                     type provided by this library
+     * @return The response body of the API call to the Cord server,
+     *         indicating whether your call succeeded and if yes, how many
+     *         organizations were synced.
+     * @throws CordException if the the API call fails for any reason
+     * @see #syncGroup(String, PlatformGroupVariables)
+     **/
+    public String syncCordOrganization(String orgId, PlatformGroupVariables organization) throws CordException {
+        return await(syncCordOrganizationAsync(orgId, organization));
+    }
+
+    /**
+     * Asynchronous version of {@link #syncCordOrganization(String, PlatformGroupVariables)}.
+     * The calling thread is not blocked while the request is in flight.
+     *
+     * @return A future of the response body of the API call, which
+     *         completes exceptionally with a CordException if the API
+     *         call fails for any reason
+     **/
+    public CompletableFuture<String> syncCordOrganizationAsync(String orgId, PlatformGroupVariables organization) {
+        return asBody(putGroup(orgId, organization), "Could not sync Cord organization");
+    }
+
+    /**
+     * Syncs a group from your application into Cord.
+     *
+     * @param groupId The ID - usually a UUID - of the group you are
+     *                syncing
+     * @param group   The group
+     * @return The outcome of the API call
+     * @throws CordApiException if the API answers with an error status
+     * @throws CordException    if the API call fails for any other reason
+     **/
+    public CordResponse syncGroup(String groupId, PlatformGroupVariables group) throws CordException {
+        return await(syncGroupAsync(groupId, group));
+    }
+
+    /**
+     * Asynchronous version of {@link #syncGroup(String, PlatformGroupVariables)}.
+     *
+     * @return A future of the outcome of the API call, which completes
+     *         exceptionally with a CordApiException if the API answers
+     *         with an error status, or a CordException if the call fails
+     *         for any other reason
+     **/
+    public CompletableFuture<CordResponse> syncGroupAsync(String groupId, PlatformGroupVariables group) {
+        return asResponse(putGroup(groupId, group), "Could not sync Cord group", 0, 1);
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> putGroup(String groupId, PlatformGroupVariables group) {
+        if (changeDetector != null && groupId == null) {
+            throw new IllegalArgumentException("Groups synced with a change detector must have an ID");
+        }
+        long fingerprint = changeDetector == null ? 0 : SyncChangeDetector.fingerprint(group);
+        if (changeDetector != null && changeDetector.isUnchanged(SyncChangeDetector.GROUP, groupId, fingerprint)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HttpRequest.Builder request = jsonRequest(
+                "PUT",
+                String.format("/v1/organizations/%s", groupId),
+                generator -> PlatformGroupVariablesJsonWriter.write(generator, group));
+
+        return send(request, Endpoint.ORGANIZATIONS, "Could not sync Cord group").thenApply(response -> {
+            if (changeDetector != null && isSuccess(response)) {
+                changeDetector.record(SyncChangeDetector.GROUP, groupId, fingerprint);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * This method should be used to batch synchronise
+     * users and organizations from your application into Cord.
+     *
+     * Please do make sure to include the ID field in both the user
+     * and organization.
+     *
+     * @param users         A list of PlatformUserVariables type - make sure
+     *                      to include the ID for each
+     * @param organizations A list of PlatformGroupVariables type
+     *                      - make sure to include the ID for each
+     * @return The response body of the API call to the Cord server,
+     *         indicating whether your call succeeded and if yes, how many
+     *         users and organizations were synced.
+     * @throws CordException if the the API call fails for any reason
+     * @see #batchSync(List, List)
+     **/
+    public String batchSyncCordUsersAndOrganizations(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) throws CordException {
+        return await(batchSyncCordUsersAndOrganizationsAsync(users, organizations));
+    }
+
+    /**
+     * Asynchronous version of {@link #batchSyncCordUsersAndOrganizations(List, List)}.
+     * The calling thread is not blocked while the request is in flight.
+     *
+     * @return A future of the response body of the API call, which
+     *         completes exceptionally with a CordException if the API
+     *         call fails for any reason
+     **/
+    public CompletableFuture<String> batchSyncCordUsersAndOrganizationsAsync(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) {
+        return asBody(postBatch(users, organizations), "Could not batch sync Cord users and organizations");
+    }
+
+    /**
+     * Syncs up to 10,000 users and 1,000 groups from your application into
+     * Cord in a single call. Please do make sure to include the ID field
+     * in every user and group.
+     *
+     * @param users  The users to sync
+     * @param groups The groups to sync
+     * @return The outcome of the API call
+     * @throws CordApiException if the API answers with an error status
+     * @throws CordException    if the API call fails for any other reason
+     * @see #batchSyncAll(Iterator, Iterator)
+     **/
+    public CordResponse batchSync(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> groups) throws CordException {
+        return await(batchSyncAsync(users, groups));
+    }
+
+    /**
+     * Asynchronous version of {@link #batchSync(List, List)}.
+     *
+     * @return A future of the outcome of the API call, which completes
+     *         exceptionally with a CordApiException if the API answers
+     *         with an error status, or a CordException if the call fails
+     *         for any other reason
+     **/
+    public CompletableFuture<CordResponse> batchSyncAsync(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> groups) {
+        return asResponse(postBatch(users, groups),
+                "Could not batch sync Cord users and groups", users.size(), groups.size());
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> postBatch(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) {
+        if (changeDetector != null) {
+            return postChangedBatch(users, organizations);
+        }
+
+        return send(batchRequest(users, organizations), Endpoint.BATCH,
+                "Could not batch sync Cord users and groups");
+    }
+
+    /**
+     * Batch syncs only those users and organizations whose payload differs
+     * from what was last delivered, then records what was delivered.
+     **/
+    private CompletableFuture<HttpResponse<InputStream>> postChangedBatch(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) {
+        // The detector remembers payloads by ID, so check every ID before
+        // it counts any of them
+        for (PlatformUserVariables user : users) {
+            if (user.getId() == null) {
+                throw new IllegalArgumentException("Users synced with a change detector must have an ID");
+            }
+        }
+        for (PlatformGroupVariables organization : organizations) {
+            if (organization.getId() == null) {
+                throw new IllegalArgumentException("Groups synced with a change detector must have an ID");
+            }
+        }
+        List<PlatformUserVariables> changedUsers = new ArrayList<>(users.size());
+        long[] userFingerprints = new long[users.size()];
+        for (PlatformUserVariables user : users) {
+            long fingerprint = SyncChangeDetector.fingerprint(user);
+            if (!changeDetector.isUnchanged(SyncChangeDetector.USER, user.getId(), fingerprint)) {
+                userFingerprints[changedUsers.size()] = fingerprint;
+                changedUsers.add(user);
+            }
+        }
+        List<PlatformGroupVariables> changedOrganizations = new ArrayList<>(organizations.size());
+        long[] organizationFingerprints = new long[organizations.size()];
+        for (PlatformGroupVariables organization : organizations) {
+            long fingerprint = SyncChangeDetector.fingerprint(organization);
+            if (!changeDetector.isUnchanged(SyncChangeDetector.GROUP, organization.getId(), fingerprint)) {
+                organizationFingerprints[changedOrganizations.size()] = fingerprint;
+                changedOrganizations.add(organization);
+            }
+        }
+        if (changedUsers.isEmpty() && changedOrganizations.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return send(batchRequest(changedUsers, changedOrganizations), Endpoint.BATCH,
+                "Could not batch sync Cord users and groups").thenApply(response -> {
+                    if (isSuccess(response)) {
+                        for (int i = 0; i < changedUsers.size(); i++) {
+                            changeDetector.record(
+                                    SyncChangeDetector.USER, changedUsers.get(i).getId(), userFingerprints[i]);
+                        }
+                        for (int i = 0; i < changedOrganizations.size(); i++) {
+                            changeDetector.record(
+                                    SyncChangeDetector.GROUP,
+                                    changedOrganizations.get(i).getId(),
+                                    organizationFingerprints[i]);
+                        }
+                    }
+                    return response;
+                });
+    }
+
+    /**
+     * Reads the whole response body as a String, whatever the status, for
+     * the methods which have always returned it. A null response means the
+     * call was skipped because nothing changed.
+     **/
+    private static CompletableFuture<String> asBody(
+            CompletableFuture<HttpResponse<InputStream>> response,
+            String errorMessage) {
+        return response.thenApply(r -> {
+            if (r == null) {
+                return UNCHANGED_RESPONSE_BODY;
+            }
+            try (InputStream body = r.body()) {
+                return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new CompletionException(new CordException(errorMessage, e));
+            }
+        });
+    }
+
+    /**
+     * Parses the response as it streams in, and turns error statuses into
+     * CordApiExceptions. A null response means the call was skipped
+     * because nothing changed.
+     *
+     * The body is read on the thread which completes the response future,
+     * which is one of the transport's executor threads. Cord's responses
+     * are small, so this only holds the thread briefly.
+     **/
+    private static CompletableFuture<CordResponse> asResponse(
+            CompletableFuture<HttpResponse<InputStream>> response,
+            String errorMessage,
+            int users,
+            int groups) {
+        return response.thenApply(r -> {
+            if (r == null) {
+                return CordResponse.unchanged();
+            }
+            CordResponse result;
+            try {
+                result = CordResponse.read(r.statusCode(), r.headers(), r.body(), users, groups);
+            } catch (IOException e) {
+                throw new CompletionException(new CordException(errorMessage, e));
+            }
+            if (!result.isSuccess()) {
+                throw new CompletionException(new CordApiException(errorMessage, result));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Adds users to a group and removes others, without resending the
+     * group's full member list. The users must already exist. Deltas with
+     * more users than maxMembersPerRequest are split into several calls,
+     * which are sent in parallel.
+     *
+     * @param groupId The ID of the group
+     * @param add     The IDs of users to add to the group
+     * @param remove  The IDs of users to remove from the group
+     * @throws CordApiException if the API answers any of the calls with
+     *                          an error status
+     * @throws CordException    if a call fails for any other reason
+     **/
+    public void updateGroupMembers(
+            String groupId,
+            Collection<String> add,
+            Collection<String> remove) throws CordException {
+        await(updateGroupMembersAsync(groupId, add, remove));
+    }
+
+    /**
+     * Asynchronous version of {@link #updateGroupMembers(String, Collection, Collection)}.
+     *
+     * @return A future which completes once every call has succeeded, or
+     *         completes exceptionally with a CordApiException or
+     *         CordException if any of them failed
+     **/
+    public CompletableFuture<Void> updateGroupMembersAsync(
+            String groupId,
+            Collection<String> add,
+            Collection<String> remove) {
+        // Checked against the delta's set rather than the collection, which
+        // may be a list as long as the group
+        MembershipDelta delta = new MembershipDelta().add(add);
+        for (String userId : remove) {
+            if (delta.isAdded(userId)) {
+                throw new IllegalArgumentException("User " + userId + " is both added and removed");
+            }
+        }
+        return sendMembershipDelta(groupId, delta.remove(remove));
+    }
+
+    CompletableFuture<Void> sendMembershipDelta(String groupId, MembershipDelta delta) {
+        List<MembershipDelta> pieces = delta.split(maxMembersPerRequest);
+        CompletableFuture<?>[] sent = new CompletableFuture<?>[pieces.size()];
+        for (int i = 0; i < sent.length; i++) {
+            HttpRequest.Builder request = jsonRequest(
+                    "POST",
+                    String.format("/v1/groups/%s/members", groupId),
+                    pieces.get(i).body());
+            sent[i] = asResponse(
+                    send(request, Endpoint.GROUP_MEMBERS, "Could not update Cord group members"),
+                    "Could not update Cord group members", 0, 0);
+        }
+        return CompletableFuture.allOf(sent).whenComplete((ignored, error) -> {
+            // The recorded fingerprint of the group covers its member list,
+            // which no longer matches
+            if (changeDetector != null) {
+                changeDetector.forgetGroup(groupId);
+            }
+        });
+    }
+
+    private HttpRequest.Builder batchRequest(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) {
+        return jsonRequest("POST", "/v1/batch", batchBody(users, organizations));
+    }
+
+    /**
+     * Batch syncs users and groups which have already been serialized to
+     * JSON, as a CordOutbox stores them. Change detection is skipped.
+     **/
+    CompletableFuture<CordResponse> batchSyncSerialized(Collection<String> users, Collection<String> groups) {
+        HttpRequest.Builder request = jsonRequest("POST", "/v1/batch", generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("organizations");
+            for (String group : groups) {
+                generator.writeRawValue(group);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("users");
+            for (String user : users) {
+                generator.writeRawValue(user);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        });
+        return asResponse(send(request, Endpoint.BATCH, "Could not batch sync Cord users and groups"),
+                "Could not batch sync Cord users and groups", users.size(), groups.size());
+    }
+
+    static JsonBodyPublisher.JsonContent batchBody(
+            List<PlatformUserVariables> users,
+            List<PlatformGroupVariables> organizations) {
+        return generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("organizations");
+            for (PlatformGroupVariables organization : organizations) {
+                PlatformGroupVariablesJsonWriter.write(generator, organization);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("users");
+            for (PlatformUserVariables user : users) {
+                PlatformUserVariablesJsonWriter.write(generator, user);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        };
+    }
+
+    /**
+     * This method should be used to batch synchronise any number of users
+     * and groups, for example during a full directory sync.
+     *
+     * The input is consumed lazily and split into chunks no larger than
+     * the batch API accepts. Several chunks are sent in parallel, and the
+     * calling thread waits whenever that many are in flight, so the input
+     * is only read as fast as Cord accepts it. All groups are delivered
+     * before any users are sent. A chunk which fails does not stop the
+     * rest; check the returned summary to see how each chunk went.
+     *
+     * Please do make sure to include the ID field in every user and group.
+     *
+     * @param users  The users to sync
+     * @param groups The groups to sync
+     * @return A summary of every chunk that was sent
+     * @throws CordException if the calling thread is interrupted
+     **/
+    public BatchSyncSummary batchSyncAll(
+            Iterator<PlatformUserVariables> users,
+            Iterator<PlatformGroupVariables> groups) throws CordException {
+        return batchSyncer.sync(users, groups);
+    }
+
+    /**
+     * Stream version of {@link #batchSyncAll(Iterator, Iterator)}. The
+     * streams are consumed, but not closed.
+     **/
+    public BatchSyncSummary batchSyncAll(
+            Stream<PlatformUserVariables> users,
+            Stream<PlatformGroupVariables> groups) throws CordException {
+        return batchSyncer.sync(users.iterator(), groups.iterator());
+    }
+
+    /**
+     * Fetches a user from Cord.
+     *
+     * @param userId The ID of the user
+     * @return The user as Cord has it
+     * @throws CordApiException if the API answers with an error status,
+     *                          such as 404 if there is no such user
+     * @throws CordException    if the API call fails for any other reason
+     **/
+    public PlatformUserVariables getUser(String userId) throws CordException {
+        return await(getUserAsync(userId));
+    }
+
+    /**
+     * Asynchronous version of {@link #getUser(String)}.
+     **/
+    public CompletableFuture<PlatformUserVariables> getUserAsync(String userId) {
+        return read(String.format("/v1/users/%s", userId), Endpoint.USERS,
+                "Could not fetch Cord user", ResourceDecoder::readUser);
+    }
+
+    /**
+     * Fetches a group from Cord, including its members.
+     *
+     * @param groupId The ID of the group
+     * @return The group as Cord has it
+     * @throws CordApiException if the API answers with an error status,
+     *                          such as 404 if there is no such group
+     * @throws CordException    if the API call fails for any other reason
+     **/
+    public PlatformGroupVariables getGroup(String groupId) throws CordException {
+        return await(getGroupAsync(groupId));
+    }
+
+    /**
+     * Asynchronous version of {@link #getGroup(String)}.
+     **/
+    public CompletableFuture<PlatformGroupVariables> getGroupAsync(String groupId) {
+        return read(String.format("/v1/groups/%s", groupId), Endpoint.ORGANIZATIONS,
+                "Could not fetch Cord group", ResourceDecoder::readGroup);
+    }
+
+    /**
+     * Lists every user in the project, fetching them lazily a page of
+     * readPageSize users at a time. The next page is requested as soon as
+     * the current one arrives, so a full scan is limited by the network
+     * rather than by waiting for each page in turn, and only two pages are
+     * held in memory at once.
+     *
+     * If a page cannot be fetched, the iterator throws an
+     * UncheckedCordException.
+     **/
+    public Iterator<PlatformUserVariables> listUsers() {
+        return userPages();
+    }
+
+    /**
+     * Stream version of {@link #listUsers()}. Closing the stream stops
+     * any page fetch in progress.
+     **/
+    public Stream<PlatformUserVariables> streamUsers() {
+        return stream(userPages());
+    }
+
+    private PagedIterator<PlatformUserVariables> userPages() {
+        return new PagedIterator<>(token -> read(
+                "/v1/users?limit=" + readPageSize + (token != null ? "&token=" + encode(token) : ""),
+                Endpoint.USERS, "Could not list Cord users", ResourceDecoder::readUserPage));
+    }
+
+    /**
+     * Lists every group in the project. The API returns all groups in one
+     * response, so they are fetched on the first call to the iterator and
+     * held in memory together.
+     *
+     * If the groups cannot be fetched, the iterator throws an
+     * UncheckedCordException.
+     **/
+    public Iterator<PlatformGroupVariables> listGroups() {
+        return groupPages();
+    }
+
+    /**
+     * Stream version of {@link #listGroups()}.
+     **/
+    public Stream<PlatformGroupVariables> streamGroups() {
+        return stream(groupPages());
+    }
+
+    private PagedIterator<PlatformGroupVariables> groupPages() {
+        return new PagedIterator<>(token -> read("/v1/groups", Endpoint.ORGANIZATIONS,
+                "Could not list Cord groups", ResourceDecoder::readGroupList));
+    }
+
+    private static <T> Stream<T> stream(PagedIterator<T> iterator) {
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                        false)
+                .onClose(iterator::close);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends a GET request and decodes the response as it streams in.
+     * Error statuses become CordApiExceptions. Cancelling the returned
+     * future abandons the call, and discards its response if one comes.
+     **/
+    private <T> CompletableFuture<T> read(
+            String path,
+            Endpoint endpoint,
+            String errorMessage,
+            ResponseDecoder<T> decoder) {
+        CompletableFuture<HttpResponse<InputStream>> response =
+                send(transport().newRequest(path).GET(), endpoint, errorMessage);
+        CompletableFuture<T> decoded = response.thenApply(r -> {
+            try {
+                if (!isSuccess(r)) {
+                    CordResponse result = CordResponse.read(r.statusCode(), r.headers(), r.body(), 0, 0);
+                    throw new CompletionException(new CordApiException(errorMessage, result));
+                }
+                try (InputStream body = r.body();
+                     JsonParser parser = Cord.jsonFactory.createParser(body)) {
+                    return decoder.decode(parser);
+                }
+            } catch (IOException e) {
+                throw new CompletionException(new CordException(errorMessage, e));
+            }
+        });
+        // Cancelling the decoded stage does not reach the call, whose
+        // response would then land with nobody to read or close its body
+        decoded.whenComplete((value, error) -> {
+            if (decoded.isCancelled() && !response.cancel(false)) {
+                response.thenAccept(CordClient::discard);
+            }
+        });
+        return decoded;
+    }
+
+    @FunctionalInterface
+    private interface ResponseDecoder<T> {
+        T decode(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Starts a request whose body is the compact JSON written by the given
+     * content, gzipped if this client was configured to do so.
+     **/
+    private HttpRequest.Builder jsonRequest(String method, String path, JsonBodyPublisher.JsonContent content) {
+        HttpRequest.Builder request = transport().newRequest(path)
+                .header("Content-Type", "application/json");
+        if (gzipRequests) {
+            request.header("Content-Encoding", "gzip");
+        }
+        return request.method(method, JsonBodyPublisher.of(content, gzipRequests));
+    }
+
+    private CordTransport transport() {
+        return transport != null ? transport : Cord.defaultTransport();
+    }
+
+    /**
+     * Sends the request once there is room under the in-flight limit,
+     * retrying it as the retry policy allows. The authorization header is
+     * only added as each attempt goes out, so a request that waited in line
+     * or for a retry never carries a stale token. Retries give up their
+     * permit while they wait. If the request cannot be sent, the returned
+     * future completes exceptionally with a CordException carrying the
+     * given message.
+     *
+     * With a call timeout, the future fails with a CordException caused by
+     * a TimeoutException once the timeout passes, however far the call
+     * got. Each attempt is sent with a request timeout of no more than the
+     * time left, so the HttpClient aborts the exchange when it runs out; a
+     * call which times out while waiting in line is never sent, and no
+     * retry is started which could not begin before the deadline.
+     **/
+    private CompletableFuture<HttpResponse<InputStream>> send(
+            HttpRequest.Builder request,
+            Endpoint endpoint,
+            String errorMessage) {
+        CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        long deadline = 0;
+        if (callTimeoutNanos > 0) {
+            deadline = System.nanoTime() + callTimeoutNanos;
+            CompletableFuture.delayedExecutor(callTimeoutNanos, TimeUnit.NANOSECONDS)
+                    .execute(() -> timeOut(result, errorMessage));
+        }
+        attempt(request, endpoint, errorMessage, 1, deadline, result);
+        return result;
+    }
+
+    private void timeOut(CompletableFuture<HttpResponse<InputStream>> result, String errorMessage) {
+        if (result.isDone()) {
+            return;
+        }
+        TimeoutException cause = new TimeoutException(
+                String.format("The call did not complete within %d ms", callTimeoutNanos / 1_000_000));
+        if (result.completeExceptionally(new CordException(errorMessage, cause))) {
+            log(LogLevel.WARN, errorMessage, cause);
+        }
+    }
+
+    private void attempt(
+            HttpRequest.Builder request,
+            Endpoint endpoint,
+            String errorMessage,
+            int attempt,
+            long deadline,
+            CompletableFuture<HttpResponse<InputStream>> result) {
+        if (result.isDone()) {
+            // The call timed out while waiting to be retried
+            return;
+        }
+        if (circuitBreaker != null && circuitBreaker.isOpen(System.nanoTime())) {
+            result.completeExceptionally(new CordCircuitOpenException(errorMessage));
+            return;
+        }
+        CompletableFuture<Void> permit = rateLimiter != null
+                ? rateLimiter.acquire().thenCompose(ignored -> limiter.acquire())
+                : limiter.acquire();
+        if (metrics != CordMetrics.NOOP) {
+            metrics.onQueueDepth(CordMetrics.Queue.REQUESTS, limiter.getQueued());
+        }
+        permit.thenCompose(ignored -> {
+                    if (result.isDone()) {
+                        // Timed out while waiting in line, so not worth sending
+                        return CompletableFuture.<HttpResponse<InputStream>>completedFuture(null);
+                    }
+                    long now = System.nanoTime();
+                    CircuitBreaker.Permit breakerPermit =
+                            circuitBreaker != null ? circuitBreaker.tryAcquire(now) : null;
+                    if (breakerPermit == CircuitBreaker.Permit.DENIED) {
+                        return CompletableFuture.<HttpResponse<InputStream>>failedFuture(
+                                new CordCircuitOpenException(errorMessage));
+                    }
+                    HttpRequest.Builder attemptRequest = request.copy()
+                            .header("authorization", String.format("Bearer %s", getServerAuthToken()));
+                    if (callTimeoutNanos > 0) {
+                        attemptRequest.timeout(attemptTimeout(deadline - now));
+                    }
+                    HttpRequest built = attemptRequest.build();
+                    CompletableFuture<HttpResponse<InputStream>> exchange = exchange(built, endpoint);
+                    if (circuitBreaker != null) {
+                        exchange.whenComplete((response, error) -> recordOutcome(breakerPermit, response, error));
+                    }
+                    return exchange;
+                })
+                .whenComplete((response, error) -> {
+                    limiter.release();
+                    if (response != null) {
+                        if (RetryPolicy.isThrottled(response.statusCode())) {
+                            limiter.onThrottled();
+                        } else {
+                            limiter.onSuccess();
+                        }
+                    }
+
+                    Throwable cause = unwrap(error);
+                    if (result.isDone()) {
+                        // The call timed out while this attempt was in line
+                        // or in flight
+                        if (response != null) {
+                            discard(response);
+                        }
+                        return;
+                    }
+                    if (cause instanceof CordCircuitOpenException) {
+                        result.completeExceptionally(cause);
+                        return;
+                    }
+                    long delay = retryPolicy.retryDelayMillis(attempt, response, cause);
+                    if (delay >= 0 && callTimeoutNanos > 0
+                            && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - deadline >= 0) {
+                        // The retry could not start before the deadline
+                        delay = -1;
+                    }
+                    if (delay >= 0) {
+                        if (response != null) {
+                            discard(response);
+                        }
+                        metrics.onRetry(endpoint, attempt, delay);
+                        if (shouldLog(LogLevel.INFO)) {
+                            log(LogLevel.INFO, String.format("Retrying %s request in %d ms after attempt %d %s",
+                                    endpoint, delay, attempt,
+                                    response != null ? "got status " + response.statusCode() : "failed"), cause);
+                        }
+                        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                                .execute(() -> attempt(request, endpoint, errorMessage, attempt + 1, deadline, result));
+                    } else if (cause != null) {
+                        if (result.completeExceptionally(new CordException(errorMessage, cause))) {
+                            log(LogLevel.WARN, errorMessage, cause);
+                        }
+                    } else if (!result.complete(response)) {
+                        discard(response);
+                    }
+                });
+    }
+
+    /**
+     * @return The timeout for an attempt made with the given time left
+     *         before the call's deadline, which is no longer than the
+     *         transport's request timeout
+     **/
+    private Duration attemptTimeout(long remainingNanos) {
+        Duration remaining = Duration.ofNanos(Math.max(TimeUnit.MILLISECONDS.toNanos(1), remainingNanos));
+        Duration requestTimeout = transport().getRequestTimeout();
+        return requestTimeout != null && requestTimeout.compareTo(remaining) < 0 ? requestTimeout : remaining;
+    }
+
+    /**
+     * Sends a request which already holds a permit. Hedged requests are
+     * PUTs, which the API treats as idempotent upserts: if one is still in
+     * flight after the hedge delay and there is room under the in-flight
+     * limit without queueing, a duplicate is sent on its own permit. The
+     * first response is used, and the other is read and dropped when it
+     * arrives. A failure only counts once both requests have failed, or if
+     * the first one fails before the duplicate was sent.
+     **/
+    private CompletableFuture<HttpResponse<InputStream>> exchange(HttpRequest request, Endpoint endpoint) {
+        CompletableFuture<HttpResponse<InputStream>> first = sendOnce(request, endpoint);
+        long delay = hedgeDelay != null && "PUT".equals(request.method())
+                ? hedgeDelay.getDelayNanos(endpoint, System.nanoTime())
+                : -1;
+        if (delay < 0) {
+            return first;
+        }
+        Hedge hedge = new Hedge();
+        first.whenComplete(hedge::complete);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> {
+            if (hedge.result.isDone() || !limiter.tryAcquire()) {
+                return;
+            }
+            if (!hedge.launch()) {
+                limiter.release();
+                return;
+            }
+            metrics.onHedge(endpoint, delay);
+            sendOnce(request, endpoint).whenComplete((response, error) -> {
+                limiter.release();
+                hedge.complete(response, error);
+            });
+        });
+        return hedge.result;
+    }
+
+    private CompletableFuture<HttpResponse<InputStream>> sendOnce(HttpRequest request, Endpoint endpoint) {
+        long start = System.nanoTime();
+        return transport().getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((response, error) -> record(endpoint, request, start, response, error));
+    }
+
+    private void recordOutcome(CircuitBreaker.Permit permit, HttpResponse<InputStream> response, Throwable error) {
+        if (response != null && !CircuitBreaker.isFailure(response.statusCode())) {
+            if (circuitBreaker.onSuccess(permit) && shouldLog(LogLevel.INFO)) {
+                log(LogLevel.INFO, "Cord API circuit breaker closed after a successful probe", null);
+            }
+        } else if (circuitBreaker.onFailure(permit, System.nanoTime())) {
+            log(LogLevel.WARN, String.format("Cord API circuit breaker opened after %s",
+                    response != null ? "status " + response.statusCode() : "a failed request"), unwrap(error));
+        }
+    }
+
+    private void record(
+            Endpoint endpoint,
+            HttpRequest request,
+            long start,
+            HttpResponse<InputStream> response,
+            Throwable error) {
+        long duration = System.nanoTime() - start;
+        if (response != null) {
+            if (hedgeDelay != null) {
+                hedgeDelay.record(endpoint, duration, start + duration);
+            }
+            if (metrics != CordMetrics.NOOP) {
+                long requestBytes = request.bodyPublisher()
+                        .map(HttpRequest.BodyPublisher::contentLength)
+                        .orElse(-1L);
+                long responseBytes = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                metrics.onResponse(endpoint, response.statusCode(), duration, requestBytes, responseBytes);
+            }
+            if (shouldLog(LogLevel.DEBUG)) {
+                log(LogLevel.DEBUG, String.format("%s %s returned %d in %d ms",
+                        request.method(), request.uri(), response.statusCode(), duration / 1_000_000), null);
+            }
+        } else {
+            metrics.onRequestFailed(endpoint, duration, unwrap(error));
+        }
+    }
+
+    /**
+     * Log messages below WARN are only passed on for the sampled fraction
+     * of calls, so check this before building such a message.
+     **/
+    private boolean shouldLog(LogLevel level) {
+        if (metrics == CordMetrics.NOOP) {
+            return false;
+        }
+        return level.compareTo(LogLevel.WARN) >= 0
+                || (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate);
+    }
+
+    void log(LogLevel level, String message, Throwable error) {
+        metrics.onLog(level, message, error);
+    }
+
+    CordMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads and drops the body of a response which will not be used, so
+     * its connection can be reused.
+     **/
+    private static void discard(HttpResponse<InputStream> response) {
+        try (InputStream body = response.body()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            // The connection is closed instead, and that is all
+        }
+    }
+
+    private static Duration checkCallTimeout(Duration callTimeout) {
+        if (callTimeout.isNegative() || callTimeout.isZero()) {
+            throw new IllegalArgumentException("callTimeout must be positive");
+        }
+        return callTimeout;
+    }
+
+    private static boolean isSuccess(HttpResponse<?> response) {
+        return response.statusCode() >= 200 && response.statusCode() < 300;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Waits for a future returned by one of the asynchronous methods,
+     * rethrowing its failure as the CordException it completed with.
+     **/
+    private static <T> T await(CompletableFuture<T> future) throws CordException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CordException) {
+                throw (CordException) e.getCause();
+            }
+            throw new CordException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CordException("Interrupted while waiting for the Cord API", e);
+        }
+    }
+
+    /**
+     * The race between a hedged request and its duplicate.
+     **/
+    private static class Hedge {
+        private final CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        private int outstanding = 1;
+        private Throwable error;
+
+        /**
+         * @return Whether the duplicate should be sent, which it should not
+         *         once the first request has completed
+         **/
+        synchronized boolean launch() {
+            if (outstanding == 0 || result.isDone()) {
+                return false;
+            }
+            outstanding++;
+            return true;
+        }
+
+        void complete(HttpResponse<InputStream> response, Throwable error) {
+            Throwable failure;
+            synchronized (this) {
+                outstanding--;
+                if (response == null && this.error == null) {
+                    this.error = error;
+                }
+                if (response == null && outstanding > 0) {
+                    return;
+                }
+                failure = this.error;
+            }
+            if (response != null) {
+                if (!result.complete(response)) {
+                    discard(response);
+                }
+            } else {
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static class ServerAuthToken {
+        private final String token;
+        private final long refreshAt;
+
+        private ServerAuthToken(String token, long refreshAt) {
+            this.token = token;
+            this.refreshAt = refreshAt;
+        }
+    }
+
+    public static class CordClientBuilder {
+        private final String projectId;
+        private final String secret;
+        private CordTransport transport;
+        private int maxConcurrentRequests = 64;
+        private boolean adaptiveConcurrency;
+        private int minConcurrentRequests = 4;
+        private double maxRequestsPerSecond;
+        private RetryPolicy retryPolicy = new RetryPolicy.RetryPolicyBuilder().build();
+        private Duration callTimeout;
+        private double hedgePercentile;
+        private CircuitBreaker circuitBreaker;
+        private int maxUsersPerBatch = 10000;
+        private int maxGroupsPerBatch = 1000;
+        private int batchParallelism = 4;
+        private int maxMembersPerRequest = 1000;
+        private int readPageSize = 1000;
+        private boolean gzipRequests;
+        private SyncChangeDetector changeDetector;
+        private Duration clientTokenLifetime = Duration.ofMinutes(1);
+        private ClientTokenCache clientTokenCache;
+        private CordMetrics metrics = CordMetrics.NOOP;
+        private double logSampleRate;
+
+        /**
+         * @param projectId The project id, found in console.cord.com
+         * @param secret    The secret corresponding to the project id,
+         *                  also found in console.cord.com
+         **/
+        public CordClientBuilder(String projectId, String secret) {
+            this.projectId = projectId;
+            this.secret = secret;
+        }
+
+        /**
+         * Transport configures how the client reaches the Cord REST API.
+         * Defaults to a transport shared by all clients, which talks to
+         * https://api.cord.com and is only created once a client first
+         * sends a request.
+         * */
+        public CordClientBuilder transport(CordTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * MaxConcurrentRequests is the number of API requests this client
+         * will have in flight at once. Further requests are queued until
+         * an earlier one completes. Defaults to 64.
+         * */
+        public CordClientBuilder maxConcurrentRequests(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+            }
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * AdaptiveConcurrency lets the client find the concurrency the API
+         * will take. It starts at minConcurrentRequests and raises the
+         * limit while requests succeed, up to maxConcurrentRequests. When
+         * the server throttles a request with 429 or 503, the limit is
+         * halved. Disabled by default, in which case the limit is always
+         * maxConcurrentRequests.
+         * */
+        public CordClientBuilder adaptiveConcurrency(boolean adaptiveConcurrency) {
+            this.adaptiveConcurrency = adaptiveConcurrency;
+            return this;
+        }
+
+        /**
+         * MinConcurrentRequests is the lowest in-flight limit adaptive
+         * concurrency will back off to, and the limit it starts at.
+         * Defaults to 4.
+         * */
+        public CordClientBuilder minConcurrentRequests(int minConcurrentRequests) {
+            if (minConcurrentRequests < 1) {
+                throw new IllegalArgumentException("minConcurrentRequests must be at least 1");
+            }
+            this.minConcurrentRequests = minConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * MaxRequestsPerSecond is the rate at which this client starts API
+         * requests, retries included. Requests beyond it wait their turn,
+         * after a burst of up to one second's worth. Defaults to 0, which
+         * means no limit.
+         * */
+        public CordClientBuilder maxRequestsPerSecond(double maxRequestsPerSecond) {
+            if (maxRequestsPerSecond < 0) {
+                throw new IllegalArgumentException("maxRequestsPerSecond must not be negative");
+            }
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        /**
+         * RetryPolicy decides which failed calls are retried and how long
+         * to wait in between. Defaults to up to four attempts with
+         * exponential backoff, honouring Retry-After. Use RetryPolicy.NONE
+         * to turn retries off.
+         * */
+        public CordClientBuilder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * CallTimeout is the longest a call may take from start to finish,
+         * including waiting in line, retries and the waits between them.
+         * A call still unfinished by then fails with a CordException
+         * caused by a TimeoutException, and its request is aborted. Each
+         * request is still also bound by the transport's request timeout.
+         * Defaults to null, which means calls are not timed out.
+         * */
+        public CordClientBuilder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout != null ? checkCallTimeout(callTimeout) : null;
+            return this;
+        }
+
+        /**
+         * HedgePercentile turns on hedging of user and group syncs. When a
+         * sync has been waiting for its response for longer than this
+         * percentile of recent response times, such as 95, a duplicate of
+         * it is sent if the in-flight limit has room, and whichever
+         * response comes first is used. This trims the slowest syncs at
+         * the cost of roughly (100 - hedgePercentile)% more requests.
+         * Syncs are only hedged once the client has seen 100 responses.
+         * Defaults to 0, which turns hedging off.
+         * */
+        public CordClientBuilder hedgePercentile(double hedgePercentile) {
+            if (hedgePercentile != 0 && (hedgePercentile < 50 || hedgePercentile >= 100)) {
+                throw new IllegalArgumentException("hedgePercentile must be 0, or at least 50 and below 100");
+            }
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * CircuitBreaker makes calls fail fast with a
+         * CordCircuitOpenException while too many recent requests have
+         * failed, instead of each one waiting for its own timeouts and
+         * retries. Disabled by default.
+         * */
+        public CordClientBuilder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * MaxUsersPerBatch is the number of users sent in each call to the
+         * batch API by batchSyncAll. Defaults to 10000, the most the API
+         * accepts.
+         * */
+        public CordClientBuilder maxUsersPerBatch(int maxUsersPerBatch) {
+            if (maxUsersPerBatch < 1) {
+                throw new IllegalArgumentException("maxUsersPerBatch must be at least 1");
+            }
+            this.maxUsersPerBatch = maxUsersPerBatch;
+            return this;
+        }
+
+        /**
+         * MaxGroupsPerBatch is the number of groups sent in each call to
+         * the batch API by batchSyncAll. Defaults to 1000, the most the API
+         * accepts.
+         * */
+        public CordClientBuilder maxGroupsPerBatch(int maxGroupsPerBatch) {
+            if (maxGroupsPerBatch < 1) {
+                throw new IllegalArgumentException("maxGroupsPerBatch must be at least 1");
+            }
+            this.maxGroupsPerBatch = maxGroupsPerBatch;
+            return this;
+        }
+
+        /**
+         * MaxMembersPerRequest is the largest number of users, added and
+         * removed together, sent in one group membership call. Larger
+         * deltas are split. Defaults to 1000.
+         * */
+        public CordClientBuilder maxMembersPerRequest(int maxMembersPerRequest) {
+            if (maxMembersPerRequest < 1) {
+                throw new IllegalArgumentException("maxMembersPerRequest must be at least 1");
+            }
+            this.maxMembersPerRequest = maxMembersPerRequest;
+            return this;
+        }
+
+        /**
+         * ReadPageSize is the number of users fetched in each call by
+         * listUsers and streamUsers. Defaults to 1000.
+         * */
+        public CordClientBuilder readPageSize(int readPageSize) {
+            if (readPageSize < 1) {
+                throw new IllegalArgumentException("readPageSize must be at least 1");
+            }
+            this.readPageSize = readPageSize;
+            return this;
+        }
+
+        /**
+         * BatchParallelism is the number of chunks batchSyncAll keeps in
+         * flight at once. Defaults to 4.
+         * */
+        public CordClientBuilder batchParallelism(int batchParallelism) {
+            if (batchParallelism < 1) {
+                throw new IllegalArgumentException("batchParallelism must be at least 1");
+            }
+            this.batchParallelism = batchParallelism;
+            return this;
+        }
+
+        /**
+         * GzipRequests compresses request bodies with gzip before they are
+         * sent. Defaults to false.
+         * */
+        public CordClientBuilder gzipRequests(boolean gzipRequests) {
+            this.gzipRequests = gzipRequests;
+            return this;
+        }
+
+        /**
+         * ChangeDetector makes the client skip syncs of users and groups
+         * whose payload is the same as the one it last delivered for them.
+         * Skipped syncs make no API call. Disabled by default.
+         * */
+        public CordClientBuilder changeDetector(SyncChangeDetector changeDetector) {
+            this.changeDetector = changeDetector;
+            return this;
+        }
+
+        /**
+         * ClientTokenLifetime is how long client auth tokens stay valid,
+         * in whole seconds. Defaults to one minute.
+         * */
+        public CordClientBuilder clientTokenLifetime(Duration clientTokenLifetime) {
+            if (clientTokenLifetime.getSeconds() < 1) {
+                throw new IllegalArgumentException("clientTokenLifetime must be at least one second");
+            }
+            this.clientTokenLifetime = clientTokenLifetime;
+            return this;
+        }
+
+        /**
+         * ClientTokenCache makes the client hand out a token it signed
+         * earlier when the same user and group, with the same details, ask
+         * again while it is still valid for long enough. Disabled by
+         * default.
+         * */
+        public CordClientBuilder clientTokenCache(ClientTokenCache clientTokenCache) {
+            this.clientTokenCache = clientTokenCache;
+            return this;
+        }
+
+        /**
+         * Metrics receives latencies, sizes, status codes, retries, token
+         * signing times, queue depths and log messages from the client.
+         * Defaults to CordMetrics.NOOP.
+         * */
+        public CordClientBuilder metrics(CordMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * LogSampleRate is the fraction, between 0 and 1, of DEBUG and INFO
+         * log messages passed on to the metrics. Messages at WARN and
+         * above are always passed on. Defaults to 0.
+         * */
+        public CordClientBuilder logSampleRate(double logSampleRate) {
+            if (logSampleRate < 0 || logSampleRate > 1) {
+                throw new IllegalArgumentException("logSampleRate must be between 0 and 1");
+            }
+            this.logSampleRate = logSampleRate;
+            return this;
+        }
+
+        public CordClient build() {
+            return new CordClient(this);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.cord.server;
+
+import com.cord.server.CordClient.CordClientBuilder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds a CordClient for each of many Cord projects, such as one per
+ * environment and region.
+ *
+ * Each project's client prepares its signing key once and caches its
+ * server auth token, and has its own limits on requests in flight and on
+ * the rate requests are started at. A bulk resync of one project
+ * therefore queues behind that project's limits, not in front of
+ * another project's syncs. All the clients share one transport, and with
+ * it one connection pool and executor, as well as an optional client
+ * token cache.
+ *
+ * Projects may be registered and removed at any time, from any thread.
+ **/
+public class CordClientRegistry {
+    private final CordTransport transport;
+    private final int maxConcurrentRequestsPerProject;
+    private final double maxRequestsPerSecondPerProject;
+    private final Duration callTimeout;
+    private final ClientTokenCache clientTokenCache;
+    private final CordMetrics metrics;
+    private final ConcurrentHashMap<String, Registration> clients = new ConcurrentHashMap<>();
+
+    private CordClientRegistry(CordClientRegistryBuilder builder) {
+        this.transport = builder.transport;
+        this.maxConcurrentRequestsPerProject = builder.maxConcurrentRequestsPerProject;
+        this.maxRequestsPerSecondPerProject = builder.maxRequestsPerSecondPerProject;
+        this.callTimeout = builder.callTimeout;
+        this.clientTokenCache = builder.clientTokenCache;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Registers a project with the registry's default budget. Registering
+     * a project again, for example with a rotated secret, replaces its
+     * client; calls already made through the old client carry on.
+     *
+     * @param projectId The project id, found in console.cord.com
+     * @param secret    The secret corresponding to the project id,
+     *                  also found in console.cord.com
+     * @return The project's new client
+     **/
+    public CordClient register(String projectId, String secret) {
+        return register(projectId, secret, options -> { });
+    }
+
+    /**
+     * Registers a project, letting its client's options be changed from
+     * the registry's defaults, for example to give it a larger budget
+     * with maxConcurrentRequests and maxRequestsPerSecond.
+     *
+     * @param options Called with a builder already set up with the
+     *                registry's shared transport and defaults
+     **/
+    public CordClient register(String projectId, String secret, Consumer<CordClientBuilder> options) {
+        CordClientBuilder builder = newClientBuilder(projectId, secret);
+        options.accept(builder);
+        CordClient client = builder.build();
+        clients.put(projectId, new Registration(secret, client));
+        return client;
+    }
+
+    /**
+     * @return The client registered for the project, or null if there is
+     *         none
+     **/
+    public CordClient getClient(String projectId) {
+        Registration registration = clients.get(projectId);
+        return registration != null ? registration.client : null;
+    }
+
+    /**
+     * Returns the client registered for the project with this secret,
+     * registering it with the default budget if there is none or it was
+     * registered with a different secret.
+     **/
+    public CordClient getClient(String projectId, String secret) {
+        // Every static Cord call comes through here, so the usual case of
+        // an existing client with the same secret takes no lock
+        Registration registration = clients.get(projectId);
+        if (registration != null && registration.secret.equals(secret)) {
+            return registration.client;
+        }
+        registration = clients.compute(projectId, (id, current) -> {
+            if (current != null && current.secret.equals(secret)) {
+                return current;
+            }
+            return new Registration(secret, newClientBuilder(projectId, secret).build());
+        });
+        return registration.client;
+    }
+
+    /**
+     * Forgets a project. Calls already made through its client carry on.
+     *
+     * @return Whether the project was registered
+     **/
+    public boolean remove(String projectId) {
+        return clients.remove(projectId) != null;
+    }
+
+    public Set<String> getProjectIds() {
+        return Collections.unmodifiableSet(clients.keySet());
+    }
+
+    private CordClientBuilder newClientBuilder(String projectId, String secret) {
+        CordClientBuilder builder = new CordClientBuilder(projectId, secret)
+                .maxConcurrentRequests(maxConcurrentRequestsPerProject)
+                .maxRequestsPerSecond(maxRequestsPerSecondPerProject)
+                .callTimeout(callTimeout)
+                .clientTokenCache(clientTokenCache)
+                .metrics(metrics);
+        if (transport != null) {
+            builder.transport(transport);
+        }
+        return builder;
+    }
+
+    private static class Registration {
+        private final String secret;
+        private final CordClient client;
+
+        private Registration(String secret, CordClient client) {
+            this.secret = secret;
+            this.client = client;
+        }
+    }
+
+    public static class CordClientRegistryBuilder {
+        private CordTransport transport;
+        private int maxConcurrentRequestsPerProject = 16;
+        private double maxRequestsPerSecondPerProject;
+        private Duration callTimeout;
+        private ClientTokenCache clientTokenCache;
+        private CordMetrics metrics = CordMetrics.NOOP;
+
+        /**
+         * Transport is shared by every project's client, and with it the
+         * connection pool and executor. Defaults to the transport shared
+         * by all clients which were not given one.
+         * */
+        public CordClientRegistryBuilder transport(CordTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * MaxConcurrentRequestsPerProject is the number of API requests
+         * each project's client may have in flight at once, unless it was
+         * registered with its own. Defaults to 16.
+         * */
+        public CordClientRegistryBuilder maxConcurrentRequestsPerProject(int maxConcurrentRequestsPerProject) {
+            if (maxConcurrentRequestsPerProject < 1) {
+                throw new IllegalArgumentException("maxConcurrentRequestsPerProject must be at least 1");
+            }
+            this.maxConcurrentRequestsPerProject = maxConcurrentRequestsPerProject;
+            return this;
+        }
+
+        /**
+         * MaxRequestsPerSecondPerProject is the rate at which each
+         * project's client may start API requests, unless it was
+         * registered with its own. Defaults to 0, which means no limit.
+         * */
+        public CordClientRegistryBuilder maxRequestsPerSecondPerProject(double maxRequestsPerSecondPerProject) {
+            if (maxRequestsPerSecondPerProject < 0) {
+                throw new IllegalArgumentException("maxRequestsPerSecondPerProject must not be negative");
+            }
+            this.maxRequestsPerSecondPerProject = maxRequestsPerSecondPerProject;
+            return this;
+        }
+
+        /**
+         * CallTimeout is the longest each call made through a project's
+         * client may take, unless it was registered with its own.
+         * Defaults to null, which means calls are not timed out.
+         * */
+        public CordClientRegistryBuilder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * ClientTokenCache is shared by every project's client. Its tokens
+         * are keyed by project, so projects never see each other's
+         * tokens. Disabled by default.
+         * */
+        public CordClientRegistryBuilder clientTokenCache(ClientTokenCache clientTokenCache) {
+            this.clientTokenCache = clientTokenCache;
+            return this;
+        }
+
+        /**
+         * Metrics receives the measurements of every project's client.
+         * Defaults to CordMetrics.NOOP.
+         * */
+        public CordClientRegistryBuilder metrics(CordMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public CordClientRegistry build() {
+            return new CordClientRegistry(this);
+        }
+    }
+}
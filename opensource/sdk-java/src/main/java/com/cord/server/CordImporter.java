@@ -0,0 +1,922 @@
+package com.cord.server;
+
+import com.cord.server.CordMetrics.LogLevel;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Loads users or groups from an export file into Cord.
+ *
+ * Files are read as a stream, so at most parallelism chunks of records
+ * are held in memory however large the file is. Each record is mapped to
+ * a PlatformUserVariables or PlatformGroupVariables and validated; invalid
+ * records are counted and skipped. Valid records are sent through the
+ * batch API in chunks, several at a time.
+ *
+ * Two formats are understood:
+ * <ul>
+ * <li>NDJSON: one JSON object per line, with the same field names as the
+ * REST API, such as "email", "id", "name", "profile_picture_url",
+ * "status", "members" and "metadata".</li>
+ * <li>CSV: a header row naming the same fields, then one record per row.
+ * Columns named "metadata.key" become metadata entries, and the "members"
+ * column holds user IDs separated by semicolons. Fields may be quoted as
+ * in RFC 4180.</li>
+ * </ul>
+ * Unknown fields are ignored, and empty CSV cells are treated as absent.
+ *
+ * While an import runs, the position up to which every chunk has been
+ * delivered is saved in a checkpoint file next to the input. Importing
+ * the same file again after an interruption carries on from there, and
+ * the checkpoint is deleted once the whole file is delivered. Import
+ * groups before the users who are their members.
+ **/
+public class CordImporter {
+    private static final int MAX_INVALID_SAMPLES = 100;
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    private final CordClient client;
+    private final Format format;
+    private final int maxUsersPerBatch;
+    private final int maxGroupsPerBatch;
+    private final int parallelism;
+    private final boolean checkpoints;
+    private final Consumer<ImportProgress> progressListener;
+
+    private CordImporter(CordImporterBuilder builder) {
+        this.client = builder.client;
+        this.format = builder.format;
+        this.maxUsersPerBatch = builder.maxUsersPerBatch;
+        this.maxGroupsPerBatch = builder.maxGroupsPerBatch;
+        this.parallelism = builder.parallelism;
+        this.checkpoints = builder.checkpoints;
+        this.progressListener = builder.progressListener;
+    }
+
+    /**
+     * Imports the users in a file, resuming from its checkpoint if there
+     * is one. Every record must have an email and an ID.
+     *
+     * @return The final progress. If a chunk could not be delivered, the
+     *         import stops early and getError() says why.
+     * @throws CordException if the file or its checkpoint cannot be read,
+     *                       or the file changed since the checkpoint was
+     *                       written
+     **/
+    public ImportProgress importUsers(Path file) throws CordException {
+        return run(file, true);
+    }
+
+    /**
+     * Imports the groups in a file, resuming from its checkpoint if there
+     * is one. Every record must have a name and an ID.
+     *
+     * @see #importUsers(Path)
+     **/
+    public ImportProgress importGroups(Path file) throws CordException {
+        return run(file, false);
+    }
+
+    private ImportProgress run(Path file, boolean users) throws CordException {
+        Format format = this.format != null ? this.format : detectFormat(file);
+        Run run;
+        try {
+            run = new Run(file, Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            if (checkpoints) {
+                run.resume();
+            }
+        } catch (IOException e) {
+            throw new CordException("Could not open " + file + " for import", e);
+        }
+
+        Semaphore permits = new Semaphore(parallelism);
+        int chunkSize = users ? maxUsersPerBatch : maxGroupsPerBatch;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RecordReader reader = format == Format.CSV
+                    ? new CsvReader(channel, run.deliveredOffset, run.deliveredLine)
+                    : new NdjsonReader(channel, run.deliveredOffset, run.deliveredLine);
+            long invalid = run.invalid;
+            while (!run.hasFailed()) {
+                List<PlatformUserVariables> userChunk = new ArrayList<>();
+                List<PlatformGroupVariables> groupChunk = new ArrayList<>();
+                int records = 0;
+                while (userChunk.size() + groupChunk.size() < chunkSize) {
+                    ObjectNode record;
+                    try {
+                        record = reader.next();
+                        if (record == null) {
+                            break;
+                        }
+                        if (users) {
+                            userChunk.add(toUser(record));
+                        } else {
+                            groupChunk.add(toGroup(record));
+                        }
+                    } catch (InvalidRecordException e) {
+                        invalid++;
+                        run.addInvalidSample("line " + reader.recordLine + ": " + e.getMessage());
+                    }
+                    records++;
+                }
+                if (records == 0) {
+                    break;
+                }
+
+                Chunk chunk = new Chunk(
+                        reader.lines.offset, reader.lines.lineCount, userChunk.size() + groupChunk.size(), invalid);
+                acquire(permits, 1);
+                run.add(chunk);
+                CompletableFuture<CordResponse> sent;
+                if (chunk.size == 0) {
+                    sent = CompletableFuture.completedFuture(null);
+                } else {
+                    try {
+                        sent = client.batchSyncAsync(userChunk, groupChunk);
+                    } catch (RuntimeException e) {
+                        sent = CompletableFuture.failedFuture(e);
+                    }
+                }
+                sent.whenComplete((response, error) -> {
+                    try {
+                        run.done(chunk, error == null ? null : asCordException(error));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new CordException("Could not read " + file, e);
+        } finally {
+            // Let everything in flight land, so the checkpoint is as far
+            // along as it can be
+            acquire(permits, parallelism);
+            permits.release(parallelism);
+        }
+
+        ImportProgress progress = run.finish();
+        client.log(progress.isComplete() ? LogLevel.INFO : LogLevel.WARN, "Imported " + file + ": " + progress,
+                progress.getError());
+        return progress;
+    }
+
+    private static Format detectFormat(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return Format.NDJSON;
+        }
+        throw new IllegalArgumentException("Cannot tell the format of " + file + " from its name; set it on the builder");
+    }
+
+    private static PlatformUserVariables toUser(ObjectNode record) throws InvalidRecordException {
+        PlatformUserVariablesBuilder user = new PlatformUserVariablesBuilder(requiredText(record, "email"))
+                .id(requiredText(record, "id"))
+                .name(optionalText(record, "name"))
+                .profilePictureUrl(optionalText(record, "profile_picture_url"))
+                .status(status(record));
+        if (record.hasNonNull("metadata")) {
+            user.metadata(metadata(record.get("metadata")));
+        }
+        return user.build();
+    }
+
+    private static PlatformGroupVariables toGroup(ObjectNode record) throws InvalidRecordException {
+        PlatformGroupVariablesBuilder group = new PlatformGroupVariablesBuilder(requiredText(record, "name"))
+                .id(requiredText(record, "id"))
+                .status(status(record));
+        JsonNode members = record.get("members");
+        if (members != null && !members.isNull()) {
+            if (!members.isArray()) {
+                throw new InvalidRecordException("members must be a list of user IDs");
+            }
+            List<String> memberIds = new ArrayList<>(members.size());
+            for (JsonNode member : members) {
+                if (!member.isTextual() && !member.isIntegralNumber()) {
+                    throw new InvalidRecordException("members must be a list of user IDs");
+                }
+                memberIds.add(member.asText());
+            }
+            group.members(memberIds);
+        }
+        if (record.hasNonNull("metadata")) {
+            group.metadata(metadata(record.get("metadata")));
+        }
+        return group.build();
+    }
+
+    private static String requiredText(ObjectNode record, String field) throws InvalidRecordException {
+        String value = optionalText(record, field);
+        if (value == null || value.isEmpty()) {
+            throw new InvalidRecordException("missing " + field);
+        }
+        return value;
+    }
+
+    private static String optionalText(ObjectNode record, String field) throws InvalidRecordException {
+        JsonNode value = record.get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isValueNode()) {
+            throw new InvalidRecordException(field + " must be a string");
+        }
+        return value.asText();
+    }
+
+    private static Status status(ObjectNode record) throws InvalidRecordException {
+        String status = optionalText(record, "status");
+        if (status == null) {
+            return null;
+        }
+        switch (status) {
+            case "active":
+                return Status.ACTIVE;
+            case "deleted":
+                return Status.DELETED;
+            default:
+                throw new InvalidRecordException("status must be active or deleted, not " + status);
+        }
+    }
+
+    /**
+     * Converts metadata to a map, checking that it only holds the flat
+     * values the API accepts.
+     **/
+    private static Map<String, Object> metadata(JsonNode metadata) throws InvalidRecordException {
+        if (!metadata.isObject()) {
+            throw new InvalidRecordException("metadata must be an object");
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = metadata.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode value = field.getValue();
+            if (value.isTextual()) {
+                values.put(field.getKey(), value.textValue());
+            } else if (value.isBoolean()) {
+                values.put(field.getKey(), value.booleanValue());
+            } else if (value.isNumber()) {
+                values.put(field.getKey(), value.numberValue());
+            } else {
+                throw new InvalidRecordException("metadata." + field.getKey() + " must be a string, number or boolean");
+            }
+        }
+        return values;
+    }
+
+    private static void acquire(Semaphore permits, int count) throws CordException {
+        try {
+            permits.acquire(count);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CordException("Interrupted while importing into Cord", e);
+        }
+    }
+
+    private static CordException asCordException(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof CordException) {
+            return (CordException) error;
+        }
+        return new CordException("Could not import a chunk into Cord", error);
+    }
+
+    /**
+     * The state of one import, shared between the reading thread and the
+     * threads chunks complete on.
+     **/
+    private final class Run {
+        private final Path file;
+        private final Path checkpoint;
+        private final long size;
+        private final long modified;
+        private final long startNanos = System.nanoTime();
+        private final ArrayDeque<Chunk> outstanding = new ArrayDeque<>();
+        private final List<String> invalidSamples = new ArrayList<>();
+
+        private long deliveredOffset;
+        private long deliveredLine;
+        private long synced;
+        private long syncedThisRun;
+        private long invalid;
+        private long resumedFrom;
+        private CordException error;
+
+        private Run(Path file, long size, long modified) {
+            this.file = file;
+            this.checkpoint = file.resolveSibling(file.getFileName() + CHECKPOINT_SUFFIX);
+            this.size = size;
+            this.modified = modified;
+        }
+
+        private void resume() throws IOException, CordException {
+            if (!Files.exists(checkpoint)) {
+                return;
+            }
+            Properties saved = new Properties();
+            try (InputStream in = Files.newInputStream(checkpoint)) {
+                saved.load(in);
+            }
+            if (Long.parseLong(saved.getProperty("size")) != size
+                    || Long.parseLong(saved.getProperty("modified")) != modified) {
+                throw new CordException(file + " has changed since its import checkpoint was written; "
+                        + "delete " + checkpoint + " to import it from the start");
+            }
+            deliveredOffset = Long.parseLong(saved.getProperty("offset"));
+            deliveredLine = Long.parseLong(saved.getProperty("line"));
+            synced = Long.parseLong(saved.getProperty("synced"));
+            invalid = Long.parseLong(saved.getProperty("invalid"));
+            resumedFrom = deliveredOffset;
+        }
+
+        private synchronized boolean hasFailed() {
+            return error != null;
+        }
+
+        private synchronized void add(Chunk chunk) {
+            outstanding.add(chunk);
+        }
+
+        private synchronized void addInvalidSample(String sample) {
+            if (invalidSamples.size() < MAX_INVALID_SAMPLES) {
+                invalidSamples.add(sample);
+            }
+        }
+
+        /**
+         * Marks a chunk as finished, and moves the checkpoint past every
+         * chunk at the front which has been delivered.
+         **/
+        private synchronized void done(Chunk chunk, CordException chunkError) {
+            chunk.done = true;
+            chunk.error = chunkError;
+            if (chunkError != null && error == null) {
+                error = chunkError;
+            }
+            boolean advanced = false;
+            while (!outstanding.isEmpty() && outstanding.peek().done && outstanding.peek().error == null) {
+                Chunk delivered = outstanding.poll();
+                deliveredOffset = delivered.endOffset;
+                deliveredLine = delivered.endLine;
+                synced += delivered.size;
+                syncedThisRun += delivered.size;
+                invalid = delivered.invalidAtEnd;
+                advanced = true;
+            }
+            if (advanced) {
+                if (checkpoints) {
+                    try {
+                        writeCheckpoint();
+                    } catch (IOException e) {
+                        client.log(LogLevel.WARN, "Could not write the import checkpoint " + checkpoint, e);
+                    }
+                }
+                progressListener.accept(snapshot(false));
+            }
+        }
+
+        private synchronized ImportProgress finish() {
+            boolean complete = error == null && outstanding.isEmpty() && deliveredOffset >= size;
+            if (complete && checkpoints) {
+                try {
+                    Files.deleteIfExists(checkpoint);
+                } catch (IOException e) {
+                    client.log(LogLevel.WARN, "Could not delete the import checkpoint " + checkpoint, e);
+                }
+            }
+            return snapshot(complete);
+        }
+
+        private void writeCheckpoint() throws IOException {
+            Properties saved = new Properties();
+            saved.setProperty("offset", Long.toString(deliveredOffset));
+            saved.setProperty("line", Long.toString(deliveredLine));
+            saved.setProperty("synced", Long.toString(synced));
+            saved.setProperty("invalid", Long.toString(invalid));
+            saved.setProperty("size", Long.toString(size));
+            saved.setProperty("modified", Long.toString(modified));
+            Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                saved.store(out, null);
+            }
+            Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private ImportProgress snapshot(boolean complete) {
+            return new ImportProgress(
+                    synced,
+                    syncedThisRun,
+                    invalid,
+                    Collections.unmodifiableList(new ArrayList<>(invalidSamples)),
+                    deliveredOffset,
+                    resumedFrom,
+                    size,
+                    Duration.ofNanos(System.nanoTime() - startNanos),
+                    complete,
+                    error);
+        }
+    }
+
+    private static final class Chunk {
+        private final long endOffset;
+        private final long endLine;
+        private final int size;
+        private final long invalidAtEnd;
+        private boolean done;
+        private CordException error;
+
+        private Chunk(long endOffset, long endLine, int size, long invalidAtEnd) {
+            this.endOffset = endOffset;
+            this.endLine = endLine;
+            this.size = size;
+            this.invalidAtEnd = invalidAtEnd;
+        }
+    }
+
+    private static final class InvalidRecordException extends Exception {
+        private InvalidRecordException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /**
+     * Reads a file line by line from a byte offset, keeping track of the
+     * offset and line number reached.
+     **/
+    private static final class LineReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private byte[] line = new byte[256];
+        private long offset;
+        private long lineCount;
+
+        private LineReader(FileChannel channel, long offset, long line) throws IOException {
+            this.channel = channel;
+            seek(offset, line);
+        }
+
+        /**
+         * Moves to a byte offset, which must be the start of a line.
+         **/
+        private void seek(long offset, long line) throws IOException {
+            channel.position(offset);
+            buffer.clear().flip();
+            this.offset = offset;
+            this.lineCount = line;
+        }
+
+        /**
+         * @return The next line without its line ending, or null at the
+         *         end of the file
+         **/
+        private String readLine() throws IOException {
+            boolean first = offset == 0;
+            int length = 0;
+            boolean read = false;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int count = channel.read(buffer);
+                    buffer.flip();
+                    if (count < 0) {
+                        break;
+                    }
+                    continue;
+                }
+                byte b = buffer.get();
+                offset++;
+                read = true;
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+            if (!read) {
+                return null;
+            }
+            lineCount++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (first && length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                // A UTF-8 byte order mark, as spreadsheets write at the
+                // start of their exports
+                return new String(line, 3, length - 3, StandardCharsets.UTF_8);
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private abstract static class RecordReader {
+        final LineReader lines;
+        long recordLine;
+
+        RecordReader(LineReader lines) {
+            this.lines = lines;
+        }
+
+        /**
+         * @return The next record, or null at the end of the file. Either
+         *         way, the line reader is left just after the record.
+         **/
+        abstract ObjectNode next() throws IOException, InvalidRecordException;
+
+        /**
+         * Reads the next line which is not blank, noting its line number.
+         **/
+        String nextLine() throws IOException {
+            String line;
+            do {
+                line = lines.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+            recordLine = lines.lineCount;
+            return line;
+        }
+    }
+
+    private static final class NdjsonReader extends RecordReader {
+        private NdjsonReader(FileChannel channel, long offset, long line) throws IOException {
+            super(new LineReader(channel, offset, line));
+        }
+
+        @Override
+        ObjectNode next() throws IOException, InvalidRecordException {
+            String line = nextLine();
+            if (line == null) {
+                return null;
+            }
+            JsonNode record;
+            try {
+                record = Cord.mapper().readTree(line);
+            } catch (JsonProcessingException e) {
+                throw new InvalidRecordException("not valid JSON");
+            }
+            if (!record.isObject()) {
+                throw new InvalidRecordException("not a JSON object");
+            }
+            return (ObjectNode) record;
+        }
+    }
+
+    private static final class CsvReader extends RecordReader {
+        private final List<String> header;
+
+        private CsvReader(FileChannel channel, long offset, long line) throws IOException {
+            super(new LineReader(channel, 0, 0));
+            List<String> header;
+            try {
+                header = readRow();
+            } catch (InvalidRecordException e) {
+                throw new IOException("The CSV header is malformed: " + e.getMessage());
+            }
+            this.header = header != null ? header : Collections.emptyList();
+            for (int i = 0; i < this.header.size(); i++) {
+                this.header.set(i, this.header.get(i).trim());
+            }
+            if (offset > lines.offset) {
+                // Resuming: the header is always read from the start, and
+                // the rows carry on from the checkpoint
+                lines.seek(offset, line);
+            }
+        }
+
+        @Override
+        ObjectNode next() throws IOException, InvalidRecordException {
+            List<String> row = readRow();
+            if (row == null) {
+                return null;
+            }
+            if (row.size() != header.size()) {
+                throw new InvalidRecordException("has " + row.size() + " columns, the header has " + header.size());
+            }
+            ObjectNode record = Cord.mapper().createObjectNode();
+            for (int i = 0; i < row.size(); i++) {
+                String name = header.get(i);
+                String value = row.get(i);
+                if (value.isEmpty()) {
+                    continue;
+                }
+                if (name.startsWith("metadata.")) {
+                    ObjectNode metadata = record.has("metadata")
+                            ? (ObjectNode) record.get("metadata")
+                            : record.putObject("metadata");
+                    metadata.put(name.substring("metadata.".length()), value);
+                } else if (name.equals("members")) {
+                    ArrayNode members = record.putArray("members");
+                    for (String member : value.split(";")) {
+                        if (!member.isBlank()) {
+                            members.add(member.trim());
+                        }
+                    }
+                } else {
+                    record.put(name, value);
+                }
+            }
+            return record;
+        }
+
+        /**
+         * Reads the fields of the next row, which may span several lines
+         * if a quoted field holds line breaks. Blank lines are skipped.
+         **/
+        private List<String> readRow() throws IOException, InvalidRecordException {
+            String line = nextLine();
+            if (line == null) {
+                return null;
+            }
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (quoted) {
+                        if (c != '"') {
+                            field.append(c);
+                        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else if (c == ',') {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                    } else if (c == '"' && field.length() == 0) {
+                        quoted = true;
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (!quoted) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+                line = lines.readLine();
+                if (line == null) {
+                    throw new InvalidRecordException("unterminated quoted field");
+                }
+                field.append('\n');
+            }
+        }
+    }
+
+    /**
+     * How far an import has got. The counts include work done by earlier,
+     * interrupted runs over the same file.
+     **/
+    public static class ImportProgress {
+        private final long syncedRecords;
+        private final long syncedThisRun;
+        private final long invalidRecords;
+        private final List<String> invalidSamples;
+        private final long bytesDone;
+        private final long resumedFrom;
+        private final long totalBytes;
+        private final Duration elapsed;
+        private final boolean complete;
+        private final CordException error;
+
+        private ImportProgress(
+                long syncedRecords,
+                long syncedThisRun,
+                long invalidRecords,
+                List<String> invalidSamples,
+                long bytesDone,
+                long resumedFrom,
+                long totalBytes,
+                Duration elapsed,
+                boolean complete,
+                CordException error) {
+            this.syncedRecords = syncedRecords;
+            this.syncedThisRun = syncedThisRun;
+            this.invalidRecords = invalidRecords;
+            this.invalidSamples = invalidSamples;
+            this.bytesDone = bytesDone;
+            this.resumedFrom = resumedFrom;
+            this.totalBytes = totalBytes;
+            this.elapsed = elapsed;
+            this.complete = complete;
+            this.error = error;
+        }
+
+        /**
+         * @return The number of records delivered to Cord
+         **/
+        public long getSyncedRecords() {
+            return syncedRecords;
+        }
+
+        /**
+         * @return The number of records which failed validation and were
+         *         skipped
+         **/
+        public long getInvalidRecords() {
+            return invalidRecords;
+        }
+
+        /**
+         * @return Descriptions of the first invalid records found by this
+         *         run, such as "line 12: missing email"
+         **/
+        public List<String> getInvalidRecordSamples() {
+            return invalidSamples;
+        }
+
+        /**
+         * @return The number of bytes of the file which have been
+         *         delivered, which is where a resumed import starts
+         **/
+        public long getBytesDone() {
+            return bytesDone;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return The part of the file delivered so far, from 0 to 1
+         **/
+        public double getFractionDone() {
+            return totalBytes == 0 ? 1 : (double) bytesDone / totalBytes;
+        }
+
+        /**
+         * @return The time since this run started
+         **/
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return The number of records this run has delivered per second
+         **/
+        public double getRecordsPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? 0 : syncedThisRun / seconds;
+        }
+
+        /**
+         * @return The number of bytes of the file this run has delivered
+         *         per second
+         **/
+        public double getBytesPerSecond() {
+            double seconds = elapsed.toNanos() / 1e9;
+            return seconds == 0 ? 0 : (bytesDone - resumedFrom) / seconds;
+        }
+
+        /**
+         * @return Whether the whole file has been delivered
+         **/
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return Why the import stopped early, or null if it did not
+         **/
+        public CordException getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d records synced, %d invalid, %.1f%% done, %.0f records/s",
+                    syncedRecords, invalidRecords, getFractionDone() * 100, getRecordsPerSecond());
+        }
+    }
+
+    public static class CordImporterBuilder {
+        private final CordClient client;
+        private Format format;
+        private int maxUsersPerBatch = 10000;
+        private int maxGroupsPerBatch = 1000;
+        private int parallelism = 4;
+        private boolean checkpoints = true;
+        private Consumer<ImportProgress> progressListener = progress -> {
+        };
+
+        /**
+         * @param client The client used to deliver imported records
+         **/
+        public CordImporterBuilder(CordClient client) {
+            this.client = client;
+        }
+
+        /**
+         * Format is the format of the files to import. Defaults to telling
+         * it from the file name: ".csv" for CSV, and ".ndjson", ".jsonl"
+         * or ".json" for NDJSON.
+         * */
+        public CordImporterBuilder format(Format format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * MaxUsersPerBatch is the number of users sent in each call to the
+         * batch API. Defaults to 10000, the most the API accepts.
+         * */
+        public CordImporterBuilder maxUsersPerBatch(int maxUsersPerBatch) {
+            if (maxUsersPerBatch < 1) {
+                throw new IllegalArgumentException("maxUsersPerBatch must be at least 1");
+            }
+            this.maxUsersPerBatch = maxUsersPerBatch;
+            return this;
+        }
+
+        /**
+         * MaxGroupsPerBatch is the number of groups sent in each call to
+         * the batch API. Defaults to 1000, the most the API accepts.
+         * */
+        public CordImporterBuilder maxGroupsPerBatch(int maxGroupsPerBatch) {
+            if (maxGroupsPerBatch < 1) {
+                throw new IllegalArgumentException("maxGroupsPerBatch must be at least 1");
+            }
+            this.maxGroupsPerBatch = maxGroupsPerBatch;
+            return this;
+        }
+
+        /**
+         * Parallelism is the number of chunks kept in flight at once.
+         * Defaults to 4.
+         * */
+        public CordImporterBuilder parallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Checkpoints saves how far each import got in a ".checkpoint"
+         * file next to the input, so that it can be resumed. Defaults to
+         * true.
+         * */
+        public CordImporterBuilder checkpoints(boolean checkpoints) {
+            this.checkpoints = checkpoints;
+            return this;
+        }
+
+        /**
+         * ProgressListener is called whenever the delivered part of the
+         * file grows, from the thread the chunk completed on. It should
+         * return quickly. Defaults to doing nothing.
+         * */
+        public CordImporterBuilder progressListener(Consumer<ImportProgress> progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public CordImporter build() {
+            return new CordImporter(this);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.cord.server;
+
+/**
+ * Receives measurements and log messages from the SDK.
+ *
+ * Every method has an empty default, so an implementation only needs to
+ * override what it is interested in. The SDK calls these methods on its
+ * hot paths, from whichever thread the work happened on, so they must be
+ * thread-safe and should return quickly. Arguments are enums and
+ * primitives, so calling the no-op implementation allocates nothing.
+ **/
+public interface CordMetrics {
+    /**
+     * An implementation which ignores everything.
+     **/
+    CordMetrics NOOP = new CordMetrics() {
+    };
+
+    /**
+     * Called when an API request gets a response, whatever its status.
+     * Each attempt of a retried call is reported separately.
+     *
+     * @param endpoint      The API endpoint that was called
+     * @param statusCode    The HTTP status of the response
+     * @param durationNanos How long the request took, from being sent to
+     *                      the response being read
+     * @param requestBytes  The size of the request body as sent, or -1 if
+     *                      it is not known
+     * @param responseBytes The size of the response body, or -1 if it is
+     *                      not known
+     **/
+    default void onResponse(
+            Endpoint endpoint,
+            int statusCode,
+            long durationNanos,
+            long requestBytes,
+            long responseBytes) {
+    }
+
+    /**
+     * Called when an API request could not be completed because of an
+     * error, such as a connection failure or timeout.
+     **/
+    default void onRequestFailed(Endpoint endpoint, long durationNanos, Throwable error) {
+    }
+
+    /**
+     * Called when a call is about to be retried.
+     *
+     * @param attempt     The attempt which failed, starting at 1
+     * @param delayMillis How long the client waits before trying again
+     **/
+    default void onRetry(Endpoint endpoint, int attempt, long delayMillis) {
+    }
+
+    /**
+     * Called when a duplicate of a slow request is sent.
+     *
+     * @param delayNanos How long the first request had been in flight
+     **/
+    default void onHedge(Endpoint endpoint, long delayNanos) {
+    }
+
+    /**
+     * Called when an auth token has been signed.
+     **/
+    default void onTokenMinted(TokenType type, long durationNanos) {
+    }
+
+    /**
+     * Called when the number of items waiting in one of the SDK's buffers
+     * changes.
+     **/
+    default void onQueueDepth(Queue queue, int depth) {
+    }
+
+    /**
+     * Called with the SDK's log messages. Messages below WARN are sampled
+     * according to the client's log sample rate.
+     **/
+    default void onLog(LogLevel level, String message, Throwable error) {
+    }
+
+    enum Endpoint {
+        USERS,
+        ORGANIZATIONS,
+        BATCH,
+        GROUP_MEMBERS
+    }
+
+    enum TokenType {
+        CLIENT,
+        SERVER
+    }
+
+    enum Queue {
+        /**
+         * Requests waiting for room under a client's in-flight limit.
+         **/
+        REQUESTS,
+        /**
+         * Users and groups waiting in a CordSyncQueue.
+         **/
+        SYNC_QUEUE,
+        /**
+         * Records in a CordOutbox which have not been delivered yet.
+         **/
+        OUTBOX
+    }
+
+    enum LogLevel {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+}
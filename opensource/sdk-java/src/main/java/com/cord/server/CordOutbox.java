@@ -0,0 +1,736 @@
+package com.cord.server;
+
+import com.cord.server.CordMetrics.LogLevel;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A durable outbox for user and group syncs.
+ *
+ * Syncs are appended to a log on local disk and delivered to the batch API
+ * in the background, so they survive restarts and outages of the Cord API.
+ * Appending copies the serialized user or group into a memory-mapped
+ * segment file and takes a few microseconds; it does not wait for the
+ * disk unless fsync is enabled. Once written, a record survives the
+ * process crashing, though without fsync not necessarily the machine
+ * losing power.
+ *
+ * A background thread reads the log from the last delivered position,
+ * keeps only the latest record for each user and group ID, sends them in
+ * batches, and checkpoints the position it reached after each batch is
+ * accepted. Segments which have been delivered in full are deleted. When
+ * the outbox is opened again, it replays everything after the checkpoint.
+ * Delivery is at least once: a batch which was accepted just before a
+ * crash may be sent again, which the upsert APIs make harmless.
+ *
+ * A batch the API rejects outright, with a 4xx status other than 401,
+ * 403 or 429, is split in halves and resent until the records it rejects
+ * are found. Those are logged, handed to the dead letter handler and
+ * skipped, so that one bad user or group does not hold up everything
+ * recorded after it. By default they are appended to a dead-letters file
+ * in the outbox directory.
+ *
+ * Only one outbox may use a directory at a time.
+ **/
+public class CordOutbox implements AutoCloseable {
+    private static final int MAX_USERS_PER_BATCH = 10000;
+    private static final int MAX_GROUPS_PER_BATCH = 1000;
+    /**
+     * Each record starts with the length of the rest of the record and its
+     * CRC32. A length of zero marks the end of the written part of a
+     * segment.
+     **/
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String DEAD_LETTERS = "dead-letters";
+
+    private final CordClient client;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final Consumer<DeadLetter> deadLetterHandler;
+    private final ScheduledExecutorService drainer;
+    private final AtomicLong pending = new AtomicLong();
+
+    private final Object lock = new Object();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment writeSegment;
+    private int writePosition;
+    private boolean closed;
+
+    // Only used by the drain thread, once the outbox is open
+    private long deliveredSegment;
+    private int deliveredPosition;
+    private volatile Throwable lastDrainError;
+
+    private CordOutbox(CordOutboxBuilder builder) throws CordException {
+        this.client = builder.client;
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.fsync = builder.fsync;
+        this.deadLetterHandler = builder.deadLetterHandler != null
+                ? builder.deadLetterHandler
+                : this::appendDeadLetter;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new CordException("Could not open the Cord outbox in " + directory, e);
+        }
+        ScheduledThreadPoolExecutor drainer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "cord-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = builder.drainInterval.toNanos();
+        drainer.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.NANOSECONDS);
+        this.drainer = drainer;
+    }
+
+    /**
+     * Records a user to be synced. The user must have its ID set.
+     *
+     * @throws CordException if the record could not be written
+     **/
+    public void syncUser(PlatformUserVariables user) throws CordException {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("Users synced through a CordOutbox must have an ID");
+        }
+        append(SyncChangeDetector.USER, user.getId(), user);
+    }
+
+    /**
+     * Records a group to be synced. The group must have its ID set.
+     *
+     * @throws CordException if the record could not be written
+     **/
+    public void syncGroup(PlatformGroupVariables group) throws CordException {
+        if (group.getId() == null) {
+            throw new IllegalArgumentException("Groups synced through a CordOutbox must have an ID");
+        }
+        append(SyncChangeDetector.GROUP, group.getId(), group);
+    }
+
+    /**
+     * @return The number of records which have not been delivered yet,
+     *         counting superseded ones
+     **/
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Delivers everything recorded so far, without waiting for the drain
+     * interval.
+     *
+     * @throws CordException if some of it could not be delivered; it stays
+     *                       in the outbox and is retried later
+     **/
+    public void flush() throws CordException {
+        Future<Boolean> drained = drainer.submit(this::drain);
+        try {
+            if (!drained.get()) {
+                throw new CordException("Could not deliver the Cord outbox", lastDrainError);
+            }
+        } catch (ExecutionException e) {
+            throw new CordException("Could not deliver the Cord outbox", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CordException("Interrupted while delivering the Cord outbox", e);
+        }
+    }
+
+    /**
+     * Stops accepting syncs and makes one last attempt to deliver what is
+     * in the outbox. Anything still undelivered is replayed the next time
+     * the directory is opened.
+     **/
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush();
+        } catch (CordException e) {
+            // It stays on disk for next time
+        } finally {
+            drainer.shutdown();
+        }
+    }
+
+    private void append(int kind, String id, Object value) throws CordException {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > 0xffff) {
+            throw new IllegalArgumentException("IDs synced through a CordOutbox must be under 64 KiB");
+        }
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = Cord.jsonFactory.createGenerator(serialized)) {
+            JsonWriters.writeValue(generator, value, false);
+        } catch (IOException e) {
+            throw new CordException("Could not serialize the sync for " + id, e);
+        }
+        byte[] json = serialized.toByteArray();
+        int length = 3 + idBytes.length + json.length;
+        if (RECORD_HEADER_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("The sync for " + id + " does not fit in an outbox segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(kind);
+        crc.update(idBytes.length >>> 8);
+        crc.update(idBytes.length);
+        crc.update(idBytes);
+        crc.update(json);
+
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("This CordOutbox has been closed");
+            }
+            if (writePosition + RECORD_HEADER_SIZE + length > writeSegment.buffer.capacity()) {
+                try {
+                    writeSegment = openSegment(writeSegment.sequence + 1, segmentSize);
+                } catch (IOException e) {
+                    throw new CordException("Could not start a new Cord outbox segment", e);
+                }
+                writePosition = 0;
+            }
+            ByteBuffer out = writeSegment.buffer.duplicate();
+            out.position(writePosition + 4);
+            out.putInt((int) crc.getValue());
+            out.put((byte) kind);
+            out.putShort((short) idBytes.length);
+            out.put(idBytes);
+            out.put(json);
+            // The length goes in last, so a reader never sees a record
+            // without its contents
+            writeSegment.buffer.putInt(writePosition, length);
+            if (fsync) {
+                writeSegment.buffer.force();
+            }
+            writePosition += RECORD_HEADER_SIZE + length;
+        }
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Sends everything written up to now, a batch at a time, advancing the
+     * checkpoint after each batch is accepted.
+     *
+     * @return Whether everything written up to now was delivered
+     **/
+    private boolean drain() {
+        try {
+            long endSegment;
+            int endPosition;
+            synchronized (lock) {
+                endSegment = writeSegment.sequence;
+                endPosition = writePosition;
+            }
+            while (deliveredSegment < endSegment || deliveredPosition < endPosition) {
+                if (!drainBatch(endSegment, endPosition)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // Keep the scheduled drain alive
+            lastDrainError = e;
+            client.log(LogLevel.ERROR, "Could not deliver the Cord outbox", e);
+            return false;
+        } finally {
+            client.getMetrics().onQueueDepth(
+                    CordMetrics.Queue.OUTBOX, (int) Math.min(Integer.MAX_VALUE, pending.get()));
+        }
+    }
+
+    private boolean drainBatch(long endSegment, int endPosition) {
+        Map<String, Record> users = new LinkedHashMap<>();
+        Map<String, Record> groups = new LinkedHashMap<>();
+        long sequence = deliveredSegment;
+        int position = deliveredPosition;
+        int records = 0;
+        boolean skipped = false;
+        while ((sequence < endSegment || position < endPosition)
+                && users.size() < MAX_USERS_PER_BATCH
+                && groups.size() < MAX_GROUPS_PER_BATCH) {
+            Segment segment;
+            synchronized (lock) {
+                segment = segments.get(sequence);
+            }
+            int limit = sequence == endSegment ? endPosition : segment.buffer.capacity();
+            Record record = readRecord(segment.buffer, position, limit);
+            if (record == null) {
+                if (sequence == endSegment || !isEndOfSegment(segment.buffer, position)) {
+                    // Damaged, such as by a torn write or another process.
+                    // Everything up to the end of the segment is lost, and
+                    // in the last segment that is the end of the log.
+                    int end = sequence == endSegment ? endPosition : segment.buffer.capacity();
+                    client.log(LogLevel.ERROR, String.format(
+                            "Skipping %d unreadable bytes of Cord outbox segment %d at position %d",
+                            end - position, sequence, position), null);
+                    skipped = true;
+                    if (sequence == endSegment) {
+                        position = endPosition;
+                        break;
+                    }
+                }
+                // The rest of this segment was left empty
+                synchronized (lock) {
+                    sequence = segments.higherKey(sequence);
+                }
+                position = 0;
+                continue;
+            }
+            (record.kind == SyncChangeDetector.USER ? users : groups).put(record.id, record);
+            position = record.next;
+            records++;
+        }
+
+        if (records > 0) {
+            List<Record> batch = new ArrayList<>(users.size() + groups.size());
+            batch.addAll(users.values());
+            batch.addAll(groups.values());
+            if (!deliver(batch)) {
+                return false;
+            }
+        }
+        deliveredSegment = sequence;
+        deliveredPosition = position;
+        if (skipped) {
+            // The skipped records were counted as pending, but not how many
+            // there were
+            pending.set(countRecordsFrom(sequence, position));
+        } else {
+            pending.addAndGet(-records);
+        }
+        try {
+            writeCheckpoint();
+            deleteDeliveredSegments();
+        } catch (IOException e) {
+            // The batch was delivered; at worst it is sent again after a
+            // restart
+            client.log(LogLevel.WARN, "Could not checkpoint the Cord outbox", e);
+        }
+        return true;
+    }
+
+    /**
+     * Sends records in one batch call. If the API rejects the batch, it is
+     * split in halves which are sent separately, down to the single
+     * records it rejects, which are dead-lettered.
+     *
+     * @return Whether every record was either accepted or dead-lettered
+     **/
+    private boolean deliver(List<Record> batch) {
+        List<String> users = new ArrayList<>();
+        List<String> groups = new ArrayList<>();
+        for (Record record : batch) {
+            (record.kind == SyncChangeDetector.USER ? users : groups).add(record.json);
+        }
+        try {
+            client.batchSyncSerialized(users, groups).get();
+            return true;
+        } catch (ExecutionException e) {
+            if (!isRejection(e.getCause())) {
+                lastDrainError = e.getCause();
+                client.log(LogLevel.WARN, "Could not deliver the Cord outbox, will retry", e.getCause());
+                return false;
+            }
+            if (batch.size() == 1) {
+                Record record = batch.get(0);
+                DeadLetter deadLetter = new DeadLetter(
+                        record.kind == SyncChangeDetector.USER ? "user" : "group",
+                        record.id, record.json, (CordApiException) e.getCause());
+                client.log(LogLevel.ERROR, String.format(
+                        "Cord rejected the outbox's sync for %s %s, skipping it",
+                        deadLetter.getKind(), record.id), e.getCause());
+                deadLetterHandler.accept(deadLetter);
+                return true;
+            }
+            int half = batch.size() / 2;
+            return deliver(batch.subList(0, half)) && deliver(batch.subList(half, batch.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastDrainError = e;
+            return false;
+        }
+    }
+
+    /**
+     * @return Whether the error is the API refusing the request itself,
+     *         which sending it again would not change. Authentication
+     *         failures and throttling are not: they are not the records'
+     *         fault, and are retried like any other outage.
+     **/
+    private static boolean isRejection(Throwable error) {
+        if (!(error instanceof CordApiException)) {
+            return false;
+        }
+        int status = ((CordApiException) error).getStatusCode();
+        return status >= 400 && status < 500 && status != 401 && status != 403 && status != 429;
+    }
+
+    /**
+     * The default dead letter handler, which appends each rejected record
+     * to the dead-letters file as a line of JSON.
+     **/
+    private void appendDeadLetter(DeadLetter deadLetter) {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        try {
+            try (JsonGenerator generator = Cord.jsonFactory.createGenerator(line)) {
+                generator.writeStartObject();
+                generator.writeStringField("kind", deadLetter.getKind());
+                generator.writeStringField("id", deadLetter.getId());
+                generator.writeNumberField("status", deadLetter.getError().getStatusCode());
+                generator.writeFieldName("sync");
+                generator.writeRawValue(deadLetter.getJson());
+                generator.writeEndObject();
+            }
+            line.write('\n');
+            try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTERS),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer out = ByteBuffer.wrap(line.toByteArray());
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+        } catch (IOException e) {
+            // Fails the drain, so the record is tried again rather than lost
+            throw new UncheckedIOException("Could not write a Cord outbox dead letter", e);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(
+                            SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        Path checkpoint = directory.resolve(CHECKPOINT);
+        if (Files.exists(checkpoint)) {
+            ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            deliveredSegment = saved.getLong();
+            deliveredPosition = saved.getInt();
+        } else {
+            deliveredSegment = files.isEmpty() ? 0 : files.firstKey();
+            deliveredPosition = 0;
+        }
+
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            if (file.getKey() < deliveredSegment) {
+                Files.deleteIfExists(file.getValue());
+            } else {
+                openSegment(file.getKey(), (int) Files.size(file.getValue()));
+            }
+        }
+        if (!segments.containsKey(deliveredSegment)) {
+            openSegment(deliveredSegment, segmentSize);
+            deliveredPosition = 0;
+        }
+
+        // Replay: count what is left to deliver and find where to append
+        for (Segment segment : segments.tailMap(deliveredSegment).values()) {
+            int position = segment.sequence == deliveredSegment ? deliveredPosition : 0;
+            Record record;
+            while ((record = readRecord(segment.buffer, position, segment.buffer.capacity())) != null) {
+                pending.incrementAndGet();
+                position = record.next;
+            }
+            writeSegment = segment;
+            writePosition = position;
+        }
+        // Clear whatever a crash left half-written, so the next record's
+        // end is unambiguous
+        ByteBuffer tail = writeSegment.buffer.duplicate();
+        tail.position(writePosition);
+        while (tail.hasRemaining()) {
+            tail.put((byte) 0);
+        }
+    }
+
+    private Segment openSegment(long sequence, int size) throws IOException {
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        Segment segment = new Segment(sequence, file, buffer);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer saved = ByteBuffer.allocate(12).putLong(deliveredSegment).putInt(deliveredPosition);
+        Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            saved.flip();
+            while (saved.hasRemaining()) {
+                channel.write(saved);
+            }
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteDeliveredSegments() throws IOException {
+        synchronized (lock) {
+            Iterator<Segment> delivered = segments.headMap(deliveredSegment).values().iterator();
+            while (delivered.hasNext()) {
+                Files.deleteIfExists(delivered.next().file);
+                delivered.remove();
+            }
+        }
+    }
+
+    /**
+     * Counts the records written from a position onwards.
+     **/
+    private long countRecordsFrom(long sequence, int position) {
+        synchronized (lock) {
+            long count = 0;
+            for (Segment segment : segments.tailMap(sequence).values()) {
+                int limit = segment == writeSegment ? writePosition : segment.buffer.capacity();
+                Record record;
+                while ((record = readRecord(segment.buffer, position, limit)) != null) {
+                    count++;
+                    position = record.next;
+                }
+                position = 0;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return Whether nothing was written from the position onwards, which
+     *         is how a full segment ends
+     **/
+    private static boolean isEndOfSegment(MappedByteBuffer buffer, int position) {
+        return position + RECORD_HEADER_SIZE > buffer.capacity() || buffer.getInt(position) == 0;
+    }
+
+    /**
+     * Reads the record at a position, or returns null if there is no
+     * complete, intact record there.
+     **/
+    private static Record readRecord(MappedByteBuffer buffer, int position, int limit) {
+        if (position + RECORD_HEADER_SIZE > limit) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        int end = position + RECORD_HEADER_SIZE + length;
+        if (length < 3 || end > limit || end < 0) {
+            return null;
+        }
+        ByteBuffer contents = buffer.duplicate();
+        contents.position(position + RECORD_HEADER_SIZE).limit(end);
+        CRC32 crc = new CRC32();
+        crc.update(contents.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            return null;
+        }
+        int kind = contents.get();
+        byte[] id = new byte[contents.getShort() & 0xffff];
+        if (id.length > contents.remaining()) {
+            return null;
+        }
+        contents.get(id);
+        byte[] json = new byte[contents.remaining()];
+        contents.get(json);
+        return new Record(kind, new String(id, StandardCharsets.UTF_8), new String(json, StandardCharsets.UTF_8), end);
+    }
+
+    private static final class Segment {
+        private final long sequence;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        private Segment(long sequence, Path file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Record {
+        private final int kind;
+        private final String id;
+        private final String json;
+        private final int next;
+
+        private Record(int kind, String id, String json, int next) {
+            this.kind = kind;
+            this.id = id;
+            this.json = json;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A user or group sync which the API rejected, and which the outbox
+     * has given up on.
+     **/
+    public static final class DeadLetter {
+        private final String kind;
+        private final String id;
+        private final String json;
+        private final CordApiException error;
+
+        private DeadLetter(String kind, String id, String json, CordApiException error) {
+            this.kind = kind;
+            this.id = id;
+            this.json = json;
+            this.error = error;
+        }
+
+        /**
+         * @return "user" or "group"
+         **/
+        public String getKind() {
+            return kind;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return The user or group as it was sent, serialized as JSON
+         **/
+        public String getJson() {
+            return json;
+        }
+
+        /**
+         * @return How the API answered when the record was sent on its own
+         **/
+        public CordApiException getError() {
+            return error;
+        }
+    }
+
+    public static class CordOutboxBuilder {
+        private final CordClient client;
+        private final Path directory;
+        private int segmentSize = 64 * 1024 * 1024;
+        private Duration drainInterval = Duration.ofSeconds(1);
+        private boolean fsync;
+        private Consumer<DeadLetter> deadLetterHandler;
+
+        /**
+         * @param client    The client used to deliver recorded syncs
+         * @param directory The directory the outbox keeps its files in.
+         *                  It is created if it does not exist.
+         **/
+        public CordOutboxBuilder(CordClient client, Path directory) {
+            this.client = client;
+            this.directory = directory;
+        }
+
+        /**
+         * SegmentSize is the size of each log file, in bytes. A single
+         * user or group must fit in one. Defaults to 64 MiB.
+         * */
+        public CordOutboxBuilder segmentSize(int segmentSize) {
+            if (segmentSize < 1024) {
+                throw new IllegalArgumentException("segmentSize must be at least 1024");
+            }
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * DrainInterval is how long the outbox waits between attempts to
+         * deliver what it holds. Defaults to one second.
+         * */
+        public CordOutboxBuilder drainInterval(Duration drainInterval) {
+            if (drainInterval.isNegative() || drainInterval.isZero()) {
+                throw new IllegalArgumentException("drainInterval must be positive");
+            }
+            this.drainInterval = drainInterval;
+            return this;
+        }
+
+        /**
+         * Fsync makes every sync wait until its record is on disk, so that
+         * it also survives the machine losing power. This makes recording
+         * a sync take as long as a disk flush. Defaults to false.
+         * */
+        public CordOutboxBuilder fsync(boolean fsync) {
+            this.fsync = fsync;
+            return this;
+        }
+
+        /**
+         * DeadLetterHandler is given each user or group sync the API
+         * rejects, once the outbox has given up on it and before the
+         * checkpoint moves past it. It runs on the outbox's drain thread.
+         * If it throws, the record is sent again on the next drain.
+         * Defaults to appending them to a file named dead-letters in the
+         * outbox directory, one JSON object per line.
+         * */
+        public CordOutboxBuilder deadLetterHandler(Consumer<DeadLetter> deadLetterHandler) {
+            this.deadLetterHandler = deadLetterHandler;
+            return this;
+        }
+
+        /**
+         * Opens the outbox, replaying anything left undelivered by a
+         * previous run.
+         *
+         * @throws CordException if the directory cannot be used
+         **/
+        public CordOutbox build() throws CordException {
+            return new CordOutbox(this);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+
+/**
+ * The outcome of a call to the Cord REST API.
+ *
+ * The response body is read with a streaming parser as it arrives, and
+ * only the fields below are kept, so a response is never held in memory
+ * as a whole. The user and group counts are those of the request: the API
+ * accepts or rejects a call as a whole, so a successful call synced
+ * everything in it.
+ **/
+public class CordResponse {
+    private final int statusCode;
+    private final boolean skipped;
+    private final String message;
+    private final String error;
+    private final int syncedUsers;
+    private final int syncedGroups;
+    private final Duration retryAfter;
+    private final long rateLimitRemaining;
+
+    private CordResponse(
+            int statusCode,
+            boolean skipped,
+            String message,
+            String error,
+            int syncedUsers,
+            int syncedGroups,
+            Duration retryAfter,
+            long rateLimitRemaining) {
+        this.statusCode = statusCode;
+        this.skipped = skipped;
+        this.message = message;
+        this.error = error;
+        this.syncedUsers = syncedUsers;
+        this.syncedGroups = syncedGroups;
+        this.retryAfter = retryAfter;
+        this.rateLimitRemaining = rateLimitRemaining;
+    }
+
+    /**
+     * Reads a response, draining and closing its body.
+     *
+     * @param users  The number of users sent in the request
+     * @param groups The number of groups sent in the request
+     **/
+    static CordResponse read(int statusCode, HttpHeaders headers, InputStream body, int users, int groups)
+            throws IOException {
+        String message = null;
+        String error = null;
+        try (InputStream in = body) {
+            try (JsonParser parser = Cord.jsonFactory.createParser(in)
+                    .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)) {
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("message".equals(name)) {
+                            message = parser.getValueAsString();
+                        } else if ("error".equals(name)) {
+                            error = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                // Not JSON, such as an error page from a proxy. The status
+                // code still says what happened.
+            }
+            // Read to the end, so the connection can be reused
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        boolean success = statusCode >= 200 && statusCode < 300;
+        long retryAfterMillis = success ? -1 : RetryPolicy.retryAfterMillis(headers);
+        return new CordResponse(
+                statusCode,
+                false,
+                message,
+                error,
+                success ? users : 0,
+                success ? groups : 0,
+                retryAfterMillis >= 0 ? Duration.ofMillis(retryAfterMillis) : null,
+                headers.firstValueAsLong("RateLimit-Remaining")
+                        .orElse(headers.firstValueAsLong("X-RateLimit-Remaining").orElse(-1)));
+    }
+
+    /**
+     * A response for a call which was skipped because nothing changed
+     * since the last sync.
+     **/
+    static CordResponse unchanged() {
+        return new CordResponse(200, true, "Skipped, unchanged since the last sync", null, 0, 0, null, -1);
+    }
+
+    /**
+     * @return The HTTP status code, or 200 for a skipped call
+     **/
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isSuccess() {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    /**
+     * @return Whether the call was skipped without reaching the server,
+     *         because the client's change detector found nothing to sync
+     **/
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return The human-readable message the API returned, or null if
+     *         there was none
+     **/
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The API's name for the error, such as "invalid_field", or
+     *         null if the call succeeded
+     **/
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return The number of users the call synced
+     **/
+    public int getSyncedUsers() {
+        return syncedUsers;
+    }
+
+    /**
+     * @return The number of groups the call synced
+     **/
+    public int getSyncedGroups() {
+        return syncedGroups;
+    }
+
+    /**
+     * @return How long the server asked the client to wait before calling
+     *         again, or null if it did not say
+     **/
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return The number of calls the server says are left in the current
+     *         rate limit window, or -1 if it did not say
+     **/
+    public long getRateLimitRemaining() {
+        return rateLimitRemaining;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder().append(statusCode);
+        if (error != null) {
+            builder.append(' ').append(error);
+        }
+        if (message != null) {
+            builder.append(": ").append(message);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,542 @@
+package com.cord.server;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-behind queue for user and group syncs.
+ *
+ * Updates are held for a short window and then sent together through the
+ * batch API. Within a window only the latest state of each user and group
+ * is kept, so syncing the same user many times in quick succession costs
+ * a single write. A window ends once the flush interval has passed since
+ * its first update, once it holds maxBatchSize updates, or when flush()
+ * is called.
+ *
+ * Every update returns a future which completes once the state it
+ * belongs to has been delivered. If an update is superseded by a later
+ * one for the same ID before it is sent, both futures complete when the
+ * later state is delivered.
+ *
+ * Group membership changes are merged per group in the same way, and
+ * sent through the group members API once the window's users and groups
+ * have been delivered, so that the users they refer to exist. Syncing a
+ * group with a full member list replaces any membership changes queued
+ * for it before.
+ *
+ * Only one window is in flight at a time, so two states of the same user
+ * or group are never sent at once and cannot land out of order. A window
+ * which ends while the previous one is still being delivered keeps
+ * collecting updates until that delivery completes, and is then sent.
+ *
+ * While a window is in flight, at most maxPending distinct users and
+ * groups wait for the next one. Further updates for IDs which are not
+ * already waiting fail straight away, so that a slow or failing API
+ * cannot grow the queue without limit.
+ **/
+public class CordSyncQueue implements AutoCloseable {
+    private static final int MAX_USERS_PER_BATCH = 10000;
+    private static final int MAX_GROUPS_PER_BATCH = 1000;
+
+    private final CordClient client;
+    private final long flushIntervalNanos;
+    private final int maxBatchSize;
+    private final int maxPending;
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+
+    private final Object lock = new Object();
+    private Map<String, Pending<PlatformUserVariables>> users = new LinkedHashMap<>();
+    private Map<String, Pending<PlatformGroupVariables>> groups = new LinkedHashMap<>();
+    private Map<String, Pending<MembershipDelta>> memberships = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean flushing;
+    /**
+     * Completes once the flush requested while another was in flight has
+     * been delivered, or null if none was requested.
+     **/
+    private CompletableFuture<Void> nextFlush;
+    private boolean closed;
+
+    private CordSyncQueue(CordSyncQueueBuilder builder) {
+        this.client = builder.client;
+        this.flushIntervalNanos = builder.flushInterval.toNanos();
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxPending = builder.maxPending;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "cord-sync-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+        if (builder.flushOnShutdown) {
+            this.shutdownHook = new Thread(this::close, "cord-sync-queue-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            this.shutdownHook = null;
+        }
+    }
+
+    /**
+     * Queues a user to be synced. The user must have its ID set.
+     *
+     * @param user The user to sync
+     * @return A future which completes once this user's latest queued
+     *         state has been delivered, or completes exceptionally with a
+     *         CordException if it could not be or the queue is full
+     **/
+    public CompletableFuture<Void> syncUser(PlatformUserVariables user) {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("Users synced through a CordSyncQueue must have an ID");
+        }
+        return enqueue(user.getId(), user, null);
+    }
+
+    /**
+     * Queues a group to be synced. The group must have its ID set.
+     *
+     * @param group The group to sync
+     * @return A future which completes once this group's latest queued
+     *         state has been delivered, or completes exceptionally with a
+     *         CordException if it could not be or the queue is full
+     **/
+    public CompletableFuture<Void> syncGroup(PlatformGroupVariables group) {
+        if (group.getId() == null) {
+            throw new IllegalArgumentException("Groups synced through a CordSyncQueue must have an ID");
+        }
+        return enqueue(group.getId(), null, group);
+    }
+
+    /**
+     * Queues users to be added to a group.
+     *
+     * @return A future which completes once the group's queued membership
+     *         changes have been delivered, or completes exceptionally with
+     *         a CordException if they could not be or the queue is full
+     **/
+    public CompletableFuture<Void> addGroupMembers(String groupId, Collection<String> userIds) {
+        return enqueueMembership(groupId, new MembershipDelta().add(userIds));
+    }
+
+    /**
+     * Queues users to be removed from a group.
+     *
+     * @return A future which completes once the group's queued membership
+     *         changes have been delivered, or completes exceptionally with
+     *         a CordException if they could not be or the queue is full
+     **/
+    public CompletableFuture<Void> removeGroupMembers(String groupId, Collection<String> userIds) {
+        return enqueueMembership(groupId, new MembershipDelta().remove(userIds));
+    }
+
+    private CompletableFuture<Void> enqueue(String id, PlatformUserVariables user, PlatformGroupVariables group) {
+        return enqueue(id, user, group, null);
+    }
+
+    private CompletableFuture<Void> enqueueMembership(String groupId, MembershipDelta delta) {
+        return enqueue(groupId, null, null, delta);
+    }
+
+    private CompletableFuture<Void> enqueue(
+            String id,
+            PlatformUserVariables user,
+            PlatformGroupVariables group,
+            MembershipDelta delta) {
+        CompletableFuture<Void> delivered;
+        boolean full;
+        int pending;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("This CordSyncQueue has been closed");
+            }
+            if (users.size() + groups.size() + memberships.size() >= maxPending
+                    && !isQueued(id, user, group)) {
+                return CompletableFuture.failedFuture(new CordException(
+                        "CordSyncQueue is full: " + maxPending + " updates are waiting for the one in flight"));
+            }
+            if (user != null) {
+                delivered = put(users, id, user);
+            } else if (group != null) {
+                delivered = put(groups, id, group);
+                if (group.getMembers() != null) {
+                    supersedeMembership(id, delivered);
+                }
+            } else {
+                delivered = merge(memberships, id, delta);
+            }
+            pending = users.size() + groups.size() + memberships.size();
+            full = pending >= maxBatchSize;
+            if (!full && scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, flushIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        client.getMetrics().onQueueDepth(CordMetrics.Queue.SYNC_QUEUE, pending);
+        if (full) {
+            flush();
+        }
+        return delivered;
+    }
+
+    /**
+     * @return Whether an update for this ID is already waiting, so that
+     *         replacing or merging it does not grow the queue
+     **/
+    private boolean isQueued(String id, PlatformUserVariables user, PlatformGroupVariables group) {
+        if (user != null) {
+            return users.containsKey(id);
+        } else if (group != null) {
+            return groups.containsKey(id);
+        }
+        return memberships.containsKey(id);
+    }
+
+    private static CompletableFuture<Void> merge(
+            Map<String, Pending<MembershipDelta>> pending,
+            String groupId,
+            MembershipDelta delta) {
+        Pending<MembershipDelta> existing = pending.get(groupId);
+        if (existing != null) {
+            existing.value.merge(delta);
+            return existing.delivered;
+        }
+        Pending<MembershipDelta> added = new Pending<>(delta);
+        pending.put(groupId, added);
+        return added.delivered;
+    }
+
+    /**
+     * Drops the queued membership changes of a group whose full member list
+     * is being synced, completing them along with the group.
+     **/
+    private void supersedeMembership(String groupId, CompletableFuture<Void> groupDelivered) {
+        Pending<MembershipDelta> superseded = memberships.remove(groupId);
+        if (superseded != null) {
+            groupDelivered.whenComplete((ignored, error) -> {
+                if (error == null) {
+                    superseded.delivered.complete(null);
+                } else {
+                    superseded.delivered.completeExceptionally(error);
+                }
+            });
+        }
+    }
+
+    private static <T> CompletableFuture<Void> put(Map<String, Pending<T>> pending, String id, T value) {
+        Pending<T> existing = pending.get(id);
+        if (existing != null) {
+            existing.value = value;
+            return existing.delivered;
+        }
+        Pending<T> added = new Pending<>(value);
+        pending.put(id, added);
+        return added.delivered;
+    }
+
+    /**
+     * Sends everything that is currently queued, without waiting for the
+     * flush interval. If an earlier flush is still being delivered, the
+     * queued updates are sent as soon as it completes.
+     *
+     * @return A future which completes once everything that was queued
+     *         has been delivered, or completes exceptionally with a
+     *         CordException if any of it could not be
+     **/
+    public CompletableFuture<Void> flush() {
+        Map<String, Pending<PlatformUserVariables>> flushedUsers;
+        Map<String, Pending<PlatformGroupVariables>> flushedGroups;
+        Map<String, Pending<MembershipDelta>> flushedMemberships;
+        synchronized (lock) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (flushing) {
+                if (nextFlush == null) {
+                    nextFlush = new CompletableFuture<>();
+                }
+                return nextFlush;
+            }
+            if (users.isEmpty() && groups.isEmpty() && memberships.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            flushedUsers = users;
+            flushedGroups = groups;
+            flushedMemberships = memberships;
+            users = new LinkedHashMap<>();
+            groups = new LinkedHashMap<>();
+            memberships = new LinkedHashMap<>();
+            flushing = true;
+        }
+
+        CompletableFuture<Void> delivered;
+        try {
+            delivered = send(flushedUsers, flushedGroups, flushedMemberships);
+        } catch (RuntimeException e) {
+            delivered = CompletableFuture.failedFuture(e);
+        }
+        delivered.whenComplete((ignored, error) -> onFlushed());
+        return delivered;
+    }
+
+    /**
+     * Ends the flush in flight, and starts the one requested meanwhile.
+     **/
+    private void onFlushed() {
+        CompletableFuture<Void> next;
+        synchronized (lock) {
+            flushing = false;
+            next = nextFlush;
+            nextFlush = null;
+        }
+        if (next != null) {
+            flush().whenComplete((ignored, error) -> {
+                if (error == null) {
+                    next.complete(null);
+                } else {
+                    next.completeExceptionally(unwrap(error));
+                }
+            });
+        }
+    }
+
+    private CompletableFuture<Void> send(
+            Map<String, Pending<PlatformUserVariables>> flushedUsers,
+            Map<String, Pending<PlatformGroupVariables>> flushedGroups,
+            Map<String, Pending<MembershipDelta>> flushedMemberships) {
+        List<Pending<PlatformUserVariables>> userList = new ArrayList<>(flushedUsers.values());
+        List<Pending<PlatformGroupVariables>> groupList = new ArrayList<>(flushedGroups.values());
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int u = 0, g = 0; u < userList.size() || g < groupList.size();
+                u += MAX_USERS_PER_BATCH, g += MAX_GROUPS_PER_BATCH) {
+            batches.add(send(
+                    slice(userList, u, MAX_USERS_PER_BATCH),
+                    slice(groupList, g, MAX_GROUPS_PER_BATCH)));
+        }
+        CompletableFuture<Void> delivered = CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]));
+        if (flushedMemberships.isEmpty()) {
+            return delivered;
+        }
+        // Membership changes go out whether or not the batches succeeded,
+        // since most of them will not depend on the failed ones
+        return delivered.handle((ignored, error) -> error)
+                .thenCompose(batchError -> sendMemberships(flushedMemberships).thenApply(ignored -> {
+                    if (batchError != null) {
+                        throw new CompletionException(batchError);
+                    }
+                    return null;
+                }));
+    }
+
+    private CompletableFuture<Void> sendMemberships(Map<String, Pending<MembershipDelta>> flushed) {
+        List<CompletableFuture<Void>> sent = new ArrayList<>(flushed.size());
+        for (Map.Entry<String, Pending<MembershipDelta>> entry : flushed.entrySet()) {
+            Pending<MembershipDelta> pending = entry.getValue();
+            if (pending.value.isEmpty()) {
+                pending.delivered.complete(null);
+                continue;
+            }
+            CompletableFuture<Void> delivered;
+            try {
+                delivered = client.sendMembershipDelta(entry.getKey(), pending.value);
+            } catch (RuntimeException e) {
+                delivered = CompletableFuture.failedFuture(e);
+            }
+            sent.add(delivered.handle((ignored, error) -> {
+                Throwable cause = unwrap(error);
+                complete(Collections.singletonList(pending), cause);
+                if (cause != null) {
+                    throw new CompletionException(cause);
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private static <T> List<Pending<T>> slice(List<Pending<T>> list, int from, int size) {
+        if (from >= list.size()) {
+            return Collections.emptyList();
+        }
+        return list.subList(from, Math.min(list.size(), from + size));
+    }
+
+    private CompletableFuture<Void> send(
+            List<Pending<PlatformUserVariables>> batchUsers,
+            List<Pending<PlatformGroupVariables>> batchGroups) {
+        List<PlatformUserVariables> userValues = new ArrayList<>(batchUsers.size());
+        for (Pending<PlatformUserVariables> user : batchUsers) {
+            userValues.add(user.value);
+        }
+        List<PlatformGroupVariables> groupValues = new ArrayList<>(batchGroups.size());
+        for (Pending<PlatformGroupVariables> group : batchGroups) {
+            groupValues.add(group.value);
+        }
+
+        CompletableFuture<CordResponse> sent;
+        try {
+            sent = client.batchSyncAsync(userValues, groupValues);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent.handle((response, error) -> {
+            Throwable cause = unwrap(error);
+            complete(batchUsers, cause);
+            complete(batchGroups, cause);
+            if (cause != null) {
+                throw new CompletionException(cause);
+            }
+            return null;
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private static <T> void complete(List<Pending<T>> batch, Throwable error) {
+        for (Pending<T> pending : batch) {
+            if (error == null) {
+                pending.delivered.complete(null);
+            } else {
+                pending.delivered.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * @return The number of users, groups and groups with membership
+     *         changes waiting to be sent
+     **/
+    public int getPendingCount() {
+        synchronized (lock) {
+            return users.size() + groups.size() + memberships.size();
+        }
+    }
+
+    /**
+     * Stops accepting updates, sends everything still queued and waits
+     * for it to be delivered.
+     **/
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            flush().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Failures have already been reported through the futures
+            // returned for each update
+        } finally {
+            scheduler.shutdown();
+            if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // The JVM is already shutting down
+                }
+            }
+        }
+    }
+
+    private static class Pending<T> {
+        private final CompletableFuture<Void> delivered = new CompletableFuture<>();
+        private T value;
+
+        private Pending(T value) {
+            this.value = value;
+        }
+    }
+
+    public static class CordSyncQueueBuilder {
+        private final CordClient client;
+        private Duration flushInterval = Duration.ofSeconds(1);
+        private int maxBatchSize = 1000;
+        private int maxPending = 100000;
+        private boolean flushOnShutdown;
+
+        /**
+         * @param client The client used to deliver queued updates
+         **/
+        public CordSyncQueueBuilder(CordClient client) {
+            this.client = client;
+        }
+
+        /**
+         * FlushInterval is how long an update may wait in the queue before
+         * it is sent. Defaults to one second.
+         * */
+        public CordSyncQueueBuilder flushInterval(Duration flushInterval) {
+            if (flushInterval.isNegative() || flushInterval.isZero()) {
+                throw new IllegalArgumentException("flushInterval must be positive");
+            }
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * MaxBatchSize is the number of distinct users, groups and groups
+         * with membership changes the queue collects before it flushes
+         * without waiting for the flush interval. Defaults to 1000.
+         * */
+        public CordSyncQueueBuilder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * MaxPending is the number of distinct users, groups and groups
+         * with membership changes which may wait while a window is in
+         * flight. Once it is reached, updates for other IDs fail with a
+         * CordException until the window has been delivered. It must be
+         * at least maxBatchSize. Defaults to 100000.
+         * */
+        public CordSyncQueueBuilder maxPending(int maxPending) {
+            if (maxPending < 1) {
+                throw new IllegalArgumentException("maxPending must be at least 1");
+            }
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        /**
+         * FlushOnShutdown registers a JVM shutdown hook which closes the
+         * queue, delivering anything still queued. Defaults to false.
+         * */
+        public CordSyncQueueBuilder flushOnShutdown(boolean flushOnShutdown) {
+            this.flushOnShutdown = flushOnShutdown;
+            return this;
+        }
+
+        public CordSyncQueue build() {
+            if (maxPending < maxBatchSize) {
+                throw new IllegalArgumentException("maxPending must be at least maxBatchSize");
+            }
+            return new CordSyncQueue(this);
+        }
+    }
+}
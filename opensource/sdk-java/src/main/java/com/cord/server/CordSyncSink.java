@@ -0,0 +1,561 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipes a stream of user and group changes, such as a change data
+ * capture feed, into Cord through the batch API, with backpressure.
+ *
+ * The sink subscribes to a publisher of changes and publishes one
+ * acknowledgement per change, in the order the changes arrived. Each
+ * change carries a context of the caller's choosing, such as the offset
+ * it was read at, so once an acknowledgement arrives everything up to its
+ * change has been dealt with and the offset can be committed.
+ *
+ * Changes are grouped into batch calls. A batch is sent once it holds
+ * maxBatchSize changes or maxBatchBytes of JSON, or once linger has
+ * passed since the oldest change waiting, and at most
+ * maxInFlightBatches batches are in flight at once. Changes are only
+ * requested from upstream as room frees up: the sink never holds more
+ * than enough changes for every in-flight batch plus one more, counting
+ * those whose acknowledgements have not been taken by the subscriber.
+ * Upstream therefore runs no faster than Cord accepts the writes, or the
+ * subscriber takes the acknowledgements.
+ *
+ * Changes to the same user or group are never in flight in two batches
+ * at once, so they are applied in the order they arrived. A batch which
+ * still fails after the client's retries acknowledges each of its
+ * changes with the error, and the sink carries on.
+ *
+ * The sink takes a single subscriber for its acknowledgements. Until one
+ * subscribes, acknowledgements are dropped, so subscribe to the sink
+ * before subscribing it to its upstream.
+ **/
+public class CordSyncSink<C> implements Flow.Processor<CordSyncSink.Change<C>, CordSyncSink.Ack<C>> {
+    private static final int MAX_USERS_PER_BATCH = 10000;
+    private static final int MAX_GROUPS_PER_BATCH = 1000;
+
+    private final CordClient client;
+    private final int maxBatchSize;
+    private final long maxBatchBytes;
+    private final long lingerNanos;
+    private final int maxInFlightBatches;
+    private final long window;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Entry<C>> unacknowledged = new ArrayDeque<>();
+    private final ArrayDeque<Entry<C>> pending = new ArrayDeque<>();
+    private final Set<String> inFlightKeys = new HashSet<>();
+    private long pendingBytes;
+    private int inFlightBatches;
+    private boolean lingerScheduled;
+    private boolean flushing;
+    private Flow.Subscription upstream;
+    private boolean upstreamDone;
+    private Throwable upstreamError;
+    private Flow.Subscriber<? super Ack<C>> downstream;
+    private long demand;
+    private boolean cancelled;
+    private boolean terminated;
+    private boolean emitting;
+    private boolean missed;
+
+    private CordSyncSink(CordSyncSinkBuilder<C> builder) {
+        this.client = builder.client;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchBytes = builder.maxBatchBytes;
+        this.lingerNanos = builder.linger.toNanos();
+        this.maxInFlightBatches = builder.maxInFlightBatches;
+        this.window = (long) maxBatchSize * (maxInFlightBatches + 1);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (lock) {
+            if (upstream != null || cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        subscription.request(window);
+    }
+
+    @Override
+    public void onNext(Change<C> change) {
+        Entry<C> entry = new Entry<>(change);
+        List<List<Entry<C>>> batches = null;
+        boolean scheduleLinger = false;
+        synchronized (lock) {
+            unacknowledged.add(entry);
+            if (entry.ack == null) {
+                pending.add(entry);
+                pendingBytes += entry.json.length();
+                batches = cutBatches();
+                if (!pending.isEmpty() && !lingerScheduled && !flushing) {
+                    lingerScheduled = true;
+                    scheduleLinger = true;
+                }
+            }
+        }
+        if (scheduleLinger) {
+            CompletableFuture.delayedExecutor(lingerNanos, TimeUnit.NANOSECONDS).execute(this::onLinger);
+        }
+        send(batches);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        List<List<Entry<C>>> batches;
+        synchronized (lock) {
+            upstreamDone = true;
+            upstreamError = error;
+            flushing = true;
+            batches = cutBatches();
+        }
+        send(batches);
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        List<List<Entry<C>>> batches;
+        synchronized (lock) {
+            upstreamDone = true;
+            flushing = true;
+            batches = cutBatches();
+        }
+        send(batches);
+        drain();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Ack<C>> subscriber) {
+        synchronized (lock) {
+            if (downstream == null) {
+                downstream = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A CordSyncSink takes a single subscriber"));
+            return;
+        }
+        downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    downstream.onError(new IllegalArgumentException("Subscribers must request at least one item"));
+                    return;
+                }
+                synchronized (lock) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                Flow.Subscription subscription;
+                synchronized (lock) {
+                    if (cancelled) {
+                        return;
+                    }
+                    cancelled = true;
+                    subscription = upstream;
+                }
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+        });
+        drain();
+    }
+
+    /**
+     * @return The number of changes received whose acknowledgements have
+     *         not been delivered yet
+     **/
+    public int getPendingCount() {
+        synchronized (lock) {
+            return unacknowledged.size();
+        }
+    }
+
+    private void onLinger() {
+        List<List<Entry<C>>> batches;
+        synchronized (lock) {
+            lingerScheduled = false;
+            flushing = true;
+            batches = cutBatches();
+        }
+        send(batches);
+    }
+
+    /**
+     * Takes the batches which are ready to go off the pending changes.
+     * Must be called with the lock held.
+     *
+     * @return The batches to send once the lock is released, or null
+     **/
+    private List<List<Entry<C>>> cutBatches() {
+        List<List<Entry<C>>> batches = null;
+        while (inFlightBatches < maxInFlightBatches && !pending.isEmpty()
+                && (flushing || pending.size() >= maxBatchSize || pendingBytes >= maxBatchBytes)) {
+            List<Entry<C>> batch = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            int users = 0;
+            int groups = 0;
+            long bytes = 0;
+            while (!pending.isEmpty() && batch.size() < maxBatchSize) {
+                Entry<C> entry = pending.peek();
+                boolean user = entry.change.user != null;
+                if (inFlightKeys.contains(entry.key)
+                        || (user ? users == MAX_USERS_PER_BATCH : groups == MAX_GROUPS_PER_BATCH)
+                        || (!batch.isEmpty() && bytes + entry.json.length() > maxBatchBytes)) {
+                    // Later changes wait behind this one, so that changes to
+                    // the same ID stay in order
+                    break;
+                }
+                pending.poll();
+                pendingBytes -= entry.json.length();
+                bytes += entry.json.length();
+                batch.add(entry);
+                keys.add(entry.key);
+                if (user) {
+                    users++;
+                } else {
+                    groups++;
+                }
+            }
+            if (batch.isEmpty()) {
+                // The next change waits for an earlier one to the same ID
+                break;
+            }
+            inFlightKeys.addAll(keys);
+            inFlightBatches++;
+            if (batches == null) {
+                batches = new ArrayList<>();
+            }
+            batches.add(batch);
+        }
+        if (pending.isEmpty()) {
+            flushing = upstreamDone;
+        }
+        return batches;
+    }
+
+    private void send(List<List<Entry<C>>> batches) {
+        if (batches == null) {
+            return;
+        }
+        for (List<Entry<C>> batch : batches) {
+            // A later change to the same ID replaces an earlier one
+            Map<String, String> users = new LinkedHashMap<>();
+            Map<String, String> groups = new LinkedHashMap<>();
+            for (Entry<C> entry : batch) {
+                (entry.change.user != null ? users : groups).put(entry.key, entry.json);
+            }
+            CompletableFuture<CordResponse> sent;
+            try {
+                sent = client.batchSyncSerialized(users.values(), groups.values());
+            } catch (RuntimeException e) {
+                sent = CompletableFuture.failedFuture(e);
+            }
+            sent.whenComplete((response, error) -> onBatchDone(batch, error));
+        }
+    }
+
+    private void onBatchDone(List<Entry<C>> batch, Throwable error) {
+        CordException cause = null;
+        if (error != null) {
+            Throwable unwrapped = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            cause = unwrapped instanceof CordException
+                    ? (CordException) unwrapped
+                    : new CordException("Could not batch sync Cord users and groups", unwrapped);
+        }
+        List<List<Entry<C>>> batches;
+        synchronized (lock) {
+            for (Entry<C> entry : batch) {
+                entry.ack = new Ack<>(entry.change, cause);
+                inFlightKeys.remove(entry.key);
+            }
+            inFlightBatches--;
+            batches = cutBatches();
+        }
+        send(batches);
+        drain();
+    }
+
+    /**
+     * Delivers the acknowledgements which are ready, in order, and asks
+     * upstream for as many changes as were acknowledged. Only one thread
+     * delivers at a time; a thread which finds another delivering leaves
+     * it to pick up the new work.
+     **/
+    private void drain() {
+        synchronized (lock) {
+            if (emitting) {
+                missed = true;
+                return;
+            }
+            emitting = true;
+        }
+        while (true) {
+            List<Ack<C>> ready = new ArrayList<>();
+            Flow.Subscriber<? super Ack<C>> subscriber;
+            Flow.Subscription subscription;
+            long released = 0;
+            boolean terminate = false;
+            Throwable error;
+            synchronized (lock) {
+                missed = false;
+                subscriber = cancelled ? null : downstream;
+                while (!unacknowledged.isEmpty() && unacknowledged.peek().ack != null
+                        && (subscriber == null || demand > 0)) {
+                    Entry<C> entry = unacknowledged.poll();
+                    if (subscriber != null) {
+                        ready.add(entry.ack);
+                        if (demand != Long.MAX_VALUE) {
+                            demand--;
+                        }
+                    }
+                    released++;
+                }
+                if (upstreamDone && unacknowledged.isEmpty() && subscriber != null && !terminated) {
+                    terminated = true;
+                    terminate = true;
+                }
+                error = upstreamError;
+                subscription = upstreamDone || cancelled ? null : upstream;
+                if (released == 0 && !terminate) {
+                    if (!missed) {
+                        emitting = false;
+                        return;
+                    }
+                    continue;
+                }
+            }
+            for (Ack<C> ack : ready) {
+                subscriber.onNext(ack);
+            }
+            if (subscription != null) {
+                subscription.request(released);
+            }
+            if (terminate) {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+        }
+    }
+
+    /**
+     * A change to sync: the latest state of a user or a group, which must
+     * have its ID set.
+     **/
+    public static class Change<C> {
+        private final PlatformUserVariables user;
+        private final PlatformGroupVariables group;
+        private final C context;
+
+        private Change(PlatformUserVariables user, PlatformGroupVariables group, C context) {
+            this.user = user;
+            this.group = group;
+            this.context = context;
+        }
+
+        /**
+         * @param context Anything the caller wants back with the
+         *                acknowledgement, such as the change's offset
+         **/
+        public static <C> Change<C> user(PlatformUserVariables user, C context) {
+            return new Change<>(user, null, context);
+        }
+
+        /**
+         * @param context Anything the caller wants back with the
+         *                acknowledgement, such as the change's offset
+         **/
+        public static <C> Change<C> group(PlatformGroupVariables group, C context) {
+            return new Change<>(null, group, context);
+        }
+
+        /**
+         * @return The user, or null if this is a change to a group
+         **/
+        public PlatformUserVariables getUser() {
+            return user;
+        }
+
+        /**
+         * @return The group, or null if this is a change to a user
+         **/
+        public PlatformGroupVariables getGroup() {
+            return group;
+        }
+
+        public C getContext() {
+            return context;
+        }
+    }
+
+    /**
+     * The outcome of a change: either it was synced, or it failed with an
+     * error.
+     **/
+    public static class Ack<C> {
+        private final Change<C> change;
+        private final CordException error;
+
+        private Ack(Change<C> change, CordException error) {
+            this.change = change;
+            this.error = error;
+        }
+
+        public Change<C> getChange() {
+            return change;
+        }
+
+        public C getContext() {
+            return change.context;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return Why the change could not be synced, or null if it was
+         **/
+        public CordException getError() {
+            return error;
+        }
+    }
+
+    /**
+     * A change on its way through the sink, serialized as it arrives.
+     **/
+    private static class Entry<C> {
+        private final Change<C> change;
+        private String key;
+        private String json;
+        private Ack<C> ack;
+
+        private Entry(Change<C> change) {
+            this.change = change;
+            String id = change.user != null ? change.user.getId() : change.group.getId();
+            if (id == null) {
+                ack = new Ack<>(change, new CordException("Changes piped into a CordSyncSink must have an ID"));
+                return;
+            }
+            StringWriter out = new StringWriter();
+            try (JsonGenerator generator = Cord.jsonFactory.createGenerator(out)) {
+                JsonWriters.writeValue(generator, change.user != null ? change.user : change.group, false);
+            } catch (IOException e) {
+                ack = new Ack<>(change, new CordException("Could not serialize the change to " + id, e));
+                return;
+            }
+            this.key = (change.user != null ? "user:" : "group:") + id;
+            this.json = out.toString();
+        }
+    }
+
+    public static class CordSyncSinkBuilder<C> {
+        private final CordClient client;
+        private int maxBatchSize = 1000;
+        private long maxBatchBytes = 4 * 1024 * 1024;
+        private Duration linger = Duration.ofMillis(100);
+        private int maxInFlightBatches = 4;
+
+        /**
+         * @param client The client to send the batches through
+         **/
+        public CordSyncSinkBuilder(CordClient client) {
+            this.client = client;
+        }
+
+        /**
+         * MaxBatchSize is the most changes sent in one batch call. Batches
+         * never hold more than the API's 10000 users and 1000 groups.
+         * Defaults to 1000.
+         * */
+        public CordSyncSinkBuilder<C> maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * MaxBatchBytes is the most JSON sent in one batch call, unless a
+         * single change is larger. Defaults to 4 MiB.
+         * */
+        public CordSyncSinkBuilder<C> maxBatchBytes(long maxBatchBytes) {
+            if (maxBatchBytes < 1) {
+                throw new IllegalArgumentException("maxBatchBytes must be at least 1");
+            }
+            this.maxBatchBytes = maxBatchBytes;
+            return this;
+        }
+
+        /**
+         * Linger is how long a change may wait for a batch to fill up
+         * before the batch is sent anyway. Defaults to 100 milliseconds.
+         * */
+        public CordSyncSinkBuilder<C> linger(Duration linger) {
+            if (linger.isNegative()) {
+                throw new IllegalArgumentException("linger must not be negative");
+            }
+            this.linger = linger;
+            return this;
+        }
+
+        /**
+         * MaxInFlightBatches is the number of batch calls the sink has in
+         * flight at once. Defaults to 4.
+         * */
+        public CordSyncSinkBuilder<C> maxInFlightBatches(int maxInFlightBatches) {
+            if (maxInFlightBatches < 1) {
+                throw new IllegalArgumentException("maxInFlightBatches must be at least 1");
+            }
+            this.maxInFlightBatches = maxInFlightBatches;
+            return this;
+        }
+
+        public CordSyncSink<C> build() {
+            return new CordSyncSink<>(this);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Checks client and server auth tokens signed by this SDK, and decodes
+ * their claims.
+ *
+ * Tokens are HS512 JWTs signed with the project's secret, padded the same
+ * way the SDK pads it when signing. The verifier reads the project ID from
+ * the token, looks up that project's secret and prepares its key once,
+ * so after the first token of each project a verification is a single
+ * HMAC with a per-thread Mac. Signatures are compared in constant time.
+ *
+ * The project ID is read before the signature can be checked, so anyone
+ * can send tokens for made-up projects. Projects the secret lookup does
+ * not know are remembered for unknownProjectTtl, and the lookup is not
+ * called for them again until then. At most 10,000 of them are
+ * remembered.
+ *
+ * A verifier is safe to use from many threads at once.
+ **/
+public class CordTokenVerifier {
+    private static final int MAX_UNKNOWN_PROJECTS = 10_000;
+
+    private final Function<String, String> secrets;
+    private final long clockSkewSeconds;
+    private final long unknownProjectTtlSeconds;
+    private final ConcurrentHashMap<String, TokenSigner> signers = new ConcurrentHashMap<>();
+    /**
+     * The epoch second until which each project the lookup did not know is
+     * taken to still be unknown.
+     **/
+    private final ConcurrentHashMap<String, Long> unknownProjects = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private CordTokenVerifier(CordTokenVerifierBuilder builder) {
+        Map<String, String> projects = new HashMap<>(builder.projects);
+        Function<String, String> lookup = builder.secretLookup;
+        this.secrets = projectId -> {
+            String secret = projects.get(projectId);
+            return secret != null || lookup == null ? secret : lookup.apply(projectId);
+        };
+        this.clockSkewSeconds = builder.clockSkew.getSeconds();
+        this.unknownProjectTtlSeconds = builder.unknownProjectTtl.getSeconds();
+    }
+
+    /**
+     * Checks a token's signature and expiry and decodes its claims.
+     *
+     * @param token A client or server auth token
+     * @return The claims of the token
+     * @throws CordException If the token is malformed, has no numeric
+     *                       expiry, belongs to an unknown project, has a
+     *                       bad signature, has expired or is not valid yet
+     **/
+    public VerifiedCordToken verify(String token) throws CordException {
+        return verify(token, Instant.now());
+    }
+
+    VerifiedCordToken verify(String token, Instant now) throws CordException {
+        int payloadStart = token.indexOf('.') + 1;
+        int signatureStart = payloadStart > 0 ? token.indexOf('.', payloadStart) + 1 : 0;
+        if (signatureStart <= 0) {
+            throw new CordException("Malformed Cord token");
+        }
+        if (!TokenSigner.hasStandardHeader(token)) {
+            checkHeader(token.substring(0, payloadStart - 1));
+        }
+
+        VerifiedCordToken claims;
+        try {
+            claims = parseClaims(Base64.getUrlDecoder().decode(token.substring(payloadStart, signatureStart - 1)));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new CordException("Malformed Cord token", e);
+        }
+        if (claims.getProjectId() == null) {
+            throw new CordException("Cord token has no project_id");
+        }
+        // The SDK always sets exp, so a token without one cannot be checked
+        // for expiry and is not ours
+        if (claims.expiresAt == null) {
+            throw new CordException("Cord token has no numeric exp");
+        }
+
+        long nowSeconds = now.getEpochSecond();
+        TokenSigner signer = signer(claims.getProjectId(), nowSeconds);
+        if (signer == null) {
+            throw new CordException("Unknown Cord project " + claims.getProjectId());
+        }
+        if (!signer.hasValidSignature(token, signatureStart)) {
+            throw new CordException("Invalid Cord token signature");
+        }
+
+        if (nowSeconds - clockSkewSeconds >= claims.expiresAt) {
+            throw new CordException("Cord token has expired");
+        }
+        if (claims.issuedAt != null && nowSeconds + clockSkewSeconds < claims.issuedAt) {
+            throw new CordException("Cord token is not valid yet");
+        }
+        return claims;
+    }
+
+    /**
+     * Returns the signer of a project, or null if the project is unknown.
+     **/
+    private TokenSigner signer(String projectId, long nowSeconds) {
+        TokenSigner signer = signers.get(projectId);
+        if (signer != null) {
+            return signer;
+        }
+        Long unknownUntil = unknownProjects.get(projectId);
+        if (unknownUntil != null && nowSeconds < unknownUntil) {
+            return null;
+        }
+        signer = signers.computeIfAbsent(projectId, id -> {
+            String secret = secrets.apply(id);
+            return secret != null ? new TokenSigner(Cord.signingKey(secret)) : null;
+        });
+        if (signer != null) {
+            unknownProjects.remove(projectId);
+        } else if (unknownProjectTtlSeconds > 0) {
+            rememberUnknown(projectId, nowSeconds);
+        }
+        return signer;
+    }
+
+    private void rememberUnknown(String projectId, long nowSeconds) {
+        unknownProjects.put(projectId, nowSeconds + unknownProjectTtlSeconds);
+        if (unknownProjects.size() > MAX_UNKNOWN_PROJECTS && evicting.compareAndSet(false, true)) {
+            try {
+                unknownProjects.values().removeIf(unknownUntil -> unknownUntil <= nowSeconds);
+                // ConcurrentHashMap iterates in hash order, so this drops
+                // projects more or less at random
+                Iterator<Long> iterator = unknownProjects.values().iterator();
+                while (unknownProjects.size() > MAX_UNKNOWN_PROJECTS && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * Forgets the prepared key of a project, or that it was unknown, so
+     * that the next token for it looks its secret up again. Use this after
+     * rotating or adding a secret.
+     **/
+    public void forgetProject(String projectId) {
+        signers.remove(projectId);
+        unknownProjects.remove(projectId);
+    }
+
+    private static void checkHeader(String encodedHeader) throws CordException {
+        JsonNode header;
+        try {
+            header = Cord.mapper().readTree(Base64.getUrlDecoder().decode(encodedHeader));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new CordException("Malformed Cord token", e);
+        }
+        if (header == null || !"HS512".equals(header.path("alg").asText())) {
+            throw new CordException("Cord tokens must be signed with HS512");
+        }
+    }
+
+    private static VerifiedCordToken parseClaims(byte[] json) throws IOException {
+        VerifiedCordToken claims = new VerifiedCordToken();
+        try (JsonParser parser = Cord.mapper().createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Token claims are not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "project_id":
+                        claims.projectId = parser.getValueAsString();
+                        break;
+                    case "user_id":
+                        claims.userId = parser.getValueAsString();
+                        break;
+                    case "group_id":
+                        claims.groupId = parser.getValueAsString();
+                        break;
+                    case "user_details":
+                        claims.userDetails = parser.readValueAsTree();
+                        break;
+                    case "group_details":
+                        claims.groupDetails = parser.readValueAsTree();
+                        break;
+                    case "iat":
+                        claims.issuedAt = value.isNumeric() ? parser.getLongValue() : null;
+                        break;
+                    case "exp":
+                        claims.expiresAt = value.isNumeric() ? parser.getLongValue() : null;
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * The claims of a verified token.
+     **/
+    public static class VerifiedCordToken {
+        private String projectId;
+        private String userId;
+        private String groupId;
+        private JsonNode userDetails;
+        private JsonNode groupDetails;
+        private Long issuedAt;
+        private Long expiresAt;
+
+        private VerifiedCordToken() {
+        }
+
+        public String getProjectId() {
+            return projectId;
+        }
+
+        /**
+         * @return The user the token was issued for, or null for a server
+         *         auth token
+         **/
+        public String getUserId() {
+            return userId;
+        }
+
+        public String getGroupId() {
+            return groupId;
+        }
+
+        /**
+         * @return The user details embedded in the token, as JSON, or null
+         *         if there are none
+         **/
+        public JsonNode getUserDetails() {
+            return userDetails;
+        }
+
+        /**
+         * @return The group details embedded in the token, as JSON, or null
+         *         if there are none
+         **/
+        public JsonNode getGroupDetails() {
+            return groupDetails;
+        }
+
+        public Instant getIssuedAt() {
+            return issuedAt != null ? Instant.ofEpochSecond(issuedAt) : null;
+        }
+
+        public Instant getExpiresAt() {
+            return Instant.ofEpochSecond(expiresAt);
+        }
+
+        /**
+         * @return Whether this is a client auth token, as opposed to a
+         *         server auth token
+         **/
+        public boolean isClientToken() {
+            return userId != null;
+        }
+    }
+
+    public static class CordTokenVerifierBuilder {
+        private final Map<String, String> projects = new HashMap<>();
+        private Function<String, String> secretLookup;
+        private Duration clockSkew = Duration.ofSeconds(30);
+        private Duration unknownProjectTtl = Duration.ofMinutes(1);
+
+        /**
+         * Project adds a project whose tokens the verifier accepts.
+         *
+         * @param projectId The project id, found in console.cord.com
+         * @param secret    The secret corresponding to the project id
+         * */
+        public CordTokenVerifierBuilder project(String projectId, String secret) {
+            projects.put(projectId, secret);
+            return this;
+        }
+
+        /**
+         * SecretLookup finds the secret of a project which was not added
+         * with project(), or returns null if the project is unknown. It is
+         * called at most once per known project, unless the project is
+         * forgotten, and at most once per unknownProjectTtl for each
+         * unknown one. By default only added projects are accepted.
+         * */
+        public CordTokenVerifierBuilder secretLookup(Function<String, String> secretLookup) {
+            this.secretLookup = secretLookup;
+            return this;
+        }
+
+        /**
+         * ClockSkew is how far the clocks of the signer and the verifier
+         * may disagree. Tokens are accepted until this long after they
+         * expire, and from this long before they were issued. Defaults to
+         * 30 seconds.
+         * */
+        public CordTokenVerifierBuilder clockSkew(Duration clockSkew) {
+            if (clockSkew.isNegative()) {
+                throw new IllegalArgumentException("clockSkew must not be negative");
+            }
+            this.clockSkew = clockSkew;
+            return this;
+        }
+
+        /**
+         * UnknownProjectTtl is how long a project the secret lookup did not
+         * know is rejected without calling the lookup again. Zero calls
+         * the lookup for every such token. Defaults to one minute.
+         * */
+        public CordTokenVerifierBuilder unknownProjectTtl(Duration unknownProjectTtl) {
+            if (unknownProjectTtl.isNegative()) {
+                throw new IllegalArgumentException("unknownProjectTtl must not be negative");
+            }
+            this.unknownProjectTtl = unknownProjectTtl;
+            return this;
+        }
+
+        public CordTokenVerifier build() {
+            return new CordTokenVerifier(this);
+        }
+    }
+}
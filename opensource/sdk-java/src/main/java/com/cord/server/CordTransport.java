@@ -0,0 +1,142 @@
+package com.cord.server;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * How a CordClient reaches the Cord REST API: the base URL, the
+ * HttpClient the requests go through and the timeouts that apply to them.
+ *
+ * A transport owns its HttpClient, and with it a connection pool. It can
+ * be shared between any number of clients.
+ **/
+public class CordTransport {
+    static final String DEFAULT_BASE_URL = "https://api.cord.com";
+
+    private final String baseUrl;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    private CordTransport(CordTransportBuilder builder) {
+        String baseUrl = builder.baseUrl;
+        while (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        this.baseUrl = baseUrl;
+        this.requestTimeout = builder.requestTimeout;
+        if (builder.httpClient != null) {
+            this.httpClient = builder.httpClient;
+        } else {
+            HttpClient.Builder httpClientBuilder = HttpClient.newBuilder()
+                    .version(builder.httpVersion)
+                    .connectTimeout(builder.connectTimeout);
+            if (builder.executor != null) {
+                httpClientBuilder.executor(builder.executor);
+            }
+            this.httpClient = httpClientBuilder.build();
+        }
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return The timeout applied to each request, or null if requests
+     *         are not timed out
+     **/
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Starts a request to the given API path, such as "/v1/batch", with
+     * the request timeout applied.
+     **/
+    HttpRequest.Builder newRequest(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path));
+        if (requestTimeout != null) {
+            request.timeout(requestTimeout);
+        }
+        return request;
+    }
+
+    public static class CordTransportBuilder {
+        private String baseUrl = DEFAULT_BASE_URL;
+        private HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+        private Executor executor;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration requestTimeout;
+        private HttpClient httpClient;
+
+        /**
+         * BaseUrl is where the Cord REST API is found. Defaults to
+         * https://api.cord.com, and is mainly useful for pointing the SDK
+         * at a local stand-in.
+         * */
+        public CordTransportBuilder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * HttpVersion is the HTTP version to prefer. Defaults to HTTP/2,
+         * which multiplexes concurrent requests over one connection.
+         * */
+        public CordTransportBuilder httpVersion(HttpClient.Version httpVersion) {
+            this.httpVersion = httpVersion;
+            return this;
+        }
+
+        /**
+         * Executor runs the HttpClient's asynchronous tasks, including the
+         * completion of the futures returned by the SDK. Any executor
+         * works, including one which starts a virtual thread per task.
+         * Defaults to the HttpClient's own thread pool.
+         * */
+        public CordTransportBuilder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * ConnectTimeout limits how long opening a connection may take.
+         * Defaults to ten seconds.
+         * */
+        public CordTransportBuilder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * RequestTimeout limits how long each request may take, from being
+         * sent until the response headers arrive. By default requests are
+         * not timed out.
+         * */
+        public CordTransportBuilder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * HttpClient replaces the HttpClient the transport would otherwise
+         * build. When it is set, the HTTP version, executor and connect
+         * timeout are taken from the supplied client.
+         * */
+        public CordTransportBuilder httpClient(HttpClient httpClient) {
+            this.httpClient = httpClient;
+            return this;
+        }
+
+        public CordTransport build() {
+            return new CordTransport(this);
+        }
+    }
+}
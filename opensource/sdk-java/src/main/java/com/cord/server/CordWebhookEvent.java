@@ -0,0 +1,144 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An event Cord delivered to a webhook, as decoded by a
+ * CordWebhookReceiver.
+ *
+ * The envelope fields are decoded into getters. The body of the event
+ * depends on its type and is kept as a JSON tree; see Cord's webhook
+ * documentation for the fields of each type. Events of the types the
+ * SDK knows are decoded into subclasses with getters for their main
+ * fields: ThreadMessageAddedEvent and NotificationCreatedEvent.
+ **/
+public class CordWebhookEvent {
+    /**
+     * A message was added to a thread.
+     **/
+    public static final String THREAD_MESSAGE_ADDED = "thread-message-added";
+    /**
+     * A user was sent a notification.
+     **/
+    public static final String NOTIFICATION_CREATED = "notification-created";
+    /**
+     * Sent when a webhook URL is set up, to check that it accepts events.
+     **/
+    public static final String URL_VERIFICATION = "url-verification";
+
+    private final String type;
+    private final Instant timestamp;
+    private final String projectId;
+    private final String applicationId;
+    private final JsonNode event;
+    private final String threadId;
+
+    CordWebhookEvent(
+            String type,
+            Instant timestamp,
+            String projectId,
+            String applicationId,
+            JsonNode event) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.projectId = projectId;
+        this.applicationId = applicationId;
+        this.event = event;
+        this.threadId = findThreadId(event);
+    }
+
+    /**
+     * @return The type of the event, such as "thread-message-added"
+     **/
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return When Cord sent the event
+     **/
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * @return The ID of the project under its older name, application,
+     *         or null if the payload did not include it
+     **/
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * @return The body of the event, or null if it had none
+     **/
+    public JsonNode getEvent() {
+        return event;
+    }
+
+    /**
+     * @return The ID of the thread the event is about, or null if it is
+     *         not about a thread. Events about the same thread are handled
+     *         in the order they were received.
+     **/
+    public String getThreadId() {
+        return threadId;
+    }
+
+    private static String findThreadId(JsonNode event) {
+        return findText(event, new String[] {"thread", "id"}, new String[] {"threadID"},
+                new String[] {"message", "threadID"}, new String[] {"notification", "threadID"});
+    }
+
+    /**
+     * @return The text at the first of the paths into the event which
+     *         leads to some, or null if none does
+     **/
+    static String findText(JsonNode event, String[]... paths) {
+        if (event == null) {
+            return null;
+        }
+        for (String[] path : paths) {
+            JsonNode node = event;
+            for (String field : path) {
+                node = node.path(field);
+            }
+            if (node.isTextual()) {
+                return node.textValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The IDs in an array, which may hold the IDs themselves or
+     *         objects with an id field, or an empty list if there is none
+     **/
+    static List<String> findIds(JsonNode array) {
+        if (array == null || !array.isArray()) {
+            return Collections.emptyList();
+        }
+        List<String> ids = new ArrayList<>(array.size());
+        for (JsonNode element : array) {
+            JsonNode id = element.isObject() ? element.path("id") : element;
+            if (id.isTextual()) {
+                ids.add(id.textValue());
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return type + (threadId != null ? " on thread " + threadId : "");
+    }
+}
@@ -0,0 +1,522 @@
+package com.cord.server;
+
+import com.cord.server.CordMetrics.LogLevel;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Receives the events Cord delivers to a webhook.
+ *
+ * Each request is checked against its X-Cord-Signature header, which is
+ * the base64 HMAC-SHA256 of the X-Cord-Timestamp header, a colon and the
+ * body, keyed with the project secret. The timestamp must be within the
+ * tolerance of the current time, so a captured request cannot be
+ * replayed later. Signatures are computed with a per-thread Mac, so
+ * checking one allocates next to nothing.
+ *
+ * The payload is decoded with a streaming parser and handed to the
+ * handlers registered for its type on the receiver's executor. Events
+ * about the same thread are handled one at a time, in the order they
+ * were received, while events about different threads are handled in
+ * parallel. A thread's events are queued in the receiver and handled by
+ * one executor task, which runs until the queue is empty, so an event is
+ * only ever handed to the executor when its thread has none in flight.
+ *
+ * {@link #httpHandler()} adapts the receiver to the JDK's built-in
+ * HttpServer.
+ **/
+public class CordWebhookReceiver {
+    public static final String SIGNATURE_HEADER = "X-Cord-Signature";
+    public static final String TIMESTAMP_HEADER = "X-Cord-Timestamp";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_LENGTH = 32;
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final SecretKeySpec key;
+    private final long toleranceMillis;
+    private final int maxBodySize;
+    private final Executor executor;
+    private final Map<String, List<Consumer<CordWebhookEvent>>> handlers;
+    private final List<Consumer<CordWebhookEvent>> anyTypeHandlers;
+    private final CordMetrics metrics;
+    /**
+     * The events waiting for each thread with events in flight. Queues
+     * are only changed inside compute(), which serializes the changes to
+     * each one.
+     **/
+    private final ConcurrentHashMap<String, ArrayDeque<Dispatch>> threadQueues = new ConcurrentHashMap<>();
+
+    private CordWebhookReceiver(CordWebhookReceiverBuilder builder) {
+        this.key = new SecretKeySpec(builder.secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.toleranceMillis = builder.tolerance.toMillis();
+        this.maxBodySize = builder.maxBodySize;
+        this.executor = builder.executor;
+        Map<String, List<Consumer<CordWebhookEvent>>> handlers = new HashMap<>();
+        builder.handlers.forEach((type, list) -> handlers.put(type, Collections.unmodifiableList(new ArrayList<>(list))));
+        this.handlers = handlers;
+        this.anyTypeHandlers = Collections.unmodifiableList(new ArrayList<>(builder.anyTypeHandlers));
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Checks a delivery's signature and timestamp, decodes it, and hands
+     * it to the handlers for its type.
+     *
+     * @param signature The value of the X-Cord-Signature header
+     * @param timestamp The value of the X-Cord-Timestamp header
+     * @param body      The request body
+     * @return A future which completes once the handlers have run. A
+     *         handler which throws is reported to the metrics as an
+     *         ERROR log, and does not fail the future.
+     * @throws CordException if the signature or timestamp is wrong, or the
+     *                       body is not a webhook payload
+     * @throws RejectedExecutionException if the executor rejects the
+     *                                    work, in which case the event
+     *                                    is not handled
+     **/
+    public CompletableFuture<Void> receive(String signature, String timestamp, byte[] body) throws CordException {
+        return dispatch(verify(signature, timestamp, body));
+    }
+
+    /**
+     * Checks a delivery's signature and timestamp and decodes it, without
+     * handling it.
+     *
+     * @throws CordException if the signature or timestamp is wrong, or the
+     *                       body is not a webhook payload
+     **/
+    public CordWebhookEvent verify(String signature, String timestamp, byte[] body) throws CordException {
+        return verify(signature, timestamp, body, System.currentTimeMillis());
+    }
+
+    CordWebhookEvent verify(String signature, String timestamp, byte[] body, long nowMillis) throws CordException {
+        if (!isAuthentic(signature, timestamp, body, nowMillis)) {
+            throw new CordException("Webhook signature or timestamp is invalid");
+        }
+        return decode(body);
+    }
+
+    /**
+     * Runs the handlers for an event on the executor, after any earlier
+     * events for the same thread.
+     *
+     * @throws RejectedExecutionException if the executor rejects the
+     *                                    work, in which case the event
+     *                                    is not handled
+     **/
+    CompletableFuture<Void> dispatch(CordWebhookEvent event) {
+        Dispatch dispatch = new Dispatch(event);
+        String threadId = event.getThreadId();
+        if (threadId == null) {
+            executor.execute(dispatch::run);
+            return dispatch.done;
+        }
+        boolean[] idle = new boolean[1];
+        ArrayDeque<Dispatch> queue = threadQueues.compute(threadId, (id, waiting) -> {
+            if (waiting == null) {
+                idle[0] = true;
+                waiting = new ArrayDeque<>();
+            }
+            waiting.add(dispatch);
+            return waiting;
+        });
+        if (!idle[0]) {
+            // The task already draining the thread's queue will get to it
+            return dispatch.done;
+        }
+        try {
+            executor.execute(() -> drain(threadId, queue));
+        } catch (RejectedExecutionException e) {
+            // Events queued behind this one in the meantime were accepted,
+            // and have nothing to run them now
+            threadQueues.remove(threadId, queue);
+            for (Dispatch dropped : queue) {
+                if (dropped != dispatch) {
+                    metrics.onLog(LogLevel.ERROR, "Dropped Cord webhook event " + dropped.event
+                            + " because the executor rejected its thread's events", e);
+                    dropped.done.completeExceptionally(e);
+                }
+            }
+            throw e;
+        }
+        return dispatch.done;
+    }
+
+    /**
+     * Handles a thread's events until its queue is empty, and then
+     * forgets the thread.
+     **/
+    private void drain(String threadId, ArrayDeque<Dispatch> queue) {
+        while (true) {
+            Dispatch[] next = new Dispatch[1];
+            threadQueues.compute(threadId, (id, waiting) -> {
+                if (waiting != queue) {
+                    return waiting;
+                }
+                next[0] = waiting.poll();
+                return next[0] != null ? waiting : null;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            next[0].run();
+        }
+    }
+
+    private void handle(CordWebhookEvent event) {
+        List<Consumer<CordWebhookEvent>> forType = handlers.getOrDefault(event.getType(), Collections.emptyList());
+        for (List<Consumer<CordWebhookEvent>> list : List.of(forType, anyTypeHandlers)) {
+            for (Consumer<CordWebhookEvent> handler : list) {
+                try {
+                    handler.accept(event);
+                } catch (RuntimeException e) {
+                    metrics.onLog(LogLevel.ERROR, "Cord webhook handler failed on " + event, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of threads with events waiting or being handled
+     **/
+    int getActiveThreadCount() {
+        return threadQueues.size();
+    }
+
+    /**
+     * Compares the signature in constant time, so a failed check reveals
+     * nothing about the expected signature.
+     **/
+    private boolean isAuthentic(String signature, String timestamp, byte[] body, long nowMillis) {
+        if (signature == null || timestamp == null) {
+            return false;
+        }
+        long sentMillis;
+        try {
+            sentMillis = Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (Math.abs(nowMillis - sentMillis) > toleranceMillis) {
+            return false;
+        }
+        byte[] provided;
+        try {
+            provided = Base64.getDecoder().decode(signature.trim());
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        Scratch scratch = CordWebhookReceiver.scratch.get();
+        Mac mac = scratch.mac(key);
+        for (int i = 0; i < timestamp.length(); i++) {
+            mac.update((byte) timestamp.charAt(i));
+        }
+        mac.update((byte) ':');
+        mac.update(body);
+        try {
+            mac.doFinal(scratch.signature, 0);
+        } catch (GeneralSecurityException e) {
+            // The signature buffer is always large enough
+            throw new IllegalStateException(e);
+        }
+        return MessageDigest.isEqual(provided, scratch.signature);
+    }
+
+    private static CordWebhookEvent decode(byte[] body) throws CordException {
+        String type = null;
+        Instant timestamp = null;
+        String projectId = null;
+        String applicationId = null;
+        JsonNode event = null;
+        try (JsonParser parser = Cord.mapper().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CordException("Webhook payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "type":
+                        type = parser.getValueAsString();
+                        break;
+                    case "timestamp":
+                        timestamp = Instant.ofEpochMilli(value == JsonToken.VALUE_STRING
+                                ? Long.parseLong(parser.getText())
+                                : parser.getValueAsLong());
+                        break;
+                    case "projectID":
+                        projectId = parser.getValueAsString();
+                        break;
+                    case "applicationID":
+                        applicationId = parser.getValueAsString();
+                        break;
+                    case "event":
+                        event = parser.readValueAsTree();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new CordException("Could not decode webhook payload", e);
+        }
+        if (type == null) {
+            throw new CordException("Webhook payload has no type");
+        }
+        switch (type) {
+            case CordWebhookEvent.THREAD_MESSAGE_ADDED:
+                return new ThreadMessageAddedEvent(timestamp, projectId, applicationId, event);
+            case CordWebhookEvent.NOTIFICATION_CREATED:
+                return new NotificationCreatedEvent(timestamp, projectId, applicationId, event);
+            default:
+                return new CordWebhookEvent(type, timestamp, projectId, applicationId, event);
+        }
+    }
+
+    /**
+     * Adapts the receiver to the JDK's HttpServer. Deliveries are answered
+     * with 200 as soon as they are verified and queued, without waiting for
+     * the handlers; 413 if the body is larger than maxBodySize, which is
+     * checked against the Content-Length before any of it is read; 401 if
+     * the signature or timestamp is wrong; 400 if the payload cannot be
+     * decoded; and 503 if the executor rejects the work, so that Cord
+     * delivers the event again later. An event queued behind an earlier
+     * one for its thread is not handed to the executor itself, so only
+     * the first event of a thread can be rejected.
+     **/
+    public HttpHandler httpHandler() {
+        return this::serve;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (declaredLength(exchange) > maxBodySize) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                // One byte more than allowed tells a body which is too
+                // large from one which just fits
+                body = in.readNBytes(maxBodySize + 1);
+            }
+            if (body.length > maxBodySize) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            String signature = exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER);
+            String timestamp = exchange.getRequestHeaders().getFirst(TIMESTAMP_HEADER);
+            int status;
+            if (!isAuthentic(signature, timestamp, body, System.currentTimeMillis())) {
+                status = 401;
+            } else {
+                try {
+                    dispatch(decode(body));
+                    status = 200;
+                } catch (CordException e) {
+                    status = 400;
+                } catch (RejectedExecutionException e) {
+                    status = 503;
+                }
+            }
+            exchange.sendResponseHeaders(status, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return The length of the request body given by its Content-Length
+     *         header, or -1 if it has none, such as when it is chunked
+     **/
+    private static long declaredLength(HttpExchange exchange) {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            // The server rejects these before they reach the handler
+            return -1;
+        }
+    }
+
+    /**
+     * An event waiting to be handled, and the future its caller holds.
+     **/
+    private class Dispatch {
+        private final CordWebhookEvent event;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Dispatch(CordWebhookEvent event) {
+            this.event = event;
+        }
+
+        void run() {
+            try {
+                handle(event);
+            } finally {
+                done.complete(null);
+            }
+        }
+    }
+
+    /**
+     * The Mac and buffer a thread reuses from one delivery to the next.
+     **/
+    private static class Scratch {
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private Mac mac;
+        private SecretKeySpec macKey;
+
+        Mac mac(SecretKeySpec key) {
+            if (key != macKey) {
+                try {
+                    if (mac == null) {
+                        mac = Mac.getInstance(ALGORITHM);
+                    }
+                    mac.init(key);
+                } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                    // Every JRE supports HmacSHA256, and it takes keys of
+                    // any length
+                    throw new IllegalStateException(e);
+                }
+                macKey = key;
+            }
+            return mac;
+        }
+    }
+
+    public static class CordWebhookReceiverBuilder {
+        private final String secret;
+        private Duration tolerance = Duration.ofMinutes(5);
+        private int maxBodySize = 1024 * 1024;
+        private Executor executor = ForkJoinPool.commonPool();
+        private final Map<String, List<Consumer<CordWebhookEvent>>> handlers = new HashMap<>();
+        private final List<Consumer<CordWebhookEvent>> anyTypeHandlers = new ArrayList<>();
+        private CordMetrics metrics = CordMetrics.NOOP;
+
+        /**
+         * @param secret The secret of the project whose webhook this is
+         **/
+        public CordWebhookReceiverBuilder(String secret) {
+            this.secret = secret;
+        }
+
+        /**
+         * Adds a handler for events of one type. A type may have several
+         * handlers, which run in the order they were added.
+         * */
+        public CordWebhookReceiverBuilder on(String type, Consumer<CordWebhookEvent> handler) {
+            handlers.computeIfAbsent(type, ignored -> new ArrayList<>()).add(handler);
+            return this;
+        }
+
+        /**
+         * Adds a handler for thread-message-added events.
+         * */
+        public CordWebhookReceiverBuilder onThreadMessageAdded(Consumer<ThreadMessageAddedEvent> handler) {
+            return on(CordWebhookEvent.THREAD_MESSAGE_ADDED, event -> handler.accept((ThreadMessageAddedEvent) event));
+        }
+
+        /**
+         * Adds a handler for notification-created events.
+         * */
+        public CordWebhookReceiverBuilder onNotificationCreated(Consumer<NotificationCreatedEvent> handler) {
+            return on(CordWebhookEvent.NOTIFICATION_CREATED, event -> handler.accept((NotificationCreatedEvent) event));
+        }
+
+        /**
+         * Adds a handler for events of every type, which runs after the
+         * handlers for the event's own type.
+         * */
+        public CordWebhookReceiverBuilder onAnyEvent(Consumer<CordWebhookEvent> handler) {
+            anyTypeHandlers.add(handler);
+            return this;
+        }
+
+        /**
+         * Tolerance is how far a delivery's timestamp may be from the
+         * current time. Defaults to five minutes.
+         * */
+        public CordWebhookReceiverBuilder tolerance(Duration tolerance) {
+            if (tolerance.isNegative()) {
+                throw new IllegalArgumentException("tolerance must not be negative");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * MaxBodySize is the largest request body, in bytes, which
+         * httpHandler() reads; larger deliveries are answered with 413.
+         * Defaults to 1 MiB.
+         * */
+        public CordWebhookReceiverBuilder maxBodySize(int maxBodySize) {
+            if (maxBodySize < 1 || maxBodySize == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("maxBodySize must be positive and below Integer.MAX_VALUE");
+            }
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        /**
+         * Executor runs the handlers. Defaults to the common ForkJoinPool;
+         * use a dedicated executor if handlers block.
+         * */
+        public CordWebhookReceiverBuilder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Metrics receives an ERROR log whenever a handler throws.
+         * Defaults to CordMetrics.NOOP.
+         * */
+        public CordWebhookReceiverBuilder metrics(CordMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public CordWebhookReceiver build() {
+            return new CordWebhookReceiver(this);
+        }
+    }
+}
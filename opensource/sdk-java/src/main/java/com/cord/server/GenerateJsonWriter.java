@@ -0,0 +1,20 @@
+package com.cord.server;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Asks the processor in the processor project to generate a
+ * {@code <Name>JsonWriter} class for the annotated model class, which
+ * writes it straight to a JsonGenerator without reflection.
+ *
+ * The generated writer produces the same JSON as Cord.mapper(): properties
+ * come from the public getters, named by their @JsonProperty annotations,
+ * in the order their fields are declared, and null values are left out.
+ **/
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@interface GenerateJsonWriter {
+}
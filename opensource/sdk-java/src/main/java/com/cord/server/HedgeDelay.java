@@ -0,0 +1,90 @@
+package com.cord.server;
+
+import com.cord.server.CordMetrics.Endpoint;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Works out how long a hedged request is given before a duplicate of it
+ * is sent: a percentile of the latencies recently seen on its endpoint.
+ *
+ * Latencies are kept in two LatencyHistograms per endpoint, one filling
+ * up and one for the previous minute, so the delay follows the API as it
+ * speeds up or slows down. Until an endpoint has seen enough responses
+ * for the percentile to mean anything, its requests are not hedged. Once
+ * it has, the percentile is worked out at most once a second, since doing
+ * so reads every bucket of the histogram.
+ **/
+class HedgeDelay {
+    private static final long WINDOW_NANOS = 60_000_000_000L;
+    private static final long REFRESH_NANOS = 1_000_000_000L;
+    private static final long MIN_SAMPLES = 100;
+
+    private final double percentile;
+    private final Map<Endpoint, Window> windows = new EnumMap<>(Endpoint.class);
+
+    HedgeDelay(double percentile) {
+        this.percentile = percentile;
+        // Filled up front and never changed, so it can be read without
+        // synchronization
+        long now = System.nanoTime();
+        for (Endpoint endpoint : Endpoint.values()) {
+            windows.put(endpoint, new Window(now));
+        }
+    }
+
+    void record(Endpoint endpoint, long nanos, long now) {
+        Window window = windows.get(endpoint);
+        window.rotate(now);
+        window.current.record(nanos);
+    }
+
+    /**
+     * @return How long to wait before sending a duplicate, in nanoseconds,
+     *         or -1 if requests to the endpoint should not be hedged yet
+     **/
+    long getDelayNanos(Endpoint endpoint, long now) {
+        Window window = windows.get(endpoint);
+        if (now - window.computedAt < REFRESH_NANOS) {
+            return window.delay;
+        }
+        window.rotate(now);
+        LatencyHistogram source = window.previous.getCount() >= MIN_SAMPLES ? window.previous : window.current;
+        if (source.getCount() < MIN_SAMPLES) {
+            // Counting is cheap, so look again on the next request rather
+            // than waiting out the refresh
+            return -1;
+        }
+        long delay = source.getPercentile(percentile);
+        window.delay = delay;
+        window.computedAt = now;
+        return delay;
+    }
+
+    private static class Window {
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous = new LatencyHistogram();
+        private volatile long startedAt;
+        private volatile long delay = -1;
+        private volatile long computedAt;
+
+        private Window(long now) {
+            this.startedAt = now;
+            this.computedAt = now - REFRESH_NANOS;
+        }
+
+        private void rotate(long now) {
+            if (now - startedAt < WINDOW_NANOS) {
+                return;
+            }
+            synchronized (this) {
+                if (now - startedAt >= WINDOW_NANOS) {
+                    previous = current;
+                    current = new LatencyHistogram();
+                    startedAt = now;
+                }
+            }
+        }
+    }
+}
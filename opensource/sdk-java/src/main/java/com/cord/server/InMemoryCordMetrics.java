@@ -0,0 +1,170 @@
+package com.cord.server;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A CordMetrics which keeps everything in memory, for you to read and
+ * export to your monitoring system of choice.
+ *
+ * Latencies are kept in LatencyHistograms, and everything else in
+ * counters, so recording never takes a lock. Log messages are not kept;
+ * only the number logged at each level is counted. Subclass and override
+ * onLog if you want to forward them to a logger.
+ **/
+public class InMemoryCordMetrics implements CordMetrics {
+    private final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<>(Endpoint.class);
+    private final Map<TokenType, LatencyHistogram> tokens = new EnumMap<>(TokenType.class);
+    private final Map<Queue, AtomicInteger> queues = new EnumMap<>(Queue.class);
+    private final Map<LogLevel, LongAdder> logs = new EnumMap<>(LogLevel.class);
+
+    public InMemoryCordMetrics() {
+        // Every map is filled up front and never changes afterwards, so
+        // it can be read from any thread without synchronization.
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoints.put(endpoint, new EndpointMetrics());
+        }
+        for (TokenType type : TokenType.values()) {
+            tokens.put(type, new LatencyHistogram());
+        }
+        for (Queue queue : Queue.values()) {
+            queues.put(queue, new AtomicInteger());
+        }
+        for (LogLevel level : LogLevel.values()) {
+            logs.put(level, new LongAdder());
+        }
+    }
+
+    @Override
+    public void onResponse(
+            Endpoint endpoint,
+            int statusCode,
+            long durationNanos,
+            long requestBytes,
+            long responseBytes) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        metrics.latency.record(durationNanos);
+        if (statusCode >= 100 && statusCode < 600) {
+            metrics.statusCodes.incrementAndGet(statusCode - 100);
+        }
+        if (requestBytes > 0) {
+            metrics.requestBytes.add(requestBytes);
+        }
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    @Override
+    public void onRequestFailed(Endpoint endpoint, long durationNanos, Throwable error) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        metrics.latency.record(durationNanos);
+        metrics.failures.increment();
+    }
+
+    @Override
+    public void onRetry(Endpoint endpoint, int attempt, long delayMillis) {
+        endpoints.get(endpoint).retries.increment();
+    }
+
+    @Override
+    public void onHedge(Endpoint endpoint, long delayNanos) {
+        endpoints.get(endpoint).hedges.increment();
+    }
+
+    @Override
+    public void onTokenMinted(TokenType type, long durationNanos) {
+        tokens.get(type).record(durationNanos);
+    }
+
+    @Override
+    public void onQueueDepth(Queue queue, int depth) {
+        queues.get(queue).set(depth);
+    }
+
+    @Override
+    public void onLog(LogLevel level, String message, Throwable error) {
+        logs.get(level).increment();
+    }
+
+    /**
+     * @return The latencies of requests to the endpoint, including those
+     *         which failed without a response
+     **/
+    public LatencyHistogram getLatency(Endpoint endpoint) {
+        return endpoints.get(endpoint).latency;
+    }
+
+    /**
+     * @return The number of responses from the endpoint with the given
+     *         HTTP status
+     **/
+    public long getStatusCount(Endpoint endpoint, int statusCode) {
+        if (statusCode < 100 || statusCode >= 600) {
+            return 0;
+        }
+        return endpoints.get(endpoint).statusCodes.get(statusCode - 100);
+    }
+
+    /**
+     * @return The number of requests to the endpoint which failed without
+     *         a response
+     **/
+    public long getFailureCount(Endpoint endpoint) {
+        return endpoints.get(endpoint).failures.sum();
+    }
+
+    public long getRetryCount(Endpoint endpoint) {
+        return endpoints.get(endpoint).retries.sum();
+    }
+
+    public long getHedgeCount(Endpoint endpoint) {
+        return endpoints.get(endpoint).hedges.sum();
+    }
+
+    /**
+     * @return The total size of the request bodies sent to the endpoint
+     **/
+    public long getRequestBytes(Endpoint endpoint) {
+        return endpoints.get(endpoint).requestBytes.sum();
+    }
+
+    /**
+     * @return The total size of the response bodies received from the
+     *         endpoint
+     **/
+    public long getResponseBytes(Endpoint endpoint) {
+        return endpoints.get(endpoint).responseBytes.sum();
+    }
+
+    /**
+     * @return How long it took to sign tokens of the given type
+     **/
+    public LatencyHistogram getTokenMintLatency(TokenType type) {
+        return tokens.get(type);
+    }
+
+    /**
+     * @return The most recently reported depth of the queue
+     **/
+    public int getQueueDepth(Queue queue) {
+        return queues.get(queue).get();
+    }
+
+    public long getLogCount(LogLevel level) {
+        return logs.get(level).sum();
+    }
+
+    private static class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLongArray statusCodes = new AtomicLongArray(500);
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+    }
+}
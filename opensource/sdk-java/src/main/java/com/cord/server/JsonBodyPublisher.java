@@ -0,0 +1,104 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds request bodies by streaming JSON straight from a Jackson
+ * generator into fixed-size chunks, optionally gzipped.
+ *
+ * The body is never held as a String or as one contiguous array: the
+ * chunks are handed to the HttpClient as they are, with the total length
+ * known up front.
+ **/
+final class JsonBodyPublisher {
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Writes a JSON value to a generator.
+     **/
+    interface JsonContent {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+
+    private JsonBodyPublisher() {
+    }
+
+    static HttpRequest.BodyPublisher of(JsonContent content, boolean gzip) {
+        ChunkedOutputStream chunks = new ChunkedOutputStream();
+        try {
+            OutputStream out = gzip ? new GZIPOutputStream(chunks, CHUNK_SIZE) : chunks;
+            try (JsonGenerator generator = Cord.jsonFactory.createGenerator(out)) {
+                content.writeTo(generator);
+            }
+        } catch (IOException e) {
+            // We only ever write to memory, and our user and group objects
+            // should always be serializable
+            throw new UncheckedIOException(e);
+        }
+        return HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofByteArrays(chunks.getChunks()), chunks.getLength());
+    }
+
+    /**
+     * An OutputStream which collects its output in a list of fixed-size
+     * arrays, so growing it never copies what was already written.
+     **/
+    private static class ChunkedOutputStream extends OutputStream {
+        private final List<byte[]> chunks = new ArrayList<>();
+        private byte[] current = new byte[CHUNK_SIZE];
+        private int position;
+        private long length;
+
+        @Override
+        public void write(int b) {
+            if (position == current.length) {
+                nextChunk();
+            }
+            current[position++] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (position == current.length) {
+                    nextChunk();
+                }
+                int n = Math.min(len, current.length - position);
+                System.arraycopy(b, off, current, position, n);
+                position += n;
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+
+        private void nextChunk() {
+            chunks.add(current);
+            current = new byte[CHUNK_SIZE];
+            position = 0;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        List<byte[]> getChunks() {
+            List<byte[]> all = new ArrayList<>(chunks.size() + 1);
+            all.addAll(chunks);
+            if (position > 0) {
+                all.add(Arrays.copyOf(current, position));
+            }
+            return all;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Writes values to a JsonGenerator without going through Cord.mapper()'s
+ * reflection where it can. The model classes use their generated
+ * JsonWriter classes, which in turn come back here for the values they
+ * have no dedicated code for, such as metadata.
+ *
+ * Maps and the scalar values metadata is made of are written directly;
+ * anything else goes through Cord.mapper(), so the output is always the
+ * same as the mapper's. As with the mapper, null map values are left out.
+ **/
+final class JsonWriters {
+    private static final Comparator<Object> BY_KEY = Comparator.comparing(String::valueOf);
+
+    private JsonWriters() {
+    }
+
+    /**
+     * @param sortMaps Whether to write map entries in key order, as
+     *                 SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS does
+     **/
+    static void writeValue(JsonGenerator generator, Object value, boolean sortMaps) throws IOException {
+        if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof Short) {
+            generator.writeNumber((Short) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Map) {
+            writeMap(generator, (Map<?, ?>) value, sortMaps);
+        } else if (value instanceof PlatformUserVariables) {
+            PlatformUserVariablesJsonWriter.write(generator, (PlatformUserVariables) value, sortMaps);
+        } else if (value instanceof PlatformGroupVariables) {
+            PlatformGroupVariablesJsonWriter.write(generator, (PlatformGroupVariables) value, sortMaps);
+        } else if (value instanceof ClientAuthTokenData) {
+            ClientAuthTokenDataJsonWriter.write(generator, (ClientAuthTokenData) value, sortMaps);
+        } else if (sortMaps) {
+            CanonicalWriterHolder.WRITER.writeValue(generator, value);
+        } else {
+            Cord.mapper().writeValue(generator, value);
+        }
+    }
+
+    /**
+     * @return A writer like Cord.mapper()'s which writes map entries in key
+     *         order
+     **/
+    static ObjectWriter canonicalWriter() {
+        return CanonicalWriterHolder.WRITER;
+    }
+
+    private static void writeMap(JsonGenerator generator, Map<?, ?> map, boolean sortMaps) throws IOException {
+        Map<?, ?> entries = map;
+        if (sortMaps && !(map instanceof SortedMap) && map.size() > 1) {
+            Map<Object, Object> sorted = new TreeMap<>(BY_KEY);
+            sorted.putAll(map);
+            entries = sorted;
+        }
+        generator.writeStartObject();
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            if (entry.getValue() != null) {
+                generator.writeFieldName(String.valueOf(entry.getKey()));
+                writeValue(generator, entry.getValue(), sortMaps);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private static class CanonicalWriterHolder {
+        static final ObjectWriter WRITER = Cord.mapper().writer()
+                .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
+}
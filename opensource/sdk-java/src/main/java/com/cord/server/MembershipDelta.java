@@ -0,0 +1,107 @@
+package com.cord.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A change to the members of one group: users to add and users to remove.
+ *
+ * Changes are merged as they are applied, with the later change to a user
+ * winning, so a delta never both adds and removes the same user and
+ * holds each user at most once.
+ **/
+final class MembershipDelta {
+    private final Set<String> added = new LinkedHashSet<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+
+    MembershipDelta add(Collection<String> userIds) {
+        for (String userId : userIds) {
+            removed.remove(userId);
+            added.add(userId);
+        }
+        return this;
+    }
+
+    MembershipDelta remove(Collection<String> userIds) {
+        for (String userId : userIds) {
+            added.remove(userId);
+            removed.add(userId);
+        }
+        return this;
+    }
+
+    /**
+     * Applies a later delta on top of this one.
+     **/
+    MembershipDelta merge(MembershipDelta later) {
+        add(later.added);
+        remove(later.removed);
+        return this;
+    }
+
+    /**
+     * @return Whether the delta adds the user
+     **/
+    boolean isAdded(String userId) {
+        return added.contains(userId);
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    int size() {
+        return added.size() + removed.size();
+    }
+
+    /**
+     * Splits the delta into pieces holding at most maxUsers users between
+     * them. The pieces touch different users, so they may be sent in any
+     * order.
+     **/
+    List<MembershipDelta> split(int maxUsers) {
+        List<MembershipDelta> pieces = new ArrayList<>(Math.max(1, (size() + maxUsers - 1) / maxUsers));
+        MembershipDelta piece = new MembershipDelta();
+        Iterator<String> adds = added.iterator();
+        Iterator<String> removes = removed.iterator();
+        while (adds.hasNext() || removes.hasNext()) {
+            if (adds.hasNext()) {
+                piece.added.add(adds.next());
+            } else {
+                piece.removed.add(removes.next());
+            }
+            if (piece.size() == maxUsers) {
+                pieces.add(piece);
+                piece = new MembershipDelta();
+            }
+        }
+        if (!piece.isEmpty()) {
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    /**
+     * Writes the body of a members request.
+     **/
+    JsonBodyPublisher.JsonContent body() {
+        return generator -> {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("add");
+            for (String userId : added) {
+                generator.writeString(userId);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("remove");
+            for (String userId : removed) {
+                generator.writeString(userId);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A notification-created event: a user was sent a notification.
+ *
+ * The getters read the event's main fields, and return null for any the
+ * payload did not include. The rest are in {@link #getEvent()}.
+ **/
+public class NotificationCreatedEvent extends CordWebhookEvent {
+    NotificationCreatedEvent(Instant timestamp, String projectId, String applicationId, JsonNode event) {
+        super(NOTIFICATION_CREATED, timestamp, projectId, applicationId, event);
+    }
+
+    /**
+     * @return The ID of the user the notification was sent to
+     **/
+    public String getRecipientUserId() {
+        return findText(getEvent(), new String[] {"recipientUserID"},
+                new String[] {"notification", "recipientUserID"});
+    }
+
+    public String getNotificationId() {
+        return findText(getEvent(), new String[] {"notification", "id"});
+    }
+
+    /**
+     * @return What the notification is about, such as "reply" or
+     *         "reaction"
+     **/
+    public String getNotificationType() {
+        return findText(getEvent(), new String[] {"notification", "type"});
+    }
+
+    /**
+     * @return The IDs of the users whose actions caused the notification,
+     *         or an empty list if the payload did not include them
+     **/
+    public List<String> getSenderUserIds() {
+        JsonNode event = getEvent();
+        return findIds(event != null ? event.path("notification").path("senderUserIDs") : null);
+    }
+}
@@ -0,0 +1,84 @@
+package com.cord.server;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Iterates over a list the API returns a page at a time.
+ *
+ * Nothing is fetched until the first call to hasNext() or next(). From
+ * then on, as soon as a page arrives the request for the one after it is
+ * sent, so the next page is on its way while the caller works through
+ * the current one. At most two pages are held at once.
+ **/
+final class PagedIterator<T> implements Iterator<T>, AutoCloseable {
+    private final Function<String, CompletableFuture<ResourceDecoder.Page<T>>> fetch;
+    private CompletableFuture<ResourceDecoder.Page<T>> next;
+    private Iterator<T> current = Collections.emptyIterator();
+    private boolean started;
+
+    /**
+     * @param fetch Fetches the page for a token, or the first page for a
+     *              null token
+     **/
+    PagedIterator(Function<String, CompletableFuture<ResourceDecoder.Page<T>>> fetch) {
+        this.fetch = fetch;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!started) {
+            started = true;
+            next = fetch.apply(null);
+        }
+        while (!current.hasNext()) {
+            if (next == null) {
+                return false;
+            }
+            ResourceDecoder.Page<T> page = await(next);
+            next = page.nextToken != null && !page.items.isEmpty() ? fetch.apply(page.nextToken) : null;
+            current = page.items.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Stops fetching. A page already on its way is read off and dropped
+     * when it lands, so that its connection is released.
+     **/
+    @Override
+    public void close() {
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+        current = Collections.emptyIterator();
+        started = true;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CordException) {
+                throw new UncheckedCordException((CordException) e.getCause());
+            }
+            throw new UncheckedCordException(new CordException(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedCordException(new CordException("Interrupted while waiting for the Cord API", e));
+        }
+    }
+}
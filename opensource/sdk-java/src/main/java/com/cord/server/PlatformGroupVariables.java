@@ -9,6 +9,7 @@ import java.util.List;
  *
  * The only required variable is "name".
  **/
+@GenerateJsonWriter
 public class PlatformGroupVariables {
     private final String name;
     private final String id;
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  *
  * The only required variable is "email".
  **/
+@GenerateJsonWriter
 public class PlatformUserVariables {
     private final String email;
     private final String id;
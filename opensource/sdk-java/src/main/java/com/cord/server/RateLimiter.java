@@ -0,0 +1,55 @@
+package com.cord.server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the requests a client sends to at most a given number per
+ * second, allowing a burst of up to one second's worth after a quiet
+ * spell.
+ *
+ * As with RequestLimiter, acquiring never blocks: each caller reserves
+ * the next free slot and gets a future which completes when that slot
+ * comes round, so requests over the rate wait on a timer rather than on
+ * a thread.
+ **/
+class RateLimiter {
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private long nextFree;
+
+    RateLimiter(double permitsPerSecond) {
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstNanos = (Math.max(1, (long) permitsPerSecond) - 1) * intervalNanos;
+        this.nextFree = System.nanoTime() - burstNanos;
+    }
+
+    /**
+     * Returns a future which completes once the caller may send its
+     * request.
+     **/
+    CompletableFuture<Void> acquire() {
+        long wait = reserve(System.nanoTime());
+        if (wait == 0) {
+            return ACQUIRED;
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Takes the next free slot.
+     *
+     * @return How long the caller must wait for it, in nanoseconds
+     **/
+    synchronized long reserve(long now) {
+        // Unused slots from a quiet spell carry over, up to the burst
+        if (nextFree - (now - burstNanos) < 0) {
+            nextFree = now - burstNanos;
+        }
+        long wait = Math.max(0, nextFree - now);
+        nextFree += intervalNanos;
+        return wait;
+    }
+}
@@ -0,0 +1,154 @@
+package com.cord.server;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bounds the number of requests a client has in flight at once.
+ *
+ * Unlike a Semaphore, acquiring a permit never blocks: callers get a
+ * future which completes once a permit is available, so requests beyond
+ * the limit wait in line without holding a thread.
+ *
+ * An adaptive limiter moves its limit between a minimum and a maximum
+ * using additive increase, multiplicative decrease: every request which
+ * completes without being throttled raises the limit by 1/limit, so it
+ * grows by about one per round of requests, and a throttled request
+ * halves it. The limit is halved at most once per cooldown, so a burst of
+ * throttled responses to requests sent under the old limit only counts
+ * once.
+ **/
+class RequestLimiter {
+    private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+    private static final long DECREASE_COOLDOWN_NANOS = 1_000_000_000L;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long lastDecrease;
+
+    /**
+     * Creates a limiter with a fixed limit.
+     **/
+    RequestLimiter(int limit) {
+        this.adaptive = false;
+        this.minLimit = limit;
+        this.maxLimit = limit;
+        this.limit = limit;
+    }
+
+    /**
+     * Creates an adaptive limiter, which starts at its minimum.
+     **/
+    RequestLimiter(int minLimit, int maxLimit) {
+        this.adaptive = true;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = minLimit;
+        this.lastDecrease = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+    }
+
+    /**
+     * Returns a future which completes once the caller holds a permit. Every
+     * acquire must be paired with exactly one call to {@link #release()}.
+     **/
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return ACQUIRED;
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            return waiter;
+        }
+    }
+
+    /**
+     * Takes a permit only if one is free and nobody is waiting for it, for
+     * optional work which should not add to the queue.
+     *
+     * @return Whether the caller now holds a permit, which it must release
+     **/
+    synchronized boolean tryAcquire() {
+        if (inFlight < (int) limit && waiters.isEmpty()) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            inFlight--;
+            next = grant();
+        }
+        // Complete the waiter outside the lock, since doing so runs the
+        // waiter's request.
+        if (next != null) {
+            next.complete(null);
+        }
+    }
+
+    /**
+     * Records that a request completed without being throttled.
+     **/
+    void onSuccess() {
+        if (!adaptive) {
+            return;
+        }
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+            next = grant();
+        }
+        if (next != null) {
+            next.complete(null);
+        }
+    }
+
+    /**
+     * Records that the server throttled a request.
+     **/
+    void onThrottled() {
+        if (!adaptive) {
+            return;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - lastDecrease >= DECREASE_COOLDOWN_NANOS) {
+                limit = Math.max(minLimit, limit / 2);
+                lastDecrease = now;
+            }
+        }
+    }
+
+    /**
+     * Hands a permit to the next waiter if the limit allows it. Must be
+     * called with the lock held.
+     **/
+    private CompletableFuture<Void> grant() {
+        if (inFlight < (int) limit && !waiters.isEmpty()) {
+            inFlight++;
+            return waiters.poll();
+        }
+        return null;
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized int getQueued() {
+        return waiters.size();
+    }
+}
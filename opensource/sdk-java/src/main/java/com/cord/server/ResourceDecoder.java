@@ -0,0 +1,222 @@
+package com.cord.server;
+
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the users and groups returned by the REST API's read endpoints
+ * with a streaming parser, straight into the builder classes.
+ *
+ * Responses use camelCase names for some fields which are snake_case in
+ * requests, such as profilePictureURL, so both spellings are accepted.
+ * Fields the SDK has no place for are skipped.
+ **/
+final class ResourceDecoder {
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<Map<String, Object>>() {
+    };
+
+    private ResourceDecoder() {
+    }
+
+    /**
+     * A page of a list, and the token which fetches the next one.
+     **/
+    static final class Page<T> {
+        final List<T> items;
+        final String nextToken;
+
+        Page(List<T> items, String nextToken) {
+            this.items = items;
+            this.nextToken = nextToken;
+        }
+    }
+
+    static PlatformUserVariables readUser(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String id = null;
+        String email = null;
+        String name = null;
+        String profilePictureUrl = null;
+        Status status = null;
+        Map<String, Object> metadata = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "email":
+                    email = parser.getValueAsString();
+                    break;
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "profilePictureURL":
+                case "profile_picture_url":
+                    profilePictureUrl = parser.getValueAsString();
+                    break;
+                case "status":
+                    status = readStatus(parser);
+                    break;
+                case "metadata":
+                    metadata = readMetadata(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        PlatformUserVariablesBuilder user = new PlatformUserVariablesBuilder(email)
+                .id(id)
+                .name(name)
+                .profilePictureUrl(profilePictureUrl)
+                .status(status);
+        if (metadata != null) {
+            user.metadata(metadata);
+        }
+        return user.build();
+    }
+
+    static PlatformGroupVariables readGroup(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        String id = null;
+        String name = null;
+        Status status = null;
+        List<String> members = null;
+        Map<String, Object> metadata = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = parser.getValueAsString();
+                    break;
+                case "name":
+                    name = parser.getValueAsString();
+                    break;
+                case "status":
+                    status = readStatus(parser);
+                    break;
+                case "members":
+                    members = readStrings(parser);
+                    break;
+                case "metadata":
+                    metadata = readMetadata(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        PlatformGroupVariablesBuilder group = new PlatformGroupVariablesBuilder(name)
+                .id(id)
+                .status(status);
+        if (members != null) {
+            group.members(members);
+        }
+        if (metadata != null) {
+            group.metadata(metadata);
+        }
+        return group.build();
+    }
+
+    /**
+     * Reads a page of users: {"users": [...], "pagination": {"token": ...}}.
+     * The token is null on the last page.
+     **/
+    static Page<PlatformUserVariables> readUserPage(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_OBJECT);
+        List<PlatformUserVariables> users = Collections.emptyList();
+        String token = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("users".equals(field)) {
+                users = readUsers(parser);
+            } else if ("pagination".equals(field) && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String paginationField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("token".equals(paginationField)) {
+                        token = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new Page<>(users, token);
+    }
+
+    /**
+     * Reads the groups endpoint's response, which is a plain array of
+     * every group.
+     **/
+    static Page<PlatformGroupVariables> readGroupList(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<PlatformGroupVariables> groups = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            groups.add(readGroup(parser));
+        }
+        return new Page<>(groups, null);
+    }
+
+    private static List<PlatformUserVariables> readUsers(JsonParser parser) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        List<PlatformUserVariables> users = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            users.add(readUser(parser));
+        }
+        return users;
+    }
+
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, JsonToken.START_ARRAY);
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getValueAsString());
+        }
+        return values;
+    }
+
+    private static Status readStatus(JsonParser parser) throws IOException {
+        String status = parser.getValueAsString();
+        if ("active".equals(status)) {
+            return Status.ACTIVE;
+        }
+        if ("deleted".equals(status)) {
+            return Status.DELETED;
+        }
+        return null;
+    }
+
+    private static Map<String, Object> readMetadata(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        return Cord.mapper().readValue(parser, METADATA);
+    }
+
+    private static void expect(JsonParser parser, JsonToken token) throws IOException {
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        if (parser.currentToken() != token) {
+            throw new IOException("Expected " + token + " but found " + parser.currentToken());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.cord.server;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed API call is retried.
+ *
+ * The calls made by the SDK are idempotent upserts, so they are safe to
+ * repeat. A call is retried when the request could not be sent or the
+ * server answered 429, 502, 503 or 504. The delay grows exponentially
+ * with full jitter, unless the server says how long to wait in a
+ * Retry-After header, in which case that is honoured.
+ **/
+public class RetryPolicy {
+    /**
+     * A policy which never retries.
+     **/
+    public static final RetryPolicy NONE = new RetryPolicyBuilder().maxAttempts(1).build();
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long maxRetryAfterMillis;
+
+    private RetryPolicy(RetryPolicyBuilder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoff.toMillis();
+        this.maxBackoffMillis = builder.maxBackoff.toMillis();
+        this.maxRetryAfterMillis = builder.maxRetryAfter.toMillis();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return Whether the status code means the server is shedding load,
+     *         and the client should slow down
+     **/
+    static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Works out how long to wait before the next attempt.
+     *
+     * @param attempt  The attempt which just finished, starting at 1
+     * @param response The response to it, or null if it failed
+     * @param error    Why the attempt failed, or null if it got a response
+     * @return The delay in milliseconds, or -1 if the call should not be
+     *         retried
+     **/
+    long retryDelayMillis(int attempt, HttpResponse<?> response, Throwable error) {
+        if (attempt >= maxAttempts) {
+            return -1;
+        }
+        if (response != null) {
+            if (!isRetryable(response.statusCode())) {
+                return -1;
+            }
+            long retryAfter = retryAfterMillis(response);
+            if (retryAfter > maxRetryAfterMillis) {
+                return -1;
+            }
+            if (retryAfter >= 0) {
+                return retryAfter;
+            }
+        } else if (error == null) {
+            return -1;
+        }
+        long ceiling = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMillis) {
+            ceiling = maxBackoffMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * @return The delay asked for by the response's Retry-After header,
+     *         which may be either a number of seconds or an HTTP date, or
+     *         -1 if there is no usable header
+     **/
+    static long retryAfterMillis(HttpResponse<?> response) {
+        return retryAfterMillis(response.headers());
+    }
+
+    static long retryAfterMillis(HttpHeaders headers) {
+        Optional<String> header = headers.firstValue("Retry-After");
+        if (!header.isPresent()) {
+            return -1;
+        }
+        String value = header.get().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        try {
+            ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, at.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public static class RetryPolicyBuilder {
+        private int maxAttempts = 4;
+        private Duration initialBackoff = Duration.ofMillis(200);
+        private Duration maxBackoff = Duration.ofSeconds(10);
+        private Duration maxRetryAfter = Duration.ofSeconds(60);
+
+        /**
+         * MaxAttempts is the number of times a call is tried in total,
+         * including the first. Defaults to 4.
+         * */
+        public RetryPolicyBuilder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * InitialBackoff is the longest delay before the first retry. Each
+         * further retry doubles it, and the actual delay is picked at
+         * random below that. Defaults to 200 milliseconds.
+         * */
+        public RetryPolicyBuilder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * MaxBackoff caps the delay between retries. Defaults to ten
+         * seconds.
+         * */
+        public RetryPolicyBuilder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * MaxRetryAfter is the longest Retry-After the client will wait
+         * for. If the server asks for a longer wait, the call is not
+         * retried. Defaults to 60 seconds.
+         * */
+        public RetryPolicyBuilder maxRetryAfter(Duration maxRetryAfter) {
+            this.maxRetryAfter = maxRetryAfter;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers what was last synced for each user and group, so that a
+ * CordClient can skip syncs which would not change anything.
+ *
+ * Each entry is a 64-bit hash of the ID and a 64-bit fingerprint of the
+ * JSON that was last delivered for it, covering every field including
+ * metadata and group members. Entries live in a fixed-size table, so the
+ * memory used is bounded by the capacity no matter how many IDs are
+ * synced; when the table is full the oldest entry in the slot is evicted,
+ * which at worst causes an unnecessary sync. Fingerprints are only
+ * recorded once the server has accepted a sync.
+ *
+ * A single detector may be shared between clients of the same project.
+ **/
+public class SyncChangeDetector {
+    static final int USER = 1;
+    static final int GROUP = 2;
+
+    private static final int WAYS = 4;
+    private static final int LOCK_STRIPES = 64;
+
+    private final long[] keys;
+    private final long[] fingerprints;
+    private final byte[] nextVictim;
+    private final int bucketMask;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+
+    private SyncChangeDetector(SyncChangeDetectorBuilder builder) {
+        int buckets = Integer.highestOneBit(Math.max(1, (builder.capacity + WAYS - 1) / WAYS));
+        if (buckets * WAYS < builder.capacity) {
+            buckets <<= 1;
+        }
+        this.keys = new long[buckets * WAYS];
+        this.fingerprints = new long[buckets * WAYS];
+        this.nextVictim = new byte[buckets];
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return The number of syncs skipped because nothing had changed
+     **/
+    public long getUnchangedCount() {
+        return unchanged.sum();
+    }
+
+    /**
+     * @return The number of syncs which went ahead because the payload
+     *         was new or had changed
+     **/
+    public long getChangedCount() {
+        return changed.sum();
+    }
+
+    /**
+     * @return The number of entries this detector can hold
+     **/
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * Forgets what was last synced for a user, so that the next sync of
+     * that user is always sent.
+     **/
+    public void forgetUser(String userId) {
+        forget(USER, userId);
+    }
+
+    /**
+     * Forgets what was last synced for a group, so that the next sync of
+     * that group is always sent.
+     **/
+    public void forgetGroup(String groupId) {
+        forget(GROUP, groupId);
+    }
+
+    /**
+     * Forgets everything, so that every following sync is sent.
+     **/
+    public void clear() {
+        for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int bucket = stripe; bucket <= bucketMask; bucket += LOCK_STRIPES) {
+                    Arrays.fill(keys, bucket * WAYS, bucket * WAYS + WAYS, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a user or group. Map keys are sorted
+     * first, so metadata maps with the same entries always agree.
+     **/
+    static long fingerprint(Object payload) {
+        FingerprintOutputStream out = new FingerprintOutputStream();
+        try (JsonGenerator generator = Cord.jsonFactory.createGenerator(out)) {
+            JsonWriters.writeValue(generator, payload, true);
+        } catch (IOException e) {
+            // We only ever write to memory, and our user and group objects
+            // should always be serializable
+            throw new UncheckedIOException(e);
+        }
+        return out.getHash();
+    }
+
+    /**
+     * Checks whether the fingerprint matches what was last recorded for
+     * the ID, and counts the outcome.
+     **/
+    boolean isUnchanged(int kind, String id, long fingerprint) {
+        long key = key(kind, id);
+        int bucket = bucket(key);
+        boolean found = false;
+        synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+            int slot = find(bucket, key);
+            found = slot >= 0 && fingerprints[slot] == fingerprint;
+        }
+        if (found) {
+            unchanged.increment();
+        } else {
+            changed.increment();
+        }
+        return found;
+    }
+
+    /**
+     * Records the fingerprint of a payload the server has accepted.
+     **/
+    void record(int kind, String id, long fingerprint) {
+        long key = key(kind, id);
+        int bucket = bucket(key);
+        synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+            int slot = find(bucket, key);
+            if (slot < 0) {
+                slot = find(bucket, 0);
+            }
+            if (slot < 0) {
+                slot = bucket * WAYS + nextVictim[bucket];
+                nextVictim[bucket] = (byte) ((nextVictim[bucket] + 1) % WAYS);
+            }
+            keys[slot] = key;
+            fingerprints[slot] = fingerprint;
+        }
+    }
+
+    private void forget(int kind, String id) {
+        long key = key(kind, id);
+        int bucket = bucket(key);
+        synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+            int slot = find(bucket, key);
+            if (slot >= 0) {
+                keys[slot] = 0;
+            }
+        }
+    }
+
+    private int find(int bucket, long key) {
+        int start = bucket * WAYS;
+        for (int slot = start; slot < start + WAYS; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int bucket(long key) {
+        return (int) (key ^ (key >>> 32)) & bucketMask;
+    }
+
+    private static long key(int kind, String id) {
+        long hash = Hash64.of(id.getBytes(StandardCharsets.UTF_8), kind);
+        // Zero marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash with a final avalanche step, so that the low
+     * bits used to pick a bucket are well mixed.
+     **/
+    static final class Hash64 {
+        private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long PRIME = 0x100000001b3L;
+
+        private Hash64() {
+        }
+
+        static long of(byte[] bytes, long seed) {
+            long hash = OFFSET_BASIS ^ seed;
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xff)) * PRIME;
+            }
+            return mix(hash);
+        }
+
+        static long update(long hash, int b) {
+            return (hash ^ (b & 0xff)) * PRIME;
+        }
+
+        static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+
+    /**
+     * Hashes everything written to it, without keeping any of it.
+     **/
+    private static class FingerprintOutputStream extends OutputStream {
+        private long hash = Hash64.OFFSET_BASIS;
+
+        @Override
+        public void write(int b) {
+            hash = Hash64.update(hash, b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long h = hash;
+            for (int i = off; i < off + len; i++) {
+                h = Hash64.update(h, b[i]);
+            }
+            hash = h;
+        }
+
+        long getHash() {
+            return Hash64.mix(hash);
+        }
+    }
+
+    public static class SyncChangeDetectorBuilder {
+        private int capacity = 100_000;
+
+        /**
+         * Capacity is the number of users and groups the detector
+         * remembers. Each entry takes 16 bytes. Defaults to 100,000.
+         * */
+        public SyncChangeDetectorBuilder capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        public SyncChangeDetector build() {
+            return new SyncChangeDetector(this);
+        }
+    }
+}
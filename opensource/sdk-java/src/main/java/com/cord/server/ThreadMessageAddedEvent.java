@@ -0,0 +1,61 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A thread-message-added event: a message was added to a thread.
+ *
+ * The getters read the event's main fields, and return null for any the
+ * payload did not include. The rest are in {@link #getEvent()}.
+ **/
+public class ThreadMessageAddedEvent extends CordWebhookEvent {
+    ThreadMessageAddedEvent(Instant timestamp, String projectId, String applicationId, JsonNode event) {
+        super(THREAD_MESSAGE_ADDED, timestamp, projectId, applicationId, event);
+    }
+
+    public String getMessageId() {
+        return findText(getEvent(), new String[] {"message", "id"}, new String[] {"messageID"});
+    }
+
+    /**
+     * @return The ID of the user who wrote the message
+     **/
+    public String getAuthorId() {
+        return findText(getEvent(), new String[] {"message", "authorID"}, new String[] {"author", "id"});
+    }
+
+    /**
+     * @return The ID of the group the thread belongs to
+     **/
+    public String getGroupId() {
+        return findText(getEvent(), new String[] {"message", "groupID"}, new String[] {"thread", "groupID"},
+                new String[] {"groupID"}, new String[] {"orgID"});
+    }
+
+    /**
+     * @return The text of the message, without formatting
+     **/
+    public String getPlaintext() {
+        return findText(getEvent(), new String[] {"message", "plaintext"}, new String[] {"plaintext"});
+    }
+
+    /**
+     * @return The URL of the page the message was written on
+     **/
+    public String getUrl() {
+        return findText(getEvent(), new String[] {"message", "url"}, new String[] {"url"},
+                new String[] {"thread", "url"});
+    }
+
+    /**
+     * @return The IDs of the users Cord would notify of the message, or
+     *         an empty list if the payload did not include them
+     **/
+    public List<String> getUsersToNotify() {
+        JsonNode event = getEvent();
+        return findIds(event != null ? event.path("usersToNotify") : null);
+    }
+}
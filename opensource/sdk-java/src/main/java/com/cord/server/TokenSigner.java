@@ -0,0 +1,235 @@
+package com.cord.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+
+/**
+ * Signs HS512 JWTs without going through jjwt.
+ *
+ * The header never changes, so it is encoded once. Claims are written
+ * by a Jackson generator into a per-thread buffer, base64url-encoded
+ * straight into the token and signed with a per-thread Mac, so minting a
+ * token allocates little more than the token itself.
+ *
+ * The output matches what jjwt produces for the same claims, written in
+ * the same order: jjwt puts the typ header before alg, and serializes
+ * claims with no whitespace.
+ *
+ * The same per-thread Mac checks the signatures of tokens being
+ * verified.
+ **/
+final class TokenSigner {
+    static final String ALGORITHM = "HmacSHA512";
+    private static final int SIGNATURE_LENGTH = 64;
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ENCODED_HEADER =
+            base64Url("{\"typ\":\"JWT\",\"alg\":\"HS512\"}".getBytes(StandardCharsets.UTF_8));
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final Key key;
+
+    TokenSigner(Key key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns a signed token whose claims are the JSON object written by
+     * the given content.
+     **/
+    String sign(JsonBodyPublisher.JsonContent claims) {
+        Scratch scratch = TokenSigner.scratch.get();
+        Buffer json = scratch.json;
+        json.reset();
+        try (JsonGenerator generator = Cord.jsonFactory.createGenerator(json)) {
+            claims.writeTo(generator);
+        } catch (IOException e) {
+            // We only ever write to memory, and our claims should always
+            // be serializable
+            throw new UncheckedIOException(e);
+        }
+
+        int headerLength = ENCODED_HEADER.length;
+        int signingInputLength = headerLength + 1 + encodedLength(json.size);
+        byte[] token = new byte[signingInputLength + 1 + encodedLength(SIGNATURE_LENGTH)];
+        System.arraycopy(ENCODED_HEADER, 0, token, 0, headerLength);
+        token[headerLength] = '.';
+        encode(json.bytes, json.size, token, headerLength + 1);
+
+        Mac mac = scratch.mac(key);
+        mac.update(token, 0, signingInputLength);
+        try {
+            mac.doFinal(scratch.signature, 0);
+        } catch (GeneralSecurityException e) {
+            // The signature buffer is always large enough
+            throw new IllegalStateException(e);
+        }
+        token[signingInputLength] = '.';
+        encode(scratch.signature, SIGNATURE_LENGTH, token, signingInputLength + 1);
+        return new String(token, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return Whether the token starts with the header this class writes
+     **/
+    static boolean hasStandardHeader(String token) {
+        if (token.length() <= ENCODED_HEADER.length || token.charAt(ENCODED_HEADER.length) != '.') {
+            return false;
+        }
+        for (int i = 0; i < ENCODED_HEADER.length; i++) {
+            if (token.charAt(i) != ENCODED_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the signature of a token. The comparison takes the same time
+     * wherever the signatures differ, so it reveals nothing about the
+     * expected signature.
+     *
+     * @param token          The token, with only ASCII characters in it
+     * @param signatureStart The index of the first character after the
+     *                       second dot
+     **/
+    boolean hasValidSignature(String token, int signatureStart) {
+        int signatureLength = token.length() - signatureStart;
+        if (signatureLength != encodedLength(SIGNATURE_LENGTH)) {
+            return false;
+        }
+        Scratch scratch = TokenSigner.scratch.get();
+        Buffer input = scratch.json;
+        input.reset();
+        for (int i = 0; i < signatureStart - 1; i++) {
+            char c = token.charAt(i);
+            if (c > 0x7f) {
+                return false;
+            }
+            input.write(c);
+        }
+        Mac mac = scratch.mac(key);
+        mac.update(input.bytes, 0, input.size);
+        try {
+            mac.doFinal(scratch.signature, 0);
+        } catch (GeneralSecurityException e) {
+            // The signature buffer is always large enough
+            throw new IllegalStateException(e);
+        }
+        byte[] expected = scratch.encodedSignature;
+        encode(scratch.signature, SIGNATURE_LENGTH, expected, 0);
+        int difference = 0;
+        for (int i = 0; i < signatureLength; i++) {
+            difference |= token.charAt(signatureStart + i) ^ expected[i];
+        }
+        return difference == 0;
+    }
+
+    private static int encodedLength(int length) {
+        return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+    }
+
+    private static byte[] base64Url(byte[] bytes) {
+        byte[] encoded = new byte[encodedLength(bytes.length)];
+        encode(bytes, bytes.length, encoded, 0);
+        return encoded;
+    }
+
+    /**
+     * Writes the unpadded base64url encoding of the first length bytes of
+     * source into target, starting at offset.
+     **/
+    private static void encode(byte[] source, int length, byte[] target, int offset) {
+        int out = offset;
+        int whole = length - length % 3;
+        for (int i = 0; i < whole; i += 3) {
+            int bits = (source[i] & 0xff) << 16 | (source[i + 1] & 0xff) << 8 | (source[i + 2] & 0xff);
+            target[out++] = ALPHABET[bits >>> 18];
+            target[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            target[out++] = ALPHABET[(bits >>> 6) & 0x3f];
+            target[out++] = ALPHABET[bits & 0x3f];
+        }
+        if (length % 3 == 1) {
+            int bits = (source[whole] & 0xff) << 16;
+            target[out++] = ALPHABET[bits >>> 18];
+            target[out] = ALPHABET[(bits >>> 12) & 0x3f];
+        } else if (length % 3 == 2) {
+            int bits = (source[whole] & 0xff) << 16 | (source[whole + 1] & 0xff) << 8;
+            target[out++] = ALPHABET[bits >>> 18];
+            target[out++] = ALPHABET[(bits >>> 12) & 0x3f];
+            target[out] = ALPHABET[(bits >>> 6) & 0x3f];
+        }
+    }
+
+    /**
+     * The buffers and Mac a thread reuses from one token to the next.
+     **/
+    private static class Scratch {
+        private final Buffer json = new Buffer();
+        private final byte[] signature = new byte[SIGNATURE_LENGTH];
+        private final byte[] encodedSignature = new byte[encodedLength(SIGNATURE_LENGTH)];
+        private Mac mac;
+        private Key macKey;
+
+        Mac mac(Key key) {
+            if (key != macKey) {
+                try {
+                    if (mac == null) {
+                        mac = Mac.getInstance(ALGORITHM);
+                    }
+                    mac.init(key);
+                } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                    // Every JRE supports HmacSHA512, and our keys are
+                    // always long enough for it
+                    throw new IllegalStateException(e);
+                }
+                macKey = key;
+            }
+            return mac;
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream which exposes its array, without the
+     * synchronization.
+     **/
+    private static class Buffer extends OutputStream {
+        private byte[] bytes = new byte[512];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cord.server;
+
+/**
+ * Wraps a CordException where a checked exception cannot be thrown, such
+ * as from the Iterator and Stream returned by the list methods.
+ **/
+public class UncheckedCordException extends RuntimeException {
+    public UncheckedCordException(CordException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public CordException getCause() {
+        return (CordException) super.getCause();
+    }
+}
@@ -0,0 +1,65 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.cord.server.CircuitBreaker.CircuitBreakerBuilder;
+import com.cord.server.CircuitBreaker.Permit;
+import com.cord.server.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+    private static final long OPEN_NANOS = Duration.ofSeconds(30).toNanos();
+
+    private static CircuitBreaker openBreaker(long now) {
+        CircuitBreaker breaker = new CircuitBreakerBuilder()
+                .minimumRequests(2)
+                .openDuration(Duration.ofNanos(OPEN_NANOS))
+                .build();
+        breaker.onFailure(breaker.tryAcquire(now), now);
+        assertTrue(breaker.onFailure(breaker.tryAcquire(now), now));
+        assertEquals(State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    @Test
+    public void letsOneProbeThroughOnceOpenDurationPasses() {
+        CircuitBreaker breaker = openBreaker(0);
+
+        assertTrue(breaker.isOpen(OPEN_NANOS - 1));
+        assertEquals(Permit.DENIED, breaker.tryAcquire(OPEN_NANOS - 1));
+        assertFalse(breaker.isOpen(OPEN_NANOS));
+        assertEquals(Permit.PROBE, breaker.tryAcquire(OPEN_NANOS));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals(Permit.DENIED, breaker.tryAcquire(OPEN_NANOS));
+
+        assertTrue(breaker.onFailure(Permit.PROBE, OPEN_NANOS + 1));
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(Permit.DENIED, breaker.tryAcquire(2 * OPEN_NANOS));
+        assertEquals(Permit.PROBE, breaker.tryAcquire(2 * OPEN_NANOS + 1));
+
+        assertTrue(breaker.onSuccess(Permit.PROBE));
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(Permit.REQUEST, breaker.tryAcquire(2 * OPEN_NANOS + 1));
+    }
+
+    @Test
+    public void ignoresRequestsFinishingWhileTheProbeIsOut() {
+        CircuitBreaker breaker = openBreaker(0);
+        assertEquals(Permit.PROBE, breaker.tryAcquire(OPEN_NANOS));
+
+        // Sent before the breaker opened, and only finishing now
+        assertFalse(breaker.onSuccess(Permit.REQUEST));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.onFailure(Permit.REQUEST, OPEN_NANOS));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals(Permit.DENIED, breaker.tryAcquire(OPEN_NANOS));
+
+        assertTrue(breaker.onSuccess(Permit.PROBE));
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+}
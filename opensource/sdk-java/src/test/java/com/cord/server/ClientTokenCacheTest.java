@@ -0,0 +1,73 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.cord.server.ClientTokenCache.ClientTokenCacheBuilder;
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordClientRegistry.CordClientRegistryBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class ClientTokenCacheTest {
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    @Test
+    public void reusesTokensUntilTooLittleLifetimeIsLeft() {
+        ClientTokenCache cache = new ClientTokenCacheBuilder().minRemaining(Duration.ofSeconds(30)).build();
+        CordClient client = new CordClientBuilder("projectID", "secret").clientTokenCache(cache).build();
+
+        String token = client.getClientAuthToken(payload("userID", "Alice"), NOW);
+        assertEquals(token, client.getClientAuthToken(payload("userID", "Alice"), NOW.plusSeconds(30)));
+        assertNotEquals(token, client.getClientAuthToken(payload("userID", "Alice"), NOW.plusSeconds(31)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void changedDetailsMiss() {
+        ClientTokenCache cache = new ClientTokenCacheBuilder().build();
+        CordClient client = new CordClientBuilder("projectID", "secret").clientTokenCache(cache).build();
+
+        String token = client.getClientAuthToken(payload("userID", "Alice"), NOW);
+        assertNotEquals(token, client.getClientAuthToken(payload("userID", "Bob"), NOW));
+        assertNotEquals(token, client.getClientAuthToken(payload("otherID", "Alice"), NOW));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void rotatedSecretMisses() {
+        ClientTokenCache cache = new ClientTokenCacheBuilder().build();
+        CordClientRegistry registry = new CordClientRegistryBuilder().clientTokenCache(cache).build();
+
+        CordClient client = registry.getClient("projectID", "secret");
+        String token = client.getClientAuthToken(payload("userID", "Alice"), NOW);
+        // A client for the rotated secret shares the cache, but must sign
+        // its own tokens
+        CordClient rotated = registry.getClient("projectID", "rotated");
+        assertNotEquals(token, rotated.getClientAuthToken(payload("userID", "Alice"), NOW));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void staysWithinMaximumSize() {
+        ClientTokenCache cache = new ClientTokenCacheBuilder().maximumSize(100).build();
+        CordClient client = new CordClientBuilder("projectID", "secret").clientTokenCache(cache).build();
+
+        for (int i = 0; i < 1000; i++) {
+            client.getClientAuthToken(payload("user" + i, "Alice"), NOW);
+        }
+        assertTrue(cache.size() <= 100);
+    }
+
+    private static ClientAuthTokenData payload(String userId, String name) {
+        return new ClientAuthTokenData.ClientAuthTokenDataBuilder(userId)
+                .userDetails(new PlatformUserVariablesBuilder("email@example.com").name(name).build())
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CircuitBreaker.CircuitBreakerBuilder;
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordMetrics.Endpoint;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class CordClientHedgingTest {
+    private static final int WARM_UP_REQUESTS = 100;
+
+    private StubCordServer server;
+    /**
+     * How long the server holds each request before answering, in the
+     * order they arrive. Requests beyond the queue are answered at once.
+     **/
+    private final Queue<Long> delays = new ConcurrentLinkedQueue<>();
+    private final InMemoryCordMetrics metrics = new InMemoryCordMetrics();
+
+    @Before
+    public void startServer() throws IOException {
+        // A hedge has to be answered while the request it duplicates is
+        // still being held
+        server = new StubCordServer(true);
+        server.setHook(body -> {
+            Long delay = delays.poll();
+            if (delay != null) {
+                Thread.sleep(delay);
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    private CordClientBuilder client(Duration requestTimeout) {
+        return server.clientBuilder()
+                .transport(server.transportBuilder().requestTimeout(requestTimeout).build())
+                .retryPolicy(RetryPolicy.NONE)
+                .hedgePercentile(95)
+                .metrics(metrics);
+    }
+
+    /**
+     * Gives the client enough fast responses to start hedging.
+     **/
+    private static void warmUp(CordClient client) throws CordException {
+        for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+            client.syncUser("userID", user());
+        }
+    }
+
+    @Test
+    public void hedgeAnswersForASlowRequest() throws Exception {
+        CordClient client = client(Duration.ofSeconds(10)).build();
+        warmUp(client);
+        delays.add(2000L);
+
+        long start = System.nanoTime();
+        assertTrue(client.syncUser("userID", user()).isSuccess());
+
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertEquals(1, metrics.getHedgeCount(Endpoint.USERS));
+        assertEquals(WARM_UP_REQUESTS + 2, server.requests.size());
+    }
+
+    @Test
+    public void noHedgeWithoutAFreePermit() throws Exception {
+        CordClient client = client(Duration.ofSeconds(10)).maxConcurrentRequests(1).build();
+        warmUp(client);
+        delays.add(300L);
+
+        long start = System.nanoTime();
+        assertTrue(client.syncUser("userID", user()).isSuccess());
+
+        // The slow request held the only permit, so it had to be waited out
+        assertTrue(System.nanoTime() - start >= 300_000_000L);
+        assertEquals(0, metrics.getHedgeCount(Endpoint.USERS));
+        assertEquals(WARM_UP_REQUESTS + 1, server.requests.size());
+    }
+
+    @Test
+    public void failedRequestAndHedgeCountAsOneFailure() throws Exception {
+        // Opens only if every request in a window of two fails
+        CircuitBreaker breaker = new CircuitBreakerBuilder()
+                .windowSize(2)
+                .minimumRequests(2)
+                .failureRateThreshold(1)
+                .build();
+        CordClient client = client(Duration.ofMillis(300)).circuitBreaker(breaker).build();
+        warmUp(client);
+        delays.add(1000L);
+        delays.add(1000L);
+
+        try {
+            client.syncUser("userID", user());
+            fail();
+        } catch (CordException e) {
+            assertTrue(e.getCause() instanceof HttpTimeoutException);
+        }
+
+        assertEquals(1, metrics.getHedgeCount(Endpoint.USERS));
+        assertEquals(2, metrics.getFailureCount(Endpoint.USERS));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private static PlatformUserVariables user() {
+        return new PlatformUserVariablesBuilder("userID@example.com").id("userID").build();
+    }
+}
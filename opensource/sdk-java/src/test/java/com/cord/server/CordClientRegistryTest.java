@@ -0,0 +1,69 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.cord.server.CordClientRegistry.CordClientRegistryBuilder;
+
+public class CordClientRegistryTest {
+    @Test
+    public void keepsOneClientPerProject() {
+        CordClientRegistry registry = new CordClientRegistryBuilder().build();
+
+        CordClient first = registry.getClient("first", "secret");
+        assertSame(first, registry.getClient("first", "secret"));
+        assertSame(first, registry.getClient("first"));
+        assertEquals("first", first.getProjectId());
+
+        CordClient rotated = registry.getClient("first", "rotated");
+        assertNotSame(first, rotated);
+        assertSame(rotated, registry.getClient("first"));
+
+        CordClient second = registry.register("second", "secret", options -> options.maxRequestsPerSecond(5));
+        assertSame(second, registry.getClient("second", "secret"));
+        assertEquals(new HashSet<>(Arrays.asList("first", "second")), registry.getProjectIds());
+
+        assertTrue(registry.remove("first"));
+        assertFalse(registry.remove("first"));
+        assertNull(registry.getClient("first"));
+    }
+
+    @Test
+    public void staticMethodsReuseEachProjectsClient() {
+        Cord.getServerAuthToken("static", "secret");
+        CordClient client = Cord.clients().getClient("static");
+        Cord.getServerAuthToken("static", "secret");
+        assertSame(client, Cord.clients().getClient("static"));
+
+        Cord.getServerAuthToken("static", "rotated");
+        assertNotSame(client, Cord.clients().getClient("static"));
+    }
+
+    @Test
+    public void rateLimiterSpacesOutRequestsAfterABurst() {
+        RateLimiter limiter = new RateLimiter(10);
+        long now = System.nanoTime();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.reserve(now));
+        }
+        assertEquals(100_000_000L, limiter.reserve(now));
+        assertEquals(200_000_000L, limiter.reserve(now));
+
+        // A quiet spell only ever saves up one second's worth
+        long later = now + 10_000_000_000L;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.reserve(later));
+        }
+        assertEquals(100_000_000L, limiter.reserve(later));
+    }
+}
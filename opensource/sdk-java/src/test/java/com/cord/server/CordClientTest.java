@@ -0,0 +1,467 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordSyncQueue.CordSyncQueueBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CordClientTest {
+    private static final String OK = "{\"success\":true,\"message\":\"ok\"}";
+    private static final String ERROR = "{\"error\":\"invalid_field\",\"message\":\"bad email\"}";
+
+    private HttpServer server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private volatile long responseDelayMillis;
+    private CordTransport transport;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        transport = new CordTransportBuilder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .httpVersion(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " " + body);
+        Integer status = statuses.poll();
+        String canned = responses.get(exchange.getRequestMethod() + " " + exchange.getRequestURI());
+        byte[] response = (status != null && status >= 400 ? ERROR : canned != null ? canned : OK)
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (status != null) {
+            exchange.getResponseHeaders().add("Retry-After", "0");
+        }
+        if (responseDelayMillis > 0) {
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.sendResponseHeaders(status != null ? status : 200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private CordClientBuilder client() {
+        return new CordClientBuilder("projectID", "secret").transport(transport);
+    }
+
+    @Test
+    public void syncsUser() throws Exception {
+        String body = client().build().syncCordUser("userID", user("userID"));
+
+        assertEquals(OK, body);
+        assertEquals(
+                Collections.singletonList("PUT /v1/users/userID {\"email\":\"userID@example.com\",\"id\":\"userID\"}"),
+                requests);
+    }
+
+    @Test
+    public void syncsAsynchronously() throws Exception {
+        CordClient client = client().maxConcurrentRequests(2).build();
+        List<CompletableFuture<String>> futures = IntStream.range(0, 20)
+                .mapToObj(i -> client.syncCordUserAsync("user" + i, user("user" + i)))
+                .collect(Collectors.toList());
+
+        for (CompletableFuture<String> future : futures) {
+            assertEquals(OK, future.get());
+        }
+        assertEquals(20, requests.size());
+    }
+
+    @Test
+    public void batchSyncsInChunksWithGroupsFirst() throws Exception {
+        CordClient client = client().maxUsersPerBatch(3).maxGroupsPerBatch(2).build();
+
+        BatchSyncSummary summary = client.batchSyncAll(
+                IntStream.range(0, 7).mapToObj(i -> user("user" + i)),
+                Stream.of(group("a"), group("b"), group("c")));
+
+        assertTrue(summary.isSuccess());
+        assertEquals(5, summary.getChunks().size());
+        assertEquals(7, summary.getSyncedUsers());
+        assertEquals(3, summary.getSyncedGroups());
+        assertTrue(requests.get(0).contains("\"organizations\":[{"));
+        assertTrue(requests.get(1).contains("\"organizations\":[{"));
+        assertTrue(requests.get(2).contains("\"organizations\":[]"));
+    }
+
+    @Test
+    public void queueCoalescesUpdates() throws Exception {
+        CordClient client = client().build();
+        try (CordSyncQueue queue = new CordSyncQueueBuilder(client).flushInterval(Duration.ofHours(1)).build()) {
+            CompletableFuture<Void> first = queue.syncUser(new PlatformUserVariablesBuilder("old@example.com")
+                    .id("userID")
+                    .build());
+            CompletableFuture<Void> second = queue.syncUser(user("userID"));
+            queue.syncGroup(group("groupID"));
+            assertEquals(2, queue.getPendingCount());
+
+            queue.flush().get();
+            first.get();
+            second.get();
+        }
+
+        assertEquals(1, requests.size());
+        assertEquals(
+                "POST /v1/batch {\"organizations\":[{\"name\":\"groupID\",\"id\":\"groupID\"}],"
+                        + "\"users\":[{\"email\":\"userID@example.com\",\"id\":\"userID\"}]}",
+                requests.get(0));
+    }
+
+    @Test
+    public void changeDetectorSkipsRepeatedSyncs() throws Exception {
+        CordClient client = client()
+                .changeDetector(new SyncChangeDetector.SyncChangeDetectorBuilder().build())
+                .build();
+
+        client.syncCordUser("userID", user("userID"));
+        assertEquals(CordClient.UNCHANGED_RESPONSE_BODY, client.syncCordUser("userID", user("userID")));
+        client.batchSyncCordUsersAndOrganizations(
+                List.of(user("userID"), user("other")), Collections.emptyList());
+
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("\"users\":[{\"email\":\"other@example.com\",\"id\":\"other\"}]"));
+    }
+
+    @Test
+    public void changeDetectorRejectsMissingIds() throws Exception {
+        CordClient client = client()
+                .changeDetector(new SyncChangeDetector.SyncChangeDetectorBuilder().build())
+                .build();
+        PlatformUserVariables noId = new PlatformUserVariablesBuilder("no-id@example.com").build();
+
+        try {
+            client.batchSyncCordUsersAndOrganizations(List.of(user("userID"), noId), Collections.emptyList());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("must have an ID"));
+        }
+        try {
+            client.syncUser(null, noId);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("must have an ID"));
+        }
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    public void splitsLargeMembershipDeltas() throws Exception {
+        CordClient client = client().maxMembersPerRequest(2).build();
+
+        client.updateGroupMembers("groupID", Arrays.asList("a", "b", "c"), Collections.singletonList("d"));
+
+        Collections.sort(requests);
+        assertEquals(Arrays.asList(
+                "POST /v1/groups/groupID/members {\"add\":[\"a\",\"b\"],\"remove\":[]}",
+                "POST /v1/groups/groupID/members {\"add\":[\"c\"],\"remove\":[\"d\"]}"),
+                requests);
+    }
+
+    @Test
+    public void checksLargeMembershipListsForOverlapQuickly() throws Exception {
+        List<String> add = IntStream.range(0, 100_000).mapToObj(i -> "add" + i).collect(Collectors.toList());
+        List<String> remove = IntStream.range(0, 100_000).mapToObj(i -> "remove" + i).collect(Collectors.toList());
+        remove.set(remove.size() - 1, add.get(add.size() - 1));
+        CordClient client = client().build();
+
+        long start = System.nanoTime();
+        try {
+            client.updateGroupMembers("groupID", add, remove);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("add99999"));
+        }
+        // Comparing every pair of IDs would take minutes
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void queueMergesMembershipChanges() throws Exception {
+        CordClient client = client().build();
+        try (CordSyncQueue queue = new CordSyncQueueBuilder(client).flushInterval(Duration.ofHours(1)).build()) {
+            queue.addGroupMembers("groupID", Arrays.asList("a", "b"));
+            queue.removeGroupMembers("groupID", Arrays.asList("b", "c"));
+            CompletableFuture<Void> delivered = queue.addGroupMembers("groupID", Collections.singletonList("c"));
+            queue.flush().get();
+
+            assertTrue(delivered.isDone());
+        }
+        assertEquals(
+                Collections.singletonList(
+                        "POST /v1/groups/groupID/members {\"add\":[\"a\",\"c\"],\"remove\":[\"b\"]}"),
+                requests);
+    }
+
+    @Test
+    public void retriesThrottledRequests() throws Exception {
+        statuses.add(429);
+        statuses.add(503);
+
+        assertEquals(OK, client().build().syncCordUser("userID", user("userID")));
+        assertEquals(3, requests.size());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        statuses.add(429);
+        statuses.add(429);
+
+        client().retryPolicy(new RetryPolicy.RetryPolicyBuilder().maxAttempts(2).build())
+                .build()
+                .syncCordUser("userID", user("userID"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void returnsTypedResponses() throws Exception {
+        CordResponse response = client().build().batchSync(
+                Arrays.asList(user("a"), user("b")), Collections.singletonList(group("c")));
+
+        assertTrue(response.isSuccess());
+        assertEquals("ok", response.getMessage());
+        assertEquals(2, response.getSyncedUsers());
+        assertEquals(1, response.getSyncedGroups());
+    }
+
+    @Test
+    public void errorStatusesThrowApiExceptions() throws Exception {
+        statuses.add(400);
+
+        try {
+            client().build().syncUser("userID", user("userID"));
+            fail();
+        } catch (CordApiException e) {
+            assertEquals(400, e.getStatusCode());
+            assertEquals("invalid_field", e.getError());
+            assertEquals("bad email", e.getResponse().getMessage());
+        }
+    }
+
+    @Test
+    public void reportsMetrics() throws Exception {
+        statuses.add(429);
+        InMemoryCordMetrics metrics = new InMemoryCordMetrics();
+
+        client().metrics(metrics).build().syncCordUser("userID", user("userID"));
+
+        assertEquals(1, metrics.getStatusCount(CordMetrics.Endpoint.USERS, 429));
+        assertEquals(1, metrics.getStatusCount(CordMetrics.Endpoint.USERS, 200));
+        assertEquals(1, metrics.getRetryCount(CordMetrics.Endpoint.USERS));
+        assertEquals(2, metrics.getLatency(CordMetrics.Endpoint.USERS).getCount());
+        assertEquals(ERROR.length() + OK.length(), metrics.getResponseBytes(CordMetrics.Endpoint.USERS));
+        assertEquals(1, metrics.getTokenMintLatency(CordMetrics.TokenType.SERVER).getCount());
+    }
+
+    @Test
+    public void callsTimeOutAtTheirDeadline() throws Exception {
+        responseDelayMillis = 2000;
+        CordClient client = client().callTimeout(Duration.ofSeconds(30)).build();
+        // Keep the one-off setup of the first call out of the timing
+        client.warmUp();
+
+        long start = System.nanoTime();
+        try {
+            client.withCallTimeout(Duration.ofMillis(100)).syncUser("userID", user("userID"));
+            fail();
+        } catch (CordException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // Well before the server answers
+        assertTrue(System.nanoTime() - start < 1_500_000_000L);
+        assertEquals(Duration.ofSeconds(30), client.getCallTimeout());
+    }
+
+    @Test
+    public void openCircuitFailsFastUntilAProbeSucceeds() throws Exception {
+        statuses.add(500);
+        statuses.add(503);
+        CircuitBreaker breaker = new CircuitBreaker.CircuitBreakerBuilder()
+                .minimumRequests(2)
+                .openDuration(Duration.ofSeconds(30))
+                .build();
+        CordClient client = client().retryPolicy(RetryPolicy.NONE).circuitBreaker(breaker).build();
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.syncUser("userID", user("userID"));
+                fail();
+            } catch (CordApiException e) {
+                assertTrue(e.getStatusCode() >= 500);
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            client.syncUser("userID", user("userID"));
+            fail();
+        } catch (CordCircuitOpenException e) {
+            assertEquals(2, requests.size());
+        }
+
+        // A breaker which opened longer than openDuration ago lets the
+        // next call through as its probe
+        CircuitBreaker lapsed = new CircuitBreaker.CircuitBreakerBuilder()
+                .minimumRequests(2)
+                .openDuration(Duration.ofSeconds(30))
+                .build();
+        long longAgo = System.nanoTime() - Duration.ofMinutes(1).toNanos();
+        for (int i = 0; i < 2; i++) {
+            lapsed.onFailure(lapsed.tryAcquire(longAgo), longAgo);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, lapsed.getState());
+        client = client().retryPolicy(RetryPolicy.NONE).circuitBreaker(lapsed).build();
+        assertTrue(client.syncUser("userID", user("userID")).isSuccess());
+        assertEquals(CircuitBreaker.State.CLOSED, lapsed.getState());
+        assertEquals(3, requests.size());
+    }
+
+    private static PlatformUserVariables user(String id) {
+        return new PlatformUserVariablesBuilder(id + "@example.com").id(id).build();
+    }
+
+    private static PlatformGroupVariables group(String id) {
+        return new PlatformGroupVariablesBuilder(id).id(id).build();
+    }
+
+    @Test
+    public void listsUsersAPageAtATime() throws Exception {
+        responses.put("GET /v1/users?limit=2", "{\"users\":["
+                + "{\"id\":\"u1\",\"email\":\"a@example.com\",\"profilePictureURL\":\"https://a\","
+                + "\"createdTimestamp\":\"2023-01-01\",\"metadata\":{\"level\":3}},"
+                + "{\"id\":\"u2\",\"email\":\"b@example.com\",\"status\":\"deleted\"}],"
+                + "\"pagination\":{\"token\":\"next page\",\"total\":3}}");
+        responses.put("GET /v1/users?limit=2&token=next+page", "{\"users\":["
+                + "{\"id\":\"u3\",\"email\":\"c@example.com\",\"name\":\"Carol\"}],"
+                + "\"pagination\":{\"token\":null,\"total\":3}}");
+        CordClient client = client().readPageSize(2).build();
+
+        Iterator<PlatformUserVariables> users = client.listUsers();
+        assertTrue(requests.isEmpty());
+        PlatformUserVariables first = users.next();
+        assertEquals("u1", first.getId());
+        assertEquals("https://a", first.getProfilePictureUrl());
+        assertEquals(Collections.singletonMap("level", 3), first.getMetadata());
+
+        List<String> ids = client.streamUsers().map(PlatformUserVariables::getId).collect(Collectors.toList());
+        assertEquals(Arrays.asList("u1", "u2", "u3"), ids);
+        assertEquals(Status.DELETED, users.next().getStatus());
+        assertEquals("Carol", users.next().getName());
+        assertFalse(users.hasNext());
+    }
+
+    @Test
+    public void closingAPageStreamReleasesThePageInFlight() throws Exception {
+        // Larger than the socket buffers, so the server can only finish
+        // writing it if the client reads it
+        StringBuilder secondPage = new StringBuilder("{\"users\":[");
+        for (int i = 0; i < 500_000; i++) {
+            secondPage.append(i > 0 ? "," : "").append("{\"id\":\"u").append(i).append("\",\"email\":\"x@example.com\"}");
+        }
+        byte[] second = secondPage.append("],\"pagination\":{\"token\":null}}").toString()
+                .getBytes(StandardCharsets.UTF_8);
+        CountDownLatch requested = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        server.createContext("/v1/users", exchange -> {
+            byte[] response;
+            if (exchange.getRequestURI().getQuery().contains("token")) {
+                requested.countDown();
+                try {
+                    answer.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response = second;
+            } else {
+                response = "{\"users\":[{\"id\":\"u\",\"email\":\"u@example.com\"}],\"pagination\":{\"token\":\"t\"}}"
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+            if (response == second) {
+                written.countDown();
+            }
+        });
+
+        Stream<PlatformUserVariables> users = client().build().streamUsers();
+        assertEquals("u", users.iterator().next().getId());
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        users.close();
+        answer.countDown();
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void readsGroups() throws Exception {
+        responses.put("GET /v1/groups", "[{\"id\":\"g1\",\"name\":\"One\"},{\"id\":\"g2\",\"name\":\"Two\"}]");
+        responses.put("GET /v1/groups/g1", "{\"id\":\"g1\",\"name\":\"One\",\"members\":[\"u1\",\"u2\"],"
+                + "\"connectedToSlack\":false}");
+        CordClient client = client().build();
+
+        assertEquals(Arrays.asList("g1", "g2"),
+                client.streamGroups().map(PlatformGroupVariables::getId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("u1", "u2"), client.getGroup("g1").getMembers());
+
+        statuses.add(404);
+        try {
+            client.getUser("missing");
+            fail("Found a missing user");
+        } catch (CordApiException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CordImporter.CordImporterBuilder;
+import com.cord.server.CordImporter.ImportProgress;
+
+public class CordImporterTest {
+    private StubCordServer server;
+    private CordClient client;
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubCordServer();
+        client = server.clientBuilder().build();
+        directory = Files.createTempDirectory("cord-import");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        StubCordServer.deleteDirectory(directory);
+    }
+
+    @Test
+    public void importsCsvAndSkipsInvalidRows() throws Exception {
+        Path file = directory.resolve("users.csv");
+        Files.write(file, String.join("\r\n",
+                "id,email,name,metadata.team",
+                "u1,a@example.com,\"Smith, Alice\",red",
+                "u2,,Bob,blue",
+                "",
+                "u3,c@example.com,\"Carol \"\"C\"\"",
+                "Jones\",",
+                "u4,d@example.com,Dan,green").getBytes(StandardCharsets.UTF_8));
+        List<ImportProgress> updates = Collections.synchronizedList(new ArrayList<>());
+
+        ImportProgress progress = new CordImporterBuilder(client)
+                .maxUsersPerBatch(2)
+                .progressListener(updates::add)
+                .build()
+                .importUsers(file);
+
+        assertTrue(progress.isComplete());
+        assertEquals(3, progress.getSyncedRecords());
+        assertEquals(1, progress.getInvalidRecords());
+        assertEquals(Collections.singletonList("line 3: missing email"), progress.getInvalidRecordSamples());
+        assertEquals(1.0, progress.getFractionDone(), 0);
+        assertFalse(updates.isEmpty());
+        assertFalse(Files.exists(directory.resolve("users.csv.checkpoint")));
+
+        String all = String.join("\n", server.requests);
+        assertTrue(all, all.contains("\"name\":\"Smith, Alice\""));
+        assertTrue(all, all.contains("\"name\":\"Carol \\\"C\\\"\\nJones\""));
+        assertTrue(all, all.contains("\"metadata\":{\"team\":\"red\"}"));
+        assertFalse(all, all.contains("\"u2\""));
+    }
+
+    @Test
+    public void ignoresAByteOrderMarkBeforeTheCsvHeader() throws Exception {
+        Path file = directory.resolve("users.csv");
+        Files.write(file, ("\uFEFFid,email\r\n"
+                + "u1,a@example.com\r\n").getBytes(StandardCharsets.UTF_8));
+
+        ImportProgress progress = new CordImporterBuilder(client).build().importUsers(file);
+
+        assertTrue(progress.isComplete());
+        assertEquals(1, progress.getSyncedRecords());
+        assertEquals(0, progress.getInvalidRecords());
+        assertTrue(server.requests.get(0), server.requests.get(0).contains("\"id\":\"u1\""));
+    }
+
+    @Test
+    public void resumesFromTheCheckpoint() throws Exception {
+        Path file = directory.resolve("groups.ndjson");
+        StringBuilder contents = new StringBuilder();
+        for (int i = 1; i <= 5; i++) {
+            contents.append("{\"id\":\"g").append(i).append("\",\"name\":\"Group ").append(i)
+                    .append("\",\"members\":[\"u").append(i).append("\"]}\n");
+        }
+        Files.write(file, contents.toString().getBytes(StandardCharsets.UTF_8));
+        CordImporter importer = new CordImporterBuilder(client)
+                .maxGroupsPerBatch(2)
+                .parallelism(1)
+                .build();
+
+        server.statuses.add(200);
+        server.statuses.add(400);
+        ImportProgress interrupted = importer.importGroups(file);
+        assertFalse(interrupted.isComplete());
+        assertNotNull(interrupted.getError());
+        assertEquals(2, interrupted.getSyncedRecords());
+        assertTrue(Files.exists(directory.resolve("groups.ndjson.checkpoint")));
+
+        server.requests.clear();
+        ImportProgress resumed = importer.importGroups(file);
+        assertTrue(resumed.isComplete());
+        assertEquals(5, resumed.getSyncedRecords());
+        assertEquals(2, server.requests.size());
+        assertTrue(server.requests.get(0).contains("\"g3\""));
+        assertFalse(server.requests.get(0).contains("\"g2\""));
+        assertFalse(Files.exists(directory.resolve("groups.ndjson.checkpoint")));
+    }
+}
@@ -0,0 +1,207 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CordOutbox.CordOutboxBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class CordOutboxTest {
+    private StubCordServer server;
+    private CordClient client;
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubCordServer();
+        client = server.clientBuilder().retryPolicy(RetryPolicy.NONE).build();
+        directory = Files.createTempDirectory("cord-outbox");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        StubCordServer.deleteDirectory(directory);
+    }
+
+    private CordOutbox open(int segmentSize) throws CordException {
+        return new CordOutboxBuilder(client, directory)
+                .segmentSize(segmentSize)
+                .drainInterval(Duration.ofHours(1))
+                .build();
+    }
+
+    @Test
+    public void deliversLatestSyncPerId() throws Exception {
+        try (CordOutbox outbox = open(1 << 20)) {
+            outbox.syncUser(new PlatformUserVariablesBuilder("a@example.com").id("u1").name("Old").build());
+            outbox.syncUser(new PlatformUserVariablesBuilder("b@example.com").id("u2").build());
+            outbox.syncUser(new PlatformUserVariablesBuilder("a@example.com").id("u1").name("New").build());
+            outbox.syncGroup(new PlatformGroupVariablesBuilder("Group").id("g1").build());
+            assertEquals(4, outbox.getPendingCount());
+
+            outbox.flush();
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(1, server.requests.size());
+            String body = server.requests.get(0);
+            assertTrue(body, body.contains("\"New\"") && !body.contains("\"Old\""));
+            assertTrue(body, body.contains("\"u2\"") && body.contains("\"g1\""));
+
+            outbox.flush();
+            assertEquals(1, server.requests.size());
+        }
+    }
+
+    @Test
+    public void replaysUndeliveredSyncsAfterReopening() throws Exception {
+        server.statuses.add(503);
+        server.statuses.add(503);
+        try (CordOutbox outbox = open(1 << 20)) {
+            outbox.syncUser(new PlatformUserVariablesBuilder("a@example.com").id("u1").build());
+            try {
+                outbox.flush();
+                fail("Delivered despite the error");
+            } catch (CordException e) {
+                // Expected
+            }
+        }
+
+        try (CordOutbox outbox = open(1 << 20)) {
+            assertEquals(1, outbox.getPendingCount());
+            outbox.flush();
+            assertEquals(0, outbox.getPendingCount());
+            assertTrue(server.requests.get(server.requests.size() - 1).contains("\"u1\""));
+        }
+
+        server.requests.clear();
+        try (CordOutbox outbox = open(1 << 20)) {
+            assertEquals(0, outbox.getPendingCount());
+            outbox.flush();
+            assertTrue(server.requests.isEmpty());
+        }
+    }
+
+    @Test
+    public void deadLettersRecordsTheApiRejects() throws Exception {
+        server.setHook(body -> body.contains("\"u3\"") ? 400 : null);
+        List<CordOutbox.DeadLetter> deadLetters = Collections.synchronizedList(new ArrayList<>());
+        try (CordOutbox outbox = new CordOutboxBuilder(client, directory)
+                .drainInterval(Duration.ofHours(1))
+                .deadLetterHandler(deadLetters::add)
+                .build()) {
+            for (int i = 1; i <= 5; i++) {
+                outbox.syncUser(new PlatformUserVariablesBuilder("user" + i + "@example.com").id("u" + i).build());
+            }
+            outbox.syncGroup(new PlatformGroupVariablesBuilder("Group").id("g1").build());
+
+            outbox.flush();
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(1, deadLetters.size());
+            CordOutbox.DeadLetter deadLetter = deadLetters.get(0);
+            assertEquals("user", deadLetter.getKind());
+            assertEquals("u3", deadLetter.getId());
+            assertTrue(deadLetter.getJson(), deadLetter.getJson().contains("user3@example.com"));
+            assertEquals(400, deadLetter.getError().getStatusCode());
+            for (String id : new String[] {"u1", "u2", "u4", "u5", "g1"}) {
+                assertTrue(id, server.requests.stream().anyMatch(
+                        body -> body.contains("\"" + id + "\"") && !body.contains("\"u3\"")));
+            }
+
+            server.requests.clear();
+            outbox.flush();
+            assertTrue(server.requests.isEmpty());
+        }
+    }
+
+    @Test
+    public void writesDeadLettersToAFileByDefault() throws Exception {
+        server.setHook(body -> body.contains("\"u1\"") ? 400 : null);
+        try (CordOutbox outbox = open(1 << 20)) {
+            outbox.syncUser(new PlatformUserVariablesBuilder("a@example.com").id("u1").build());
+            outbox.flush();
+            assertEquals(0, outbox.getPendingCount());
+        }
+        List<String> lines = Files.readAllLines(directory.resolve("dead-letters"));
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).startsWith("{\"kind\":\"user\",\"id\":\"u1\",\"status\":400,"));
+    }
+
+    @Test
+    public void skipsPastADamagedRecord() throws Exception {
+        try (CordOutbox outbox = open(1 << 20)) {
+            for (int i = 1; i <= 3; i++) {
+                outbox.syncUser(new PlatformUserVariablesBuilder("user" + i + "@example.com").id("u" + i).build());
+            }
+            Path segment;
+            try (Stream<Path> files = Files.list(directory)) {
+                segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().get();
+            }
+            // Flip a byte of the second record's checksum, through the file
+            // rather than the outbox's mapping
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(4);
+                channel.read(header, 0);
+                long checksum = 8 + header.getInt(0) + 4;
+                ByteBuffer b = ByteBuffer.allocate(1);
+                channel.read(b, checksum);
+                channel.write(ByteBuffer.wrap(new byte[] {(byte) ~b.get(0)}), checksum);
+            }
+
+            outbox.flush();
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(1, server.requests.size());
+            assertTrue(server.requests.get(0).contains("\"u1\""));
+            assertFalse(server.requests.get(0).contains("\"u2\"") || server.requests.get(0).contains("\"u3\""));
+
+            // The outbox keeps going past the damage
+            outbox.syncUser(new PlatformUserVariablesBuilder("user4@example.com").id("u4").build());
+            assertEquals(1, outbox.getPendingCount());
+            outbox.flush();
+            assertEquals(2, server.requests.size());
+            assertTrue(server.requests.get(1).contains("\"u4\""));
+        }
+
+        try (CordOutbox outbox = open(1 << 20)) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void rollsOverAndDeletesDeliveredSegments() throws Exception {
+        try (CordOutbox outbox = open(1024)) {
+            for (int i = 0; i < 100; i++) {
+                outbox.syncUser(new PlatformUserVariablesBuilder("user" + i + "@example.com").id("u" + i).build());
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertTrue(files.count() > 2);
+            }
+            outbox.flush();
+            assertFalse(server.requests.isEmpty());
+            for (int i = 0; i < 100; i++) {
+                assertTrue(server.requests.get(0).contains("\"u" + i + "\""));
+            }
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.filter(file -> !file.getFileName().toString().endsWith(".tmp")).count());
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordSyncQueue.CordSyncQueueBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CordSyncQueueTest {
+    private HttpServer server;
+    private ExecutorService executor;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private CordClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        // Handle requests in parallel, so that overlapping flushes would
+        // reach the server
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        client = new CordClientBuilder("projectID", "secret")
+                .transport(new CordTransportBuilder()
+                        .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                        .httpVersion(HttpClient.Version.HTTP_1_1)
+                        .build())
+                .retryPolicy(RetryPolicy.NONE)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        boolean first;
+        synchronized (requests) {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " " + body);
+            first = requests.size() == 1;
+        }
+        if (first) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] response = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    @Test
+    public void flushesOneWindowAtATime() throws Exception {
+        try (CordSyncQueue queue = new CordSyncQueueBuilder(client).flushInterval(Duration.ofHours(1)).build()) {
+            CompletableFuture<Void> first = queue.syncUser(user("userID", "old@example.com"));
+            CompletableFuture<Void> firstFlush = queue.flush();
+            waitForRequests(1);
+
+            CompletableFuture<Void> second = queue.syncUser(user("userID", "new@example.com"));
+            queue.addGroupMembers("groupID", Collections.singletonList("userID"));
+            CompletableFuture<Void> secondFlush = queue.flush();
+            // A third flush joins the one already waiting
+            CompletableFuture<Void> thirdFlush = queue.flush();
+            Thread.sleep(200);
+
+            assertEquals(1, requests.size());
+            assertFalse(secondFlush.isDone());
+            assertFalse(second.isDone());
+
+            release.countDown();
+            firstFlush.get(10, TimeUnit.SECONDS);
+            secondFlush.get(10, TimeUnit.SECONDS);
+            thirdFlush.get(10, TimeUnit.SECONDS);
+            assertTrue(first.isDone());
+            assertTrue(second.isDone());
+        }
+
+        assertEquals(3, requests.size());
+        assertTrue(requests.get(0).contains("old@example.com"));
+        assertTrue(requests.get(1).contains("new@example.com"));
+        assertTrue(requests.get(2).startsWith("POST /v1/groups/groupID/members"));
+    }
+
+    @Test
+    public void fullQueueWaitsForTheScheduledFlush() throws Exception {
+        try (CordSyncQueue queue = new CordSyncQueueBuilder(client)
+                .flushInterval(Duration.ofMillis(10))
+                .maxBatchSize(2)
+                .build()) {
+            queue.syncGroup(new PlatformGroupVariablesBuilder("Group").id("groupID").build());
+            waitForRequests(1);
+
+            // Fills the next window, which must not go out alongside the
+            // one in flight
+            CompletableFuture<Void> second = queue.syncUser(user("a", "a@example.com"));
+            CompletableFuture<Void> third = queue.syncUser(user("b", "b@example.com"));
+            Thread.sleep(200);
+            assertEquals(1, requests.size());
+
+            release.countDown();
+            second.get(10, TimeUnit.SECONDS);
+            third.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("a@example.com"));
+        assertTrue(requests.get(1).contains("b@example.com"));
+    }
+
+    @Test
+    public void rejectsNewIdsOnceMaxPendingAreWaiting() throws Exception {
+        try (CordSyncQueue queue = new CordSyncQueueBuilder(client)
+                .flushInterval(Duration.ofHours(1))
+                .maxBatchSize(2)
+                .maxPending(3)
+                .build()) {
+            queue.syncUser(user("first", "first@example.com"));
+            queue.flush();
+            waitForRequests(1);
+
+            CompletableFuture<Void> a = queue.syncUser(user("a", "a@example.com"));
+            queue.syncUser(user("b", "b@example.com"));
+            queue.syncUser(user("c", "c@example.com"));
+            CompletableFuture<Void> rejected = queue.syncUser(user("d", "d@example.com"));
+            assertTrue(rejected.isCompletedExceptionally());
+            try {
+                rejected.join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof CordException);
+            }
+            // A newer state of a waiting user takes no more room
+            assertSame(a, queue.syncUser(user("a", "new-a@example.com")));
+            assertEquals(3, queue.getPendingCount());
+
+            release.countDown();
+            a.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("new-a@example.com"));
+        assertFalse(requests.get(1).contains("d@example.com"));
+    }
+
+    private void waitForRequests(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (requests.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, requests.size());
+    }
+
+    private static PlatformUserVariables user(String id, String email) {
+        return new PlatformUserVariablesBuilder(email).id(id).build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.cord.server.CordSyncSink.Ack;
+import com.cord.server.CordSyncSink.Change;
+import com.cord.server.CordSyncSink.CordSyncSinkBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class CordSyncSinkTest {
+    private StubCordServer server;
+    private CordClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubCordServer();
+        client = server.clientBuilder().retryPolicy(RetryPolicy.NONE).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private static Change<Integer> user(String id, int offset) {
+        return Change.user(new PlatformUserVariablesBuilder(id + "@example.com").id(id).build(), offset);
+    }
+
+    @Test
+    public void acknowledgesEveryChangeInOrder() throws Exception {
+        CordSyncSink<Integer> sink = new CordSyncSinkBuilder<Integer>(client)
+                .maxBatchSize(10)
+                .linger(Duration.ofSeconds(1))
+                .build();
+        Acks acks = new Acks(Long.MAX_VALUE);
+        sink.subscribe(acks);
+        Source source = new Source();
+        source.subscribe(sink);
+
+        for (int i = 0; i < 25; i++) {
+            source.emit(user("u" + i, i));
+        }
+        source.emit(Change.user(new PlatformUserVariablesBuilder("no-id@example.com").build(), 25));
+        source.emit(Change.group(new PlatformGroupVariablesBuilder("Group").id("g1").build(), 26));
+        source.complete();
+        acks.done.get(10, TimeUnit.SECONDS);
+
+        assertEquals(27, acks.received.size());
+        for (int i = 0; i < 27; i++) {
+            assertEquals(Integer.valueOf(i), acks.received.get(i).getContext());
+            assertEquals(i != 25, acks.received.get(i).isSuccess());
+        }
+        // Batches of 10 and 10, then the rest once upstream completes
+        assertEquals(3, server.requests.size());
+        String bodies = String.join("\n", server.requests);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(bodies.contains("\"id\":\"u" + i + "\""));
+        }
+        assertTrue(bodies.contains("\"organizations\":[{\"name\":\"Group\",\"id\":\"g1\"}]"));
+        assertEquals(0, sink.getPendingCount());
+    }
+
+    @Test
+    public void requestsOnlyAsAcknowledgementsAreTaken() throws Exception {
+        server.statuses.add(400);
+        CordSyncSink<Integer> sink = new CordSyncSinkBuilder<Integer>(client)
+                .maxBatchSize(2)
+                .maxInFlightBatches(1)
+                .linger(Duration.ofMillis(5))
+                .build();
+        Acks acks = new Acks(0);
+        sink.subscribe(acks);
+        Source source = new Source();
+        source.subscribe(sink);
+
+        // One batch in flight and one more filling up
+        assertEquals(4, source.requested.get());
+        for (int i = 0; i < 4; i++) {
+            source.emit(user("u" + i, i));
+        }
+        while (server.requests.size() < 2) {
+            Thread.sleep(5);
+        }
+        assertEquals(4, source.requested.get());
+
+        acks.subscription.request(3);
+        while (acks.received.size() < 3) {
+            Thread.sleep(5);
+        }
+        assertEquals(7, source.requested.get());
+        assertFalse(acks.received.get(0).isSuccess());
+        assertTrue(acks.received.get(0).getError() instanceof CordApiException);
+        assertFalse(acks.received.get(1).isSuccess());
+        assertTrue(acks.received.get(2).isSuccess());
+    }
+
+    /**
+     * Emits changes on the test's thread, as far as the sink has asked.
+     **/
+    private static class Source implements Flow.Publisher<Change<Integer>> {
+        private final AtomicLong requested = new AtomicLong();
+        private Flow.Subscriber<? super Change<Integer>> subscriber;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Change<Integer>> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+
+        void emit(Change<Integer> change) {
+            assertTrue(requested.get() > 0);
+            subscriber.onNext(change);
+        }
+
+        void complete() {
+            subscriber.onComplete();
+        }
+    }
+
+    private static class Acks implements Flow.Subscriber<Ack<Integer>> {
+        private final long initialRequest;
+        private final List<Ack<Integer>> received = Collections.synchronizedList(new ArrayList<>());
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        Acks(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Ack<Integer> ack) {
+            received.add(ack);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            done.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordTokenVerifier.CordTokenVerifierBuilder;
+import com.cord.server.CordTokenVerifier.VerifiedCordToken;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class CordTokenVerifierTest {
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    private final CordClient client = new CordClientBuilder("projectID", "secret").build();
+    private final CordTokenVerifier verifier = new CordTokenVerifierBuilder()
+            .project("projectID", "secret")
+            .clockSkew(Duration.ofSeconds(5))
+            .build();
+
+    @Test
+    public void decodesClientTokens() throws Exception {
+        String token = client.getClientAuthToken(new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID")
+                .groupId("groupID")
+                .userDetails(new PlatformUserVariablesBuilder("email@example.com").name("Alice").build())
+                .build(), NOW);
+
+        VerifiedCordToken claims = verifier.verify(token, NOW.plusSeconds(10));
+        assertTrue(claims.isClientToken());
+        assertEquals("projectID", claims.getProjectId());
+        assertEquals("userID", claims.getUserId());
+        assertEquals("groupID", claims.getGroupId());
+        assertEquals("Alice", claims.getUserDetails().get("name").asText());
+        assertEquals(NOW.plusSeconds(60), claims.getExpiresAt());
+    }
+
+    @Test
+    public void acceptsServerTokens() throws Exception {
+        VerifiedCordToken claims = verifier.verify(client.getServerAuthToken());
+        assertFalse(claims.isClientToken());
+        assertEquals("projectID", claims.getProjectId());
+    }
+
+    @Test
+    public void rejectsBadTokens() {
+        String token = client.getClientAuthToken(
+                new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID").build(), NOW);
+        String otherProject = new CordClientBuilder("otherID", "secret").build().getClientAuthToken(
+                new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID").build(), NOW);
+        String forged = new CordClientBuilder("projectID", "wrong").build().getClientAuthToken(
+                new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID").build(), NOW);
+
+        assertRejected(token, NOW.plusSeconds(65));
+        assertRejected(token, NOW.minusSeconds(6));
+        assertRejected(otherProject, NOW);
+        assertRejected(forged, NOW);
+        assertRejected(token.substring(0, token.length() - 1), NOW);
+        assertRejected("not a token", NOW);
+    }
+
+    @Test
+    public void rejectsTokensWithoutNumericExpiry() {
+        TokenSigner signer = new TokenSigner(Cord.signingKey("secret"));
+        long now = NOW.getEpochSecond();
+        assertRejected(signer.sign(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("project_id", "projectID");
+            generator.writeNumberField("iat", now);
+            generator.writeEndObject();
+        }), NOW);
+        assertRejected(signer.sign(generator -> {
+            generator.writeStartObject();
+            generator.writeStringField("project_id", "projectID");
+            generator.writeNumberField("iat", now);
+            generator.writeStringField("exp", "never");
+            generator.writeEndObject();
+        }), NOW);
+    }
+
+    @Test
+    public void looksUnknownProjectsUpOncePerTtl() {
+        AtomicInteger lookups = new AtomicInteger();
+        CordTokenVerifier lookingUp = new CordTokenVerifierBuilder()
+                .secretLookup(projectId -> {
+                    lookups.incrementAndGet();
+                    return null;
+                })
+                .unknownProjectTtl(Duration.ofSeconds(60))
+                .build();
+        String token = new CordClientBuilder("madeUpID", "secret").build().getClientAuthToken(
+                new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID").build(), NOW);
+
+        for (int i = 0; i < 10; i++) {
+            assertRejected(lookingUp, token, NOW.plusSeconds(i));
+        }
+        assertEquals(1, lookups.get());
+        assertRejected(lookingUp, token, NOW.plusSeconds(60));
+        assertEquals(2, lookups.get());
+
+        lookingUp.forgetProject("madeUpID");
+        assertRejected(lookingUp, token, NOW.plusSeconds(61));
+        assertEquals(3, lookups.get());
+    }
+
+    private void assertRejected(String token, Instant now) {
+        assertRejected(verifier, token, now);
+    }
+
+    private static void assertRejected(CordTokenVerifier verifier, String token, Instant now) {
+        try {
+            verifier.verify(token, now);
+            fail("Accepted " + token);
+        } catch (CordException e) {
+            // Expected
+        }
+    }
+}
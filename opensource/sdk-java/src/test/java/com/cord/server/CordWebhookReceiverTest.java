@@ -0,0 +1,278 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.cord.server.CordWebhookReceiver.CordWebhookReceiverBuilder;
+import com.sun.net.httpserver.HttpServer;
+
+public class CordWebhookReceiverTest {
+    private static final String SECRET = "secret";
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static String sign(String timestamp, byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        mac.update((timestamp + ":").getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(mac.doFinal(body));
+    }
+
+    private static byte[] messageAdded(String threadId, int sequence) {
+        return ("{\"type\":\"thread-message-added\",\"timestamp\":" + NOW + ",\"projectID\":\"projectID\","
+                + "\"event\":{\"thread\":{\"id\":\"" + threadId + "\"},\"message\":{\"id\":\"m" + sequence + "\"}}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void verifiesAndDecodesEvents() throws Exception {
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET).build();
+        byte[] body = messageAdded("t1", 1);
+        String timestamp = Long.toString(NOW);
+
+        CordWebhookEvent event = receiver.verify(sign(timestamp, body), timestamp, body, NOW + 1000);
+        assertEquals(CordWebhookEvent.THREAD_MESSAGE_ADDED, event.getType());
+        assertEquals("projectID", event.getProjectId());
+        assertEquals("t1", event.getThreadId());
+        assertEquals("m1", event.getEvent().path("message").path("id").asText());
+        assertEquals(NOW, event.getTimestamp().toEpochMilli());
+        assertEquals("m1", ((ThreadMessageAddedEvent) event).getMessageId());
+
+        assertRejected(receiver, sign(timestamp, body), timestamp, body, NOW + 5 * 60 * 1000 + 1);
+        assertRejected(receiver, sign(timestamp, body), timestamp, messageAdded("t2", 1), NOW);
+        assertRejected(receiver, sign("1", body), timestamp, body, NOW);
+        assertRejected(receiver, "not base64!", timestamp, body, NOW);
+        assertRejected(receiver, null, timestamp, body, NOW);
+    }
+
+    @Test
+    public void decodesKnownTypesIntoTypedEvents() throws Exception {
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET).build();
+        String timestamp = Long.toString(NOW);
+        byte[] messageAdded = ("{\"type\":\"thread-message-added\",\"timestamp\":" + NOW + ",\"event\":{"
+                + "\"message\":{\"id\":\"m1\",\"threadID\":\"t1\",\"authorID\":\"u1\",\"groupID\":\"g1\","
+                + "\"plaintext\":\"Hello\",\"url\":\"https://example.com/page\"},"
+                + "\"usersToNotify\":[{\"id\":\"u2\"},{\"id\":\"u3\"}]}}").getBytes(StandardCharsets.UTF_8);
+        byte[] notificationCreated = ("{\"type\":\"notification-created\",\"timestamp\":" + NOW + ",\"event\":{"
+                + "\"recipientUserID\":\"u2\",\"notification\":{\"id\":\"n1\",\"type\":\"reply\","
+                + "\"threadID\":\"t1\",\"senderUserIDs\":[\"u1\"]}}}").getBytes(StandardCharsets.UTF_8);
+
+        ThreadMessageAddedEvent message = (ThreadMessageAddedEvent) receiver.verify(
+                sign(timestamp, messageAdded), timestamp, messageAdded, NOW);
+        assertEquals("m1", message.getMessageId());
+        assertEquals("t1", message.getThreadId());
+        assertEquals("u1", message.getAuthorId());
+        assertEquals("g1", message.getGroupId());
+        assertEquals("Hello", message.getPlaintext());
+        assertEquals("https://example.com/page", message.getUrl());
+        assertEquals(List.of("u2", "u3"), message.getUsersToNotify());
+
+        NotificationCreatedEvent notification = (NotificationCreatedEvent) receiver.verify(
+                sign(timestamp, notificationCreated), timestamp, notificationCreated, NOW);
+        assertEquals("u2", notification.getRecipientUserId());
+        assertEquals("n1", notification.getNotificationId());
+        assertEquals("reply", notification.getNotificationType());
+        assertEquals("t1", notification.getThreadId());
+        assertEquals(List.of("u1"), notification.getSenderUserIds());
+
+        byte[] verification = "{\"type\":\"url-verification\"}".getBytes(StandardCharsets.UTF_8);
+        assertEquals(CordWebhookEvent.class,
+                receiver.verify(sign(timestamp, verification), timestamp, verification, NOW).getClass());
+    }
+
+    private static void assertRejected(
+            CordWebhookReceiver receiver,
+            String signature,
+            String timestamp,
+            byte[] body,
+            long now) {
+        try {
+            receiver.verify(signature, timestamp, body, now);
+            fail("Accepted a bad delivery");
+        } catch (CordException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void keepsEventsForOneThreadInOrder() throws Exception {
+        List<String> first = Collections.synchronizedList(new ArrayList<>());
+        List<String> second = Collections.synchronizedList(new ArrayList<>());
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET)
+                .executor(executor)
+                .onThreadMessageAdded(event -> {
+                    String message = event.getMessageId();
+                    (event.getThreadId().equals("t1") ? first : second).add(message);
+                    Thread.yield();
+                })
+                .build();
+
+        List<CompletableFuture<Void>> handled = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        String timestamp = Long.toString(System.currentTimeMillis());
+        for (int i = 0; i < 200; i++) {
+            byte[] body = messageAdded(i % 2 == 0 ? "t1" : "t2", i);
+            handled.add(receiver.receive(sign(timestamp, body), timestamp, body));
+            if (i % 2 == 0) {
+                expected.add("m" + i);
+            }
+        }
+        CompletableFuture.allOf(handled.toArray(new CompletableFuture<?>[0])).join();
+
+        assertEquals(expected, first);
+        assertEquals(100, second.size());
+        assertEquals(0, receiver.getActiveThreadCount());
+    }
+
+    @Test
+    public void servesDeliveriesOverHttp() throws Exception {
+        CompletableFuture<CordWebhookEvent> received = new CompletableFuture<>();
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET)
+                .executor(executor)
+                .onAnyEvent(received::complete)
+                .build();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cord", receiver.httpHandler());
+        server.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/cord");
+            byte[] body = "{\"type\":\"url-verification\",\"timestamp\":1}".getBytes(StandardCharsets.UTF_8);
+            String timestamp = Long.toString(System.currentTimeMillis());
+
+            HttpResponse<Void> accepted = client.send(HttpRequest.newBuilder(uri)
+                    .header(CordWebhookReceiver.SIGNATURE_HEADER, sign(timestamp, body))
+                    .header(CordWebhookReceiver.TIMESTAMP_HEADER, timestamp)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.discarding());
+            assertEquals(200, accepted.statusCode());
+            assertEquals(CordWebhookEvent.URL_VERIFICATION, received.get().getType());
+
+            HttpResponse<Void> forged = client.send(HttpRequest.newBuilder(uri)
+                    .header(CordWebhookReceiver.SIGNATURE_HEADER, sign("0", body))
+                    .header(CordWebhookReceiver.TIMESTAMP_HEADER, timestamp)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), HttpResponse.BodyHandlers.discarding());
+            assertEquals(401, forged.statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void answers503WhenTheExecutorRejectsAThread() throws Exception {
+        ThreadPoolExecutor bounded = new ThreadPoolExecutor(
+                1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET)
+                .executor(bounded)
+                .onThreadMessageAdded(event -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    handled.add(event.getMessageId());
+                })
+                .build();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cord", receiver.httpHandler());
+        server.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/cord");
+            String timestamp = Long.toString(System.currentTimeMillis());
+            List<Integer> statuses = new ArrayList<>();
+            // The first takes the executor's only thread, the second waits
+            // behind it without needing one, and the third needs one
+            for (byte[] body : List.of(messageAdded("t1", 1), messageAdded("t1", 2), messageAdded("t2", 3))) {
+                statuses.add(client.send(HttpRequest.newBuilder(uri)
+                        .header(CordWebhookReceiver.SIGNATURE_HEADER, sign(timestamp, body))
+                        .header(CordWebhookReceiver.TIMESTAMP_HEADER, timestamp)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                        .build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+            }
+            assertEquals(List.of(200, 200, 503), statuses);
+
+            release.countDown();
+            bounded.shutdown();
+            assertTrue(bounded.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(List.of("m1", "m2"), handled);
+            assertEquals(0, receiver.getActiveThreadCount());
+        } finally {
+            server.stop(0);
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test
+    public void refusesBodiesOverTheMaximumSize() throws Exception {
+        List<CordWebhookEvent> received = Collections.synchronizedList(new ArrayList<>());
+        CordWebhookReceiver receiver = new CordWebhookReceiverBuilder(SECRET)
+                .executor(executor)
+                .maxBodySize(1024)
+                .onAnyEvent(received::add)
+                .build();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/cord", receiver.httpHandler());
+        server.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/cord");
+            byte[] body = ("{\"type\":\"url-verification\",\"padding\":\"" + "x".repeat(2048) + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            String timestamp = Long.toString(System.currentTimeMillis());
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                    .header(CordWebhookReceiver.SIGNATURE_HEADER, sign(timestamp, body))
+                    .header(CordWebhookReceiver.TIMESTAMP_HEADER, timestamp);
+
+            HttpResponse<Void> sized = client.send(
+                    request.copy().POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            assertEquals(413, sized.statusCode());
+
+            // Without a Content-Length, it is only found out by reading
+            HttpResponse<Void> chunked = client.send(
+                    request.copy().POST(HttpRequest.BodyPublishers.ofInputStream(
+                            () -> new ByteArrayInputStream(body))).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            assertEquals(413, chunked.statusCode());
+            assertTrue(received.isEmpty());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+public class JsonBodyPublisherTest {
+    private static final PlatformUserVariables user = new PlatformUserVariablesBuilder("email@example.com")
+            .id("userID")
+            .status(Status.ACTIVE)
+            .build();
+
+    @Test
+    public void writesCompactJson() throws Exception {
+        HttpRequest.BodyPublisher publisher = JsonBodyPublisher.of(
+                generator -> PlatformUserVariablesJsonWriter.write(generator, user), false);
+
+        byte[] body = collect(publisher);
+        assertEquals(body.length, publisher.contentLength());
+        assertEquals(
+                "{\"email\":\"email@example.com\",\"id\":\"userID\",\"status\":\"active\"}",
+                new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void writesGzippedJson() throws Exception {
+        HttpRequest.BodyPublisher publisher = JsonBodyPublisher.of(generator -> {
+            generator.writeStartArray();
+            for (int i = 0; i < 5000; i++) {
+                PlatformUserVariablesJsonWriter.write(generator, user);
+            }
+            generator.writeEndArray();
+        }, true);
+
+        byte[] body = collect(publisher);
+        assertEquals(body.length, publisher.contentLength());
+        byte[] json = new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes();
+        assertEquals(Cord.mapper().writeValueAsString(Collections.nCopies(5000, user)),
+                new String(json, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] collect(HttpRequest.BodyPublisher publisher) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.get();
+        return out.toByteArray();
+    }
+}
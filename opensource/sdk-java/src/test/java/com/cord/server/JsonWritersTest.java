@@ -0,0 +1,87 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.cord.server.ClientAuthTokenData.ClientAuthTokenDataBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class JsonWritersTest {
+    private static String write(Object value) throws Exception {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Cord.mapper().getFactory().createGenerator(out)) {
+            JsonWriters.writeValue(generator, value, false);
+        }
+        return out.toString();
+    }
+
+    private static void assertSameAsMapper(Object value) throws Exception {
+        assertEquals(Cord.mapper().writeValueAsString(value), write(value));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void writesTheSameJsonAsTheMapper() throws Exception {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("plan", "pro");
+        metadata.put("seats", 12);
+        metadata.put("ratio", 0.5);
+        metadata.put("trial", false);
+        metadata.put("removed", null);
+        metadata.put("quote \"and\" \u00e9", "line\nbreak");
+
+        PlatformUserVariables user = new PlatformUserVariablesBuilder("email@example.com")
+                .id("userID")
+                .name("Example")
+                .profilePictureUrl("https://example.com/picture.png")
+                .status(Status.ACTIVE)
+                .firstName("First")
+                .lastName("Last")
+                .metadata(metadata)
+                .build();
+        PlatformGroupVariables group = new PlatformGroupVariablesBuilder("name")
+                .id("groupID")
+                .status(Status.DELETED)
+                .members(Arrays.asList("north", "south", "dennis"))
+                .metadata(metadata)
+                .build();
+
+        assertSameAsMapper(user);
+        assertSameAsMapper(group);
+        assertSameAsMapper(new PlatformUserVariablesBuilder("email@example.com").build());
+        assertSameAsMapper(new PlatformGroupVariablesBuilder("name").build());
+        assertSameAsMapper(new ClientAuthTokenDataBuilder("userID", "organizationID")
+                .groupId("groupID")
+                .userDetails(user)
+                .organizationDetails(group)
+                .groupDetails(new PlatformGroupVariablesBuilder("other")
+                        .metadata(new HashMap<String, Object>())
+                        .build())
+                .build());
+        assertSameAsMapper(new ClientAuthTokenDataBuilder("userID").build());
+    }
+
+    @Test
+    public void sortsMapsWhenAsked() throws Exception {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("b", 2);
+        metadata.put("a", 1);
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = Cord.mapper().getFactory().createGenerator(out)) {
+            JsonWriters.writeValue(generator, new PlatformGroupVariablesBuilder("name").metadata(metadata).build(), true);
+        }
+
+        assertEquals(JsonWriters.canonicalWriter().writeValueAsString(
+                new PlatformGroupVariablesBuilder("name").metadata(metadata).build()), out.toString());
+        assertEquals("{\"name\":\"name\",\"metadata\":{\"a\":1,\"b\":2}}", out.toString());
+    }
+}
@@ -0,0 +1,36 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis * 1_000_000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertNear(500_000_000, histogram.getPercentile(50));
+        assertNear(990_000_000, histogram.getPercentile(99));
+        assertNear(1_000_000_000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void resetEmptiesTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        // Buckets are 1/16th of a power of two wide
+        assertTrue(actual + " is not near " + expected, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class RequestLimiterTest {
+    @Test
+    public void queuesBeyondLimitAndHandsOverOnRelease() {
+        RequestLimiter limiter = new RequestLimiter(2);
+
+        assertTrue(limiter.acquire().isDone());
+        assertTrue(limiter.acquire().isDone());
+        CompletableFuture<Void> third = limiter.acquire();
+        assertFalse(third.isDone());
+        assertEquals(1, limiter.getQueued());
+
+        limiter.release();
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release();
+        limiter.release();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void adaptiveLimitGrowsUntilThrottled() {
+        RequestLimiter limiter = new RequestLimiter(2, 10);
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(10, limiter.getLimit());
+
+        limiter.onThrottled();
+        assertEquals(5, limiter.getLimit());
+        // Throttles within the cooldown only count once
+        limiter.onThrottled();
+        assertEquals(5, limiter.getLimit());
+    }
+}
@@ -0,0 +1,128 @@
+package com.cord.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.CordTransport.CordTransportBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for the Cord API on a local port, for tests.
+ *
+ * It records the body of every request and answers each with the next
+ * status in the queue, or 200 once the queue is empty. Error statuses
+ * come with an invalid_field error body.
+ **/
+final class StubCordServer implements AutoCloseable {
+    /**
+     * Called with the body of each request before it is answered.
+     **/
+    @FunctionalInterface
+    interface RequestHook {
+        /**
+         * @return The status to answer with if none is queued, or null
+         *         for 200
+         **/
+        Integer onRequest(String body) throws InterruptedException;
+    }
+
+    final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile RequestHook hook = body -> null;
+
+    /**
+     * Starts a server which answers one request at a time.
+     **/
+    StubCordServer() throws IOException {
+        this(false);
+    }
+
+    /**
+     * @param parallel Whether requests are answered in parallel, as they
+     *                 must be when a hook holds one while another arrives
+     **/
+    StubCordServer(boolean parallel) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        executor = parallel ? Executors.newCachedThreadPool() : null;
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    void setHook(RequestHook hook) {
+        this.hook = hook;
+    }
+
+    /**
+     * @return A transport builder pointed at this server over HTTP/1.1
+     **/
+    CordTransportBuilder transportBuilder() {
+        return new CordTransportBuilder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .httpVersion(HttpClient.Version.HTTP_1_1);
+    }
+
+    /**
+     * @return A client builder using a transport pointed at this server
+     **/
+    CordClientBuilder clientBuilder() {
+        return new CordClientBuilder("projectID", "secret").transport(transportBuilder().build());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add(body);
+        Integer status = statuses.poll();
+        Integer hooked;
+        try {
+            hooked = hook.onRequest(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            hooked = null;
+        }
+        if (status == null) {
+            status = hooked != null ? hooked : 200;
+        }
+        byte[] response = (status >= 400 ? "{\"error\":\"invalid_field\"}" : "{\"success\":true}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes a directory a test created, with everything in it.
+     **/
+    static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
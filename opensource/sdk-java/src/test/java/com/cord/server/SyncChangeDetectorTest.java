@@ -0,0 +1,67 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.SyncChangeDetector.SyncChangeDetectorBuilder;
+
+public class SyncChangeDetectorTest {
+    @Test
+    public void skipsOnlyUnchangedPayloads() {
+        SyncChangeDetector detector = new SyncChangeDetectorBuilder().build();
+        long first = SyncChangeDetector.fingerprint(group(Arrays.asList("north", "south")));
+        long second = SyncChangeDetector.fingerprint(group(Arrays.asList("north", "south", "dennis")));
+        assertNotEquals(first, second);
+
+        assertFalse(detector.isUnchanged(SyncChangeDetector.GROUP, "groupID", first));
+        detector.record(SyncChangeDetector.GROUP, "groupID", first);
+        assertTrue(detector.isUnchanged(SyncChangeDetector.GROUP, "groupID", first));
+        assertFalse(detector.isUnchanged(SyncChangeDetector.GROUP, "groupID", second));
+        assertFalse(detector.isUnchanged(SyncChangeDetector.USER, "groupID", first));
+
+        assertEquals(1, detector.getUnchangedCount());
+        assertEquals(3, detector.getChangedCount());
+    }
+
+    @Test
+    public void metadataOrderDoesNotMatter() {
+        Map<String, Object> forwards = new LinkedHashMap<>();
+        forwards.put("a", 1);
+        forwards.put("b", "two");
+        Map<String, Object> backwards = new HashMap<>();
+        backwards.put("b", "two");
+        backwards.put("a", 1);
+
+        assertEquals(
+                SyncChangeDetector.fingerprint(new PlatformGroupVariablesBuilder("name").metadata(forwards).build()),
+                SyncChangeDetector.fingerprint(new PlatformGroupVariablesBuilder("name").metadata(backwards).build()));
+    }
+
+    @Test
+    public void staysWithinCapacity() {
+        SyncChangeDetector detector = new SyncChangeDetectorBuilder().capacity(16).build();
+        for (int i = 0; i < 1000; i++) {
+            detector.record(SyncChangeDetector.USER, "user" + i, i);
+        }
+        assertEquals(16, detector.getCapacity());
+        assertTrue(detector.isUnchanged(SyncChangeDetector.USER, "user999", 999));
+
+        detector.forgetUser("user999");
+        assertFalse(detector.isUnchanged(SyncChangeDetector.USER, "user999", 999));
+    }
+
+    private static PlatformGroupVariables group(List<String> members) {
+        return new PlatformGroupVariablesBuilder("name").id("groupID").status(Status.ACTIVE).members(members).build();
+    }
+}
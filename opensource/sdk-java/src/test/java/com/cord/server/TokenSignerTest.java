@@ -0,0 +1,138 @@
+package com.cord.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.cord.server.CordClient.CordClientBuilder;
+import com.cord.server.PlatformGroupVariables.PlatformGroupVariablesBuilder;
+import com.cord.server.PlatformUserVariables.PlatformUserVariablesBuilder;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.jackson.io.JacksonSerializer;
+
+public class TokenSignerTest {
+    private static final Instant NOW = Instant.ofEpochMilli(1_700_000_000_123L);
+
+    @Test
+    public void matchesJjwtForFullPayload() {
+        assertMatchesJjwt(new ClientAuthTokenData.ClientAuthTokenDataBuilder("userID")
+                .groupId("groupID")
+                .userDetails(new PlatformUserVariablesBuilder("email@example.com")
+                        .status(Status.ACTIVE)
+                        .name("\u00cbxample \u2603")
+                        .metadata(new HashMap<String, Object>(){{put("user", "metadata");}})
+                        .build())
+                .groupDetails(new PlatformGroupVariablesBuilder("name")
+                        .status(Status.DELETED)
+                        .members(Arrays.asList("north", "south", "dennis"))
+                        .build())
+                .build());
+    }
+
+    @Test
+    public void matchesJjwtForMinimalPayloads() {
+        // Different lengths exercise every base64 padding case
+        for (String userId : Arrays.asList("u", "us", "use", "user")) {
+            assertMatchesJjwt(new ClientAuthTokenData.ClientAuthTokenDataBuilder(userId).build());
+        }
+    }
+
+    @Test
+    public void matchesJjwtForServerTokens() throws Exception {
+        String serverToken = new CordClientBuilder("projectID", "secret").build().getServerAuthToken();
+        assertEquals(Jwts.builder()
+                .setHeaderParam("typ", "JWT")
+                .claim("project_id", "projectID")
+                .setIssuedAt(issuedAt(serverToken))
+                .setExpiration(Date.from(issuedAt(serverToken).toInstant().plus(1, ChronoUnit.MINUTES)))
+                .signWith(Cord.signingKey("secret"))
+                .compact(), serverToken);
+
+        String managementToken = Cord.getProjectManagementAuthToken("customerID", "secret");
+        assertEquals(Jwts.builder()
+                .setHeaderParam("typ", "JWT")
+                .claim("customer_id", "customerID")
+                .setIssuedAt(issuedAt(managementToken))
+                .setExpiration(Date.from(issuedAt(managementToken).toInstant().plus(1, ChronoUnit.MINUTES)))
+                .signWith(Cord.signingKey("secret"))
+                .compact(), managementToken);
+    }
+
+    private static Date issuedAt(String token) throws Exception {
+        byte[] claims = Base64.getUrlDecoder().decode(token.split("\\.")[1]);
+        return new Date(Cord.mapper().readTree(claims).get("iat").asLong() * 1000);
+    }
+
+    @Test
+    public void bulkSigningKeepsInputOrder() throws Exception {
+        CordClient client = new CordClientBuilder("projectID", "secret").build();
+        List<ClientAuthTokenData> payloads = IntStream.range(0, 1000)
+                .mapToObj(i -> new ClientAuthTokenData.ClientAuthTokenDataBuilder("user" + i).build())
+                .collect(Collectors.toList());
+
+        List<String> tokens = client.getClientAuthTokens(payloads);
+        List<String> async = client.getClientAuthTokensAsync(payloads, ForkJoinPool.commonPool()).get();
+        for (int i = 0; i < payloads.size(); i++) {
+            assertEquals("user" + i, userId(tokens.get(i)));
+            assertEquals("user" + i, userId(async.get(i)));
+        }
+    }
+
+    @Test
+    public void streamSigningLeavesTheCallersStagesSequential() throws Exception {
+        CordClient client = new CordClientBuilder("projectID", "secret").build();
+        Set<Thread> producers = ConcurrentHashMap.newKeySet();
+        Stream<ClientAuthTokenData> payloads = IntStream.range(0, 1000).mapToObj(i -> {
+            producers.add(Thread.currentThread());
+            return new ClientAuthTokenData.ClientAuthTokenDataBuilder("user" + i).build();
+        });
+
+        Stream<String> tokens = client.getClientAuthTokens(payloads);
+        assertFalse(tokens.isParallel());
+        List<String> signed = tokens.collect(Collectors.toList());
+        assertEquals(Collections.singleton(Thread.currentThread()), producers);
+        for (int i = 0; i < signed.size(); i++) {
+            assertEquals("user" + i, userId(signed.get(i)));
+        }
+    }
+
+    private static String userId(String token) throws Exception {
+        byte[] claims = Base64.getUrlDecoder().decode(token.split("\\.")[1]);
+        return Cord.mapper().readTree(claims).get("user_id").asText();
+    }
+
+    private static void assertMatchesJjwt(ClientAuthTokenData payload) {
+        CordClient client = new CordClientBuilder("projectID", "secret").build();
+        String expected = Jwts.builder()
+                .setHeaderParam("typ", "JWT")
+                .serializeToJsonWith(new JacksonSerializer<>(Cord.mapper()))
+                .claim("project_id", "projectID")
+                .claim("user_id", payload.getUserId())
+                .claim("group_id", payload.getGroupId())
+                .claim("user_details", payload.getUserDetails())
+                .claim("group_details", payload.getGroupDetails())
+                .setIssuedAt(Date.from(NOW))
+                .setExpiration(Date.from(NOW.plus(1, ChronoUnit.MINUTES)))
+                .signWith(Cord.signingKey("secret"))
+                .compact();
+
+        assertEquals(expected, client.getClientAuthToken(payload, NOW));
+    }
+}